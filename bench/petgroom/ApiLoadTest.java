@@ -0,0 +1,403 @@
+/*
+ * ApiLoadTest.java
+ * Drives the JSON API with concurrent clients and reports throughput and latency.
+ */
+package petgroom;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs in to a running API server ({@code java -jar PETGROOM.jar --serve})
+ * and has -Dapi.clients virtual-thread clients (default 64) send requests
+ * back to back for -Dapi.seconds (default 30), after -Dapi.warmupSeconds
+ * (default 15, for the JIT) that are not counted. Each request is one of:
+ * <ul>
+ * <li>30% revalidations: first pages of appointments and payments and the
+ *     services, with the ETag last seen, mostly answered 304 without a query</li>
+ * <li>25% uncached list pages: 50 appointments or payments after a random
+ *     cursor, without If-None-Match</li>
+ * <li>20% single appointments by id</li>
+ * <li>10% free slots for a day in the next four weeks</li>
+ * <li>15% writes: each client books a free slot, edits it with If-Match and
+ *     deletes it, and records and deletes payments, in turn</li>
+ * </ul>
+ * Prints requests per second, status counts and latency percentiles for each
+ * kind, and fails if the requests that reach the database (all but the
+ * revalidations) are served at fewer than -Dapi.minRps per second (default 500).
+ *
+ * Usage: ant api-load-test -Dapi.email=... -Dapi.password=... [-Dapi.url=http://127.0.0.1:8080/api/ -Dapi.clients=... -Dapi.seconds=...]
+ * Every row a client writes is deleted before it finishes; run it against a
+ * copy of the data all the same, as an interrupted run leaves "Load Test" rows.
+ */
+public class ApiLoadTest {
+
+    private static final String CLIENT_NAME = "Load Test";
+
+    private enum Kind {
+        REVALIDATE(30), LIST(25), GET(20), SLOTS(10), WRITE(15);
+
+        final int percent;
+
+        Kind(int percent) {
+            this.percent = percent;
+        }
+
+        static Kind pick(int roll) {
+            for (Kind kind : values()) {
+                roll -= kind.percent;
+                if (roll < 0) {
+                    return kind;
+                }
+            }
+            throw new IllegalArgumentException("Roll past 100");
+        }
+    }
+
+    /**
+     * Latencies and status counts of one kind of request.
+     */
+    private static final class Stats {
+        long[] nanos = new long[4_096];
+        int count;
+        final Map<Integer, Integer> statuses = new TreeMap<>();
+
+        void add(long elapsed, int status) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, count * 2);
+            }
+            nanos[count++] = elapsed;
+            statuses.merge(status, 1, Integer::sum);
+        }
+
+        void addAll(Stats other) {
+            nanos = Arrays.copyOf(nanos, count + other.count);
+            System.arraycopy(other.nanos, 0, nanos, count, other.count);
+            count += other.count;
+            other.statuses.forEach((status, n) -> statuses.merge(status, n, Integer::sum));
+        }
+    }
+
+    /**
+     * What every client reads from: a service to book and cursors into the seeded data.
+     */
+    private record Sample(String url, String token, String service, List<String> appointmentCursors,
+            List<Long> appointmentIds, List<Long> paymentIds) {
+    }
+
+    /**
+     * A free slot a client saw and may book.
+     */
+    private record Slot(LocalDate date, long station, String start) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = System.getProperty("api.url", "http://127.0.0.1:8080/api/");
+        String email = System.getProperty("api.email", "");
+        String password = System.getProperty("api.password", "");
+        int clients = Integer.getInteger("api.clients", 64);
+        long seconds = Long.getLong("api.seconds", 30);
+        long warmupSeconds = Long.getLong("api.warmupSeconds", 15);
+        long minRps = Long.getLong("api.minRps", 500);
+
+        HttpClient http = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        String token = login(http, url, email, password);
+        Sample sample = sample(http, url, token);
+
+        long warmupEnd = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        long end = warmupEnd + seconds * 1_000_000_000L;
+        List<Future<Map<Kind, Stats>>> futures = new ArrayList<>();
+        try (ExecutorService pool = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < clients; i++) {
+                futures.add(pool.submit(() -> new Client(http, sample).run(warmupEnd, end)));
+            }
+        }
+
+        Map<Kind, Stats> byKind = new EnumMap<>(Kind.class);
+        for (Kind kind : Kind.values()) {
+            byKind.put(kind, new Stats());
+        }
+        for (Future<Map<Kind, Stats>> future : futures) {
+            future.get().forEach((kind, stats) -> byKind.get(kind).addAll(stats));
+        }
+        Stats uncached = new Stats();
+        Stats all = new Stats();
+        System.out.printf("clients=%d seconds=%d appointments sampled=%d payments sampled=%d%n",
+                clients, seconds, sample.appointmentIds().size(), sample.paymentIds().size());
+        for (Kind kind : Kind.values()) {
+            Stats stats = byKind.get(kind);
+            print(kind.name().toLowerCase(), stats, seconds);
+            if (kind != Kind.REVALIDATE) {
+                uncached.addAll(stats);
+            }
+            all.addAll(stats);
+        }
+        print("uncached", uncached, seconds);
+        print("all", all, seconds);
+        double rps = uncached.count / (double) seconds;
+        if (rps < minRps) {
+            System.out.println("FAIL: uncached requests below " + minRps + " per second");
+            System.exit(1);
+        }
+        System.out.println("OK: uncached requests at least " + minRps + " per second");
+    }
+
+    /**
+     * One client: its own ETags, and the rows it has written and not yet deleted.
+     */
+    private static final class Client {
+        private final HttpClient http;
+        private final Sample sample;
+        private final ThreadLocalRandom random = ThreadLocalRandom.current();
+        private final Map<Kind, Stats> stats = new EnumMap<>(Kind.class);
+        // Revalidates like a browser tab would, with the ETag it last saw
+        private final String[] tags = new String[3];
+        private Slot freeSlot;
+        private long bookedId = -1;
+        private String bookedTag;
+        private boolean edited;
+        private long paymentId = -1;
+        private boolean bookingTurn;
+
+        Client(HttpClient http, Sample sample) {
+            this.http = http;
+            this.sample = sample;
+            for (Kind kind : Kind.values()) {
+                stats.put(kind, new Stats());
+            }
+        }
+
+        Map<Kind, Stats> run(long warmupEnd, long end) throws Exception {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    if (start >= end) {
+                        return stats;
+                    }
+                    Kind kind = Kind.pick(random.nextInt(100));
+                    HttpResponse<String> response = switch (kind) {
+                        case REVALIDATE -> revalidate();
+                        case LIST -> listPage();
+                        case GET -> getById();
+                        case SLOTS -> slots();
+                        case WRITE -> write();
+                    };
+                    if (start >= warmupEnd) {
+                        stats.get(kind).add(System.nanoTime() - start, response.statusCode());
+                    }
+                }
+            } finally {
+                if (bookedId >= 0) {
+                    send(request("appointments/" + bookedId).DELETE());
+                }
+                if (paymentId >= 0) {
+                    send(request("payments/" + paymentId).DELETE());
+                }
+            }
+        }
+
+        private HttpResponse<String> revalidate() throws Exception {
+            int which = random.nextInt(tags.length);
+            String path = switch (which) {
+                case 0 -> "appointments?limit=50";
+                case 1 -> "payments?limit=50";
+                default -> "services";
+            };
+            HttpRequest.Builder request = request(path);
+            if (tags[which] != null) {
+                request.header("If-None-Match", tags[which]);
+            }
+            HttpResponse<String> response = send(request);
+            tags[which] = response.headers().firstValue("ETag").orElse(null);
+            return response;
+        }
+
+        private HttpResponse<String> listPage() throws Exception {
+            if (random.nextBoolean() && !sample.appointmentCursors().isEmpty()) {
+                return send(request("appointments?limit=50&after=" + pickFrom(sample.appointmentCursors())));
+            }
+            if (sample.paymentIds().isEmpty()) {
+                return send(request("payments?limit=50"));
+            }
+            return send(request("payments?limit=50&after=" + pickFrom(sample.paymentIds())));
+        }
+
+        private HttpResponse<String> getById() throws Exception {
+            if (sample.appointmentIds().isEmpty()) {
+                return send(request("appointments?limit=50"));
+            }
+            return send(request("appointments/" + pickFrom(sample.appointmentIds())));
+        }
+
+        /**
+         * Asks for the free slots on a day and keeps the first, for the next booking.
+         */
+        private HttpResponse<String> slots() throws Exception {
+            LocalDate date = LocalDate.now().plusDays(1 + random.nextInt(28));
+            HttpResponse<String> response = send(request("slots?date=" + date + "&service="
+                    + URLEncoder.encode(sample.service(), StandardCharsets.UTF_8)));
+            if (response.statusCode() == 200) {
+                List<?> items = (List<?>) ((Map<?, ?>) Json.parse(response.body())).get("items");
+                if (!items.isEmpty()) {
+                    Map<?, ?> slot = (Map<?, ?>) items.get(random.nextInt(items.size()));
+                    freeSlot = new Slot(date, (Long) slot.get("station"), (String) slot.get("start"));
+                }
+            }
+            return response;
+        }
+
+        /**
+         * Takes the next step of this client's booking (book, edit, delete)
+         * or payment (record, delete), in turn. Books only once a slots
+         * request has turned up a free slot.
+         */
+        private HttpResponse<String> write() throws Exception {
+            bookingTurn = !bookingTurn;
+            if (bookingTurn && (bookedId >= 0 || freeSlot != null)) {
+                return bookingStep();
+            }
+            if (paymentId < 0) {
+                HttpResponse<String> response = send(request("payments").POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"clientName\":" + Json.quote(CLIENT_NAME) + ",\"contact\":\"09170000000\","
+                        + "\"totalPaidCentavos\":20000,\"status\":\"Paid\"}")));
+                if (response.statusCode() == 201) {
+                    paymentId = id(response);
+                }
+                return response;
+            }
+            HttpResponse<String> response = send(request("payments/" + paymentId).DELETE());
+            paymentId = -1;
+            return response;
+        }
+
+        private HttpResponse<String> bookingStep() throws Exception {
+            if (bookedId < 0) {
+                Slot slot = freeSlot;
+                freeSlot = null;
+                HttpResponse<String> response = send(request("appointments").POST(HttpRequest.BodyPublishers.ofString(
+                        booking(slot, "Rex"))));
+                if (response.statusCode() == 201) {
+                    bookedId = id(response);
+                    bookedTag = response.headers().firstValue("ETag").orElse(null);
+                    freeSlot = slot; // Kept for the edit
+                }
+                return response;
+            }
+            if (!edited && freeSlot != null) {
+                HttpResponse<String> response = send(request("appointments/" + bookedId)
+                        .header("If-Match", bookedTag)
+                        .PUT(HttpRequest.BodyPublishers.ofString(booking(freeSlot, "Max"))));
+                edited = true;
+                return response;
+            }
+            HttpResponse<String> response = send(request("appointments/" + bookedId).DELETE());
+            bookedId = -1;
+            edited = false;
+            freeSlot = null;
+            return response;
+        }
+
+        private String booking(Slot slot, String petName) {
+            return "{\"clientName\":" + Json.quote(CLIENT_NAME) + ",\"contact\":\"09170000000\","
+                    + "\"petName\":" + Json.quote(petName) + ",\"petBreed\":\"Aspin\","
+                    + "\"service\":" + Json.quote(sample.service()) + ",\"date\":\"" + slot.date() + "\","
+                    + "\"station\":" + slot.station() + ",\"start\":\"" + slot.start() + "\"}";
+        }
+
+        private <T> T pickFrom(List<T> values) {
+            return values.get(random.nextInt(values.size()));
+        }
+
+        private HttpRequest.Builder request(String path) {
+            return HttpRequest.newBuilder(URI.create(sample.url() + path))
+                    .header("Authorization", "Bearer " + sample.token())
+                    .timeout(Duration.ofSeconds(10));
+        }
+
+        private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+            return http.send(request.build(), HttpResponse.BodyHandlers.ofString());
+        }
+    }
+
+    private static long id(HttpResponse<String> response) {
+        return (Long) ((Map<?, ?>) Json.parse(response.body())).get("id");
+    }
+
+    private static String login(HttpClient http, String url, String email, String password) throws Exception {
+        String body = "{\"email\":" + Json.quote(email) + ",\"password\":" + Json.quote(password) + "}";
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url + "login"))
+                .POST(HttpRequest.BodyPublishers.ofString(body)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Login failed (" + response.statusCode() + "): " + response.body());
+        }
+        return (String) ((Map<?, ?>) Json.parse(response.body())).get("token");
+    }
+
+    /**
+     * Reads the first active service and up to 500 appointments and payments
+     * to page from and fetch by id.
+     */
+    private static Sample sample(HttpClient http, String url, String token) throws Exception {
+        List<?> services = items(http, url + "services", token);
+        if (services.isEmpty()) {
+            throw new IllegalStateException("No active services to book");
+        }
+        List<String> cursors = new ArrayList<>();
+        List<Long> appointmentIds = new ArrayList<>();
+        for (Object item : items(http, url + "appointments?limit=500", token)) {
+            Map<?, ?> row = (Map<?, ?>) item;
+            cursors.add(row.get("date") + "_" + row.get("id"));
+            appointmentIds.add((Long) row.get("id"));
+        }
+        List<Long> paymentIds = new ArrayList<>();
+        for (Object item : items(http, url + "payments?limit=500", token)) {
+            paymentIds.add((Long) ((Map<?, ?>) item).get("id"));
+        }
+        return new Sample(url, token, (String) ((Map<?, ?>) services.get(0)).get("name"),
+                cursors, appointmentIds, paymentIds);
+    }
+
+    private static List<?> items(HttpClient http, String url, String token) throws Exception {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(URI.create(url))
+                .header("Authorization", "Bearer " + token).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(url + " failed (" + response.statusCode() + "): " + response.body());
+        }
+        return (List<?>) ((Map<?, ?>) Json.parse(response.body())).get("items");
+    }
+
+    private static void print(String name, Stats stats, long seconds) {
+        long[] sorted = Arrays.copyOf(stats.nanos, stats.count);
+        Arrays.sort(sorted);
+        System.out.printf("%-10s requests=%d rps=%.0f", name, sorted.length, sorted.length / (double) seconds);
+        if (sorted.length > 0) {
+            System.out.printf(" p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", percentile(sorted, 0.50),
+                    percentile(sorted, 0.95), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1_000_000.0);
+        }
+        System.out.println(" statuses=" + stats.statuses);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,405 @@
+/*
+ * PersistenceBenchmark.java
+ * JMH benchmarks for every DatabaseConnectivity operation on an embedded database.
+ */
+package petgroom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures DatabaseConnectivity against an in-memory H2 database in MySQL
+ * compatibility mode, seeded with {@link #rows} appointments and payments.
+ * Every benchmark is reported both as throughput and as sampled latency, so
+ * the results show ops/ms alongside p50/p90/p99/p99.9/max.
+ *
+ * H2 is not MySQL: absolute numbers only mean something relative to another
+ * run of the same benchmark. Use them to compare builds, not to size servers.
+ *
+ * Usage: ant bench [-Dbench.rows=1000,100000,1000000] [-Dbench.include=PersistenceBenchmark.save.*]
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class PersistenceBenchmark {
+
+    private static final String[] SERVICES = {"Full Groom", "Trim Groom", "Full Bath", "Vaccination"};
+    private static final String LOGIN_EMAIL = "bench@petgroom.local";
+    private static final String LOGIN_PASSWORD = "bench-password";
+
+    /**
+     * Seeded rows per table.
+     */
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private ConnectionPool pool;
+    private DatabaseConnectivity db;
+    private AuthService auth;
+    private ReportService reports;
+    private AppointmentSearchIndex searchIndex;
+    private PaymentJournal journal;
+    private Path journalFile;
+    private Connection keepAlive;
+    private LocalDate firstDay;
+    private int days;
+    private long changeSeq;
+
+    @Setup(Level.Trial)
+    public void seed() throws SQLException, IOException {
+        // A fresh named database per trial; DB_CLOSE_DELAY keeps it while the pool churns connections
+        String url = "jdbc:h2:mem:petgroom-" + rows + "-" + System.nanoTime()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, full_name VARCHAR(255) NOT NULL, "
+                    + "email VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+            stmt.execute("CREATE TABLE appointments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, date DATE NOT NULL, pet_name VARCHAR(255) NOT NULL, "
+                    + "pet_breed VARCHAR(255) NOT NULL, service VARCHAR(255) NOT NULL, station TINYINT NULL, "
+                    + "start_time TIME NULL, end_time TIME NULL, version INT NOT NULL DEFAULT 0)");
+            stmt.execute("CREATE INDEX idx_appointments_date ON appointments (date, id)");
+            stmt.execute("CREATE INDEX idx_appointments_slot ON appointments (date, station, start_time)");
+            stmt.execute("CREATE INDEX idx_appointments_contact ON appointments (contact)");
+            stmt.execute("CREATE TABLE payments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, total_paid_centavos BIGINT NOT NULL, status VARCHAR(50) NOT NULL, "
+                    + "paid_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, journal_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE INDEX idx_payments_contact ON payments (contact)");
+            stmt.execute("CREATE INDEX idx_payments_paid_at ON payments (paid_at)");
+            stmt.execute("CREATE TABLE daily_revenue (day DATE NOT NULL, status VARCHAR(50) NOT NULL, payments INT NOT NULL, "
+                    + "total_centavos BIGINT NOT NULL, PRIMARY KEY (day, status))");
+            stmt.execute("CREATE TABLE daily_appointments (day DATE NOT NULL, service VARCHAR(255) NOT NULL, "
+                    + "appointments INT NOT NULL, PRIMARY KEY (day, service))");
+            stmt.execute("CREATE TABLE change_log (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(32) NOT NULL, "
+                    + "row_id BIGINT NOT NULL, op CHAR(1) NOT NULL, origin CHAR(36) NOT NULL, "
+                    + "changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("CREATE INDEX idx_change_log_changed_at ON change_log (changed_at)");
+        }
+
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        db = new DatabaseConnectivity(pool);
+
+        // Spread the appointments over a year, as a busy shop would have them
+        firstDay = LocalDate.now().minusMonths(6);
+        days = 365;
+        List<Appointment> appointments = new ArrayList<>(10_000);
+        for (int i = 0; i < rows; i++) {
+            appointments.add(appointment(i));
+            if (appointments.size() == 10_000 || i == rows - 1) {
+                db.saveAppointments(appointments, 10_000, (index, row, error) -> {
+                    throw new IllegalStateException("Seeding failed", error);
+                });
+                appointments.clear();
+            }
+        }
+        try (PreparedStatement stmt = keepAlive.prepareStatement(
+                "INSERT INTO payments (client_name, contact, total_paid_centavos, status) VALUES (?, ?, ?, ?)")) {
+            for (int i = 0; i < rows; i++) {
+                stmt.setString(1, "Client " + i);
+                stmt.setString(2, contact(i));
+                stmt.setLong(3, i % 2 == 0 ? 60_000 : 30_000);
+                stmt.setString(4, i % 2 == 0 ? "Paid" : "Downpayment");
+                stmt.addBatch();
+                if (i % 10_000 == 9_999) {
+                    stmt.executeBatch();
+                }
+            }
+            stmt.executeBatch();
+        }
+        // The payments above bypass DatabaseConnectivity, so their rollup is built once here
+        if (!db.rebuildRollups()) {
+            throw new IllegalStateException("Could not build the rollups");
+        }
+        reports = new ReportService(db, null);
+        searchIndex = new AppointmentSearchIndex();
+        for (int i = 0; i < rows; i++) {
+            Appointment a = appointment(i);
+            searchIndex.put(new Appointment(i + 1, a.clientName(), a.contact(), a.date(), a.petName(), a.petBreed(), a.service()));
+        }
+        journalFile = Files.createTempFile("petgroom-bench-", ".journal");
+        journal = new PaymentJournal(journalFile, db);
+        changeSeq = db.queryLatestChangeSeq();
+        auth = new AuthService(db, Integer.getInteger("petgroom.auth.logRounds", 12));
+        if (!auth.register("Bench User", LOGIN_EMAIL, LOGIN_PASSWORD)) {
+            throw new IllegalStateException("Could not register the login user");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException, IOException {
+        journal.close();
+        Files.deleteIfExists(journalFile);
+        pool.close();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+
+    /**
+     * A row of its own for each delete, created outside the measured call.
+     */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        long appointmentId;
+        long paymentId;
+
+        @Setup(Level.Invocation)
+        public void insert(PersistenceBenchmark bench) {
+            appointmentId = bench.db.saveAppointment("Delete Me", "09170000000", "Rex", "Aspin", "Full Bath",
+                    Date.valueOf(bench.firstDay), null).id();
+            paymentId = bench.db.savePayment("Delete Me", "09170000000", 20_000, "Paid").id();
+        }
+    }
+
+    /**
+     * A seeded row and its current version, read outside the measured call as
+     * the dashboard has it before saving an edit.
+     */
+    @State(Scope.Thread)
+    public static class EditTarget {
+        Appointment row;
+
+        @Setup(Level.Invocation)
+        public void read(PersistenceBenchmark bench) throws SQLException {
+            // Seeded ids are 1..rows
+            row = bench.db.queryAppointment(1 + ThreadLocalRandom.current().nextInt(bench.rows));
+        }
+    }
+
+    // Single-row writes
+
+    @Benchmark
+    public Appointment saveAppointment() {
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        Appointment a = appointment(i);
+        return db.saveAppointment(a.clientName(), a.contact(), a.petName(), a.petBreed(), a.service(), a.date(), null);
+    }
+
+    @Benchmark
+    public Appointment saveAppointmentInSlot() {
+        // A random hour at one of two stations; returns null once that slot is taken
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int i = random.nextInt(rows);
+        Appointment a = appointment(i);
+        LocalTime start = LocalTime.of(9 + random.nextInt(9), 0);
+        return db.saveAppointment(a.clientName(), a.contact(), a.petName(), a.petBreed(), a.service(), a.date(),
+                new TimeSlot(1 + random.nextInt(2), start, start.plusHours(1)));
+    }
+
+    @Benchmark
+    public UpdateResult updateAppointment(EditTarget target) {
+        Appointment a = target.row;
+        return db.updateAppointment(a.id(), a.version(), a.clientName(), a.contact(), a.petName(), a.petBreed(),
+                SERVICES[ThreadLocalRandom.current().nextInt(SERVICES.length)], a.date(), null);
+    }
+
+    @Benchmark
+    public UpdateResult updateAppointmentStale(EditTarget target) {
+        // Another terminal saved first: the version check fails and the current row is read back
+        Appointment a = target.row;
+        return db.updateAppointment(a.id(), a.version() - 1, a.clientName(), a.contact(), a.petName(), a.petBreed(),
+                a.service(), a.date(), null);
+    }
+
+    @Benchmark
+    public Payment savePayment() {
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        return db.savePayment("Client " + i, contact(i), 60_000, "Paid");
+    }
+
+    @Benchmark
+    public PendingPayment journalPayment() {
+        // What the till waits for: the journal append and fsync, not the database
+        int i = ThreadLocalRandom.current().nextInt(rows);
+        return journal.record("Client " + i, contact(i), 60_000, "Paid");
+    }
+
+    @Benchmark
+    public boolean registerUser() {
+        return auth.register("Bench User", "user-" + System.nanoTime() + "@petgroom.local", LOGIN_PASSWORD);
+    }
+
+    // Deletes
+
+    @Benchmark
+    public boolean deleteAppointment(DeleteTarget target) {
+        return db.deleteAppointment(target.appointmentId);
+    }
+
+    @Benchmark
+    public boolean deletePayment(DeleteTarget target) {
+        return db.deletePayment(target.paymentId);
+    }
+
+    // Logins
+
+    @Benchmark
+    public boolean login() throws SQLException {
+        return auth.login(LOGIN_EMAIL, LOGIN_PASSWORD);
+    }
+
+    @Benchmark
+    public boolean loginWrongPassword() throws SQLException {
+        return auth.login(LOGIN_EMAIL, "wrong-password");
+    }
+
+    @Benchmark
+    public boolean loginUnknownEmail() throws SQLException {
+        return auth.login("nobody@petgroom.local", LOGIN_PASSWORD);
+    }
+
+    @Benchmark
+    public String getPasswordHash() {
+        return db.getPasswordHash(LOGIN_EMAIL);
+    }
+
+    // Full reads
+
+    @Benchmark
+    public List<Appointment> getAppointments() {
+        return db.getAppointments();
+    }
+
+    @Benchmark
+    public List<Payment> getPayments() {
+        return db.getPayments();
+    }
+
+    @Benchmark
+    public long streamAppointments(Blackhole hole) throws Exception {
+        return db.streamAppointments(null, null, hole::consume);
+    }
+
+    @Benchmark
+    public long streamPayments(Blackhole hole) throws Exception {
+        return db.streamPayments(null, null, hole::consume);
+    }
+
+    // Paged and ranged reads used by the dashboard
+
+    @Benchmark
+    public int countAppointments() {
+        return db.countAppointments();
+    }
+
+    @Benchmark
+    public int countPayments() {
+        return db.countPayments();
+    }
+
+    @Benchmark
+    public List<Appointment> getAppointmentsFirstPage() {
+        return db.getAppointmentsAfter(null, 100);
+    }
+
+    @Benchmark
+    public List<Appointment> getAppointmentsAtMiddle() {
+        return db.getAppointmentsAt(rows / 2, 100);
+    }
+
+    @Benchmark
+    public List<Payment> getPaymentsFirstPage() {
+        return db.getPaymentsAfter(null, 100);
+    }
+
+    @Benchmark
+    public List<Payment> getPaymentsAtMiddle() {
+        return db.getPaymentsAt(rows / 2, 100);
+    }
+
+    @Benchmark
+    public List<Appointment> getAppointmentsForDay() {
+        Date day = Date.valueOf(firstDay.plusDays(ThreadLocalRandom.current().nextInt(days)));
+        return db.getAppointmentsBetween(day, day);
+    }
+
+    @Benchmark
+    public List<ChangeEvent> pollChangeLogIdle() throws SQLException {
+        // One change feed tick on every terminal when nobody is writing
+        return db.queryChangesAfter(changeSeq, 500);
+    }
+
+    // Reports, read from the rollups
+
+    @Benchmark
+    public ReportService.Report reportMonth() throws SQLException {
+        LocalDate today = LocalDate.now();
+        return reports.report(today.withDayOfMonth(1), today, ReportService.Granularity.DAY);
+    }
+
+    @Benchmark
+    public ReportService.Report reportYearByMonth() throws SQLException {
+        return reports.report(firstDay, firstDay.plusDays(days - 1), ReportService.Granularity.MONTH);
+    }
+
+    @Benchmark
+    public Map<LocalDate, Integer> appointmentCountsForMonth() throws SQLException {
+        // One calendar month flip on the dashboard
+        LocalDate month = firstDay.plusMonths(ThreadLocalRandom.current().nextInt(12)).withDayOfMonth(1);
+        return db.queryAppointmentCountsByDay(Date.valueOf(month), Date.valueOf(month.plusMonths(1).minusDays(1)));
+    }
+
+    // Type-ahead search, in memory; each keystroke of the dashboard's search box is one call
+
+    @Benchmark
+    public AppointmentSearchIndex.Result searchClientName() {
+        return searchIndex.search("client " + ThreadLocalRandom.current().nextInt(rows), 500);
+    }
+
+    @Benchmark
+    public AppointmentSearchIndex.Result searchContactDigits() {
+        return searchIndex.search(contact(ThreadLocalRandom.current().nextInt(rows)).substring(4), 500);
+    }
+
+    @Benchmark
+    public AppointmentSearchIndex.Result searchPetAndBreed() {
+        return searchIndex.search("pet " + ThreadLocalRandom.current().nextInt(5_000) + " shih", 500);
+    }
+
+    @Benchmark
+    public AppointmentSearchIndex.Result searchCommonPrefix() {
+        // Matches every row: stops at the result limit
+        return searchIndex.search("cl", 500);
+    }
+
+    private Appointment appointment(int i) {
+        return new Appointment(0, "Client " + i, contact(i), Date.valueOf(firstDay.plusDays(i % days)),
+                "Pet " + (i % 5_000), i % 3 == 0 ? "Shih Tzu" : "Aspin", SERVICES[i % SERVICES.length]);
+    }
+
+    private static String contact(int i) {
+        return String.format("0917%07d", i % 10_000_000);
+    }
+}
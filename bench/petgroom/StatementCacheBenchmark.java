@@ -0,0 +1,104 @@
+/*
+ * StatementCacheBenchmark.java
+ * Compares insert/update latency with and without the prepared statement cache.
+ */
+package petgroom;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Runs saveAppointment and updateAppointment against a real database twice:
+ * once as before the statement cache, with client-side prepares and no cache,
+ * and once as the application runs now, with server-side prepares and the
+ * cache enabled, then prints the latency of each.
+ *
+ * Usage: ant bench-statement-cache [-Dbench.url=... -Dbench.user=... -Dbench.password=... -Dbench.iterations=...]
+ * The default URL is a scratch schema, petgroom_bench, created if missing with
+ * empty copies of the tables in petgroom. Rows are written under a "bench-"
+ * client name and deleted afterwards.
+ */
+public class StatementCacheBenchmark {
+    private static final String[] TABLES = {"appointments", "daily_appointments", "change_log"};
+
+    public static void main(String[] args) throws SQLException {
+        String url = System.getProperty("bench.url", "jdbc:mysql://localhost:3306/petgroom_bench?createDatabaseIfNotExist=true");
+        String user = System.getProperty("bench.user", "root");
+        String password = System.getProperty("bench.password", "");
+        int iterations = Integer.getInteger("bench.iterations", 2_000);
+
+        for (int cacheSize : new int[]{0, 32}) {
+            ConnectionPool.Settings settings = new ConnectionPool.Settings();
+            settings.statementCacheSize = cacheSize;
+            // Without the cache, prepare on the client as the application did before it
+            String runUrl = cacheSize == 0 ? url : url + (url.contains("?") ? "&" : "?") + "useServerPrepStmts=true";
+            try (ConnectionPool pool = new ConnectionPool(runUrl, user, password, settings)) {
+                createTables(pool);
+                run(new DatabaseConnectivity(pool), pool, iterations, cacheSize);
+            }
+        }
+    }
+
+    private static void createTables(ConnectionPool pool) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement()) {
+            for (String table : TABLES) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS " + table + " LIKE petgroom." + table);
+            }
+        }
+    }
+
+    private static void run(DatabaseConnectivity db, ConnectionPool pool, int iterations, int cacheSize) {
+        Date date = new Date(System.currentTimeMillis());
+        String client = "bench-" + cacheSize;
+        // Warm up the connection (and the cache, when enabled) outside the measurement
+        for (int i = 0; i < 200; i++) {
+            Appointment saved = save(db, client, "w" + i, date);
+            db.updateAppointment(saved.id(), saved.version(), client, "w" + i, "Rex", "Aspin", "Trim Groom", date, null);
+            db.deleteAppointment(saved.id());
+        }
+
+        long[] ids = new long[iterations];
+        long[] inserts = new long[iterations];
+        long[] updates = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            Appointment saved = save(db, client, "c" + i, date);
+            inserts[i] = System.nanoTime() - start;
+            ids[i] = saved.id();
+        }
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            db.updateAppointment(ids[i], 0, client, "c" + i, "Rex", "Aspin", "Trim Groom", date, null);
+            updates[i] = System.nanoTime() - start;
+        }
+        for (long id : ids) {
+            db.deleteAppointment(id);
+        }
+
+        System.out.println("statementCacheSize=" + cacheSize + " (hits=" + pool.getStatementCacheHits()
+                + ", misses=" + pool.getStatementCacheMisses() + ")");
+        print("  saveAppointment  ", inserts);
+        print("  updateAppointment", updates);
+    }
+
+    private static Appointment save(DatabaseConnectivity db, String client, String contact, Date date) {
+        Appointment saved = db.saveAppointment(client, contact, "Rex", "Aspin", "Full Bath", date, null);
+        if (saved == null) {
+            throw new IllegalStateException("Could not save a benchmark appointment; see the stack trace above");
+        }
+        return saved;
+    }
+
+    private static void print(String label, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.printf("%s mean=%.1fus p50=%.1fus p99=%.1fus%n", label,
+                mean / 1_000.0,
+                sorted[sorted.length / 2] / 1_000.0,
+                sorted[(int) (sorted.length * 0.99)] / 1_000.0);
+    }
+}
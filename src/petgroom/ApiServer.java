@@ -0,0 +1,683 @@
+/*
+ * ApiServer.java
+ * JSON API over HTTP for running the shop without the Swing front end.
+ */
+package petgroom;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Serves appointments, payments, services and logins as JSON under /api/,
+ * on the JDK's built-in HTTP server. Each request runs on its own virtual
+ * thread and reaches MySQL through the shared connection pool, so the pool
+ * size, not the thread count, bounds the load on the database. Started by
+ * {@code java -jar PETGROOM.jar --serve}.
+ *
+ * Every endpoint but login needs an "Authorization: Bearer" header with a
+ * token from POST /api/login; tokens are kept in memory and expire after
+ * -Dpetgroom.api.sessionMinutes (default 480). Lists are paged with a limit
+ * (at most 500) and an opaque cursor from the previous page's "next". They
+ * carry a weak ETag made of the change feed's position and a count of this
+ * server's own writes, so a client that sends it back in If-None-Match gets
+ * 304 without a query for as long as no terminal has written anything.
+ * Another terminal's write changes the ETag once the feed has read it,
+ * within -Dpetgroom.changes.pollMillis. Single appointments carry their
+ * version as a strong ETag, and PUT needs it back in If-Match (or a
+ * "version" member) to detect concurrent edits.
+ *
+ * The server listens on -Dpetgroom.api.host (default 127.0.0.1) and
+ * -Dpetgroom.api.port (default 8080); request bodies are limited to
+ * -Dpetgroom.api.maxBodyBytes (default 65536).
+ */
+public final class ApiServer implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ApiServer.class.getName());
+    private static final String HOST = System.getProperty("petgroom.api.host", "127.0.0.1");
+    private static final int PORT = Integer.getInteger("petgroom.api.port", 8080);
+    private static final int BACKLOG = Integer.getInteger("petgroom.api.backlog", 1024);
+    private static final int MAX_BODY_BYTES = Integer.getInteger("petgroom.api.maxBodyBytes", 64 * 1024);
+    private static final long SESSION_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("petgroom.api.sessionMinutes", 480));
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_LIMIT = 500;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    private record Session(String email, long expiresAt) {
+    }
+
+    private record Response(int status, String body, String etag) {
+    }
+
+    /**
+     * A request that cannot be served, reported to the client as {"error": message}.
+     */
+    private static final class ApiError extends RuntimeException {
+        private final int status;
+
+        ApiError(int status, String message) {
+            super(message, null, false, false);
+            this.status = status;
+        }
+    }
+
+    /**
+     * The services list as last sent, kept until the catalog swaps its snapshot.
+     */
+    private record ServicesBody(List<Service> services, String body, String etag) {
+    }
+
+    private final DatabaseConnectivity db;
+    private final AuthService auth;
+    private final AppointmentRepository repository;
+    private final SlotScheduler scheduler;
+    private final ServiceCatalog catalog;
+    private final ChangeFeed feed;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    // Writes made through this server; the change feed skips them, so they move the list ETags here
+    private final AtomicLong writes = new AtomicLong();
+    private volatile ServicesBody servicesBody;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Starts serving on the configured address, over the shared pool, cache and catalog.
+     * @return The running server
+     * @throws IOException if the address cannot be bound
+     */
+    public static ApiServer start() throws IOException {
+        ApiServer api = new ApiServer(DatabaseConnectivity.shared(), AuthService.shared(), AppointmentRepository.shared(),
+                ServiceCatalog.shared(), ChangeFeed.shared());
+        api.bind(new InetSocketAddress(HOST, PORT));
+        Metrics.publish();
+        return api;
+    }
+
+    /**
+     * @param db Database
+     * @param auth Checks logins
+     * @param repository Appointment cache that writes go through
+     * @param catalog Services
+     * @param feed Change feed, polling; its position versions the lists
+     */
+    ApiServer(DatabaseConnectivity db, AuthService auth, AppointmentRepository repository, ServiceCatalog catalog, ChangeFeed feed) {
+        this.db = db;
+        this.auth = auth;
+        this.repository = repository;
+        this.scheduler = new SlotScheduler(repository);
+        this.catalog = catalog;
+        this.feed = feed;
+    }
+
+    /**
+     * Binds the address and starts accepting requests.
+     * @param address Address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    void bind(InetSocketAddress address) throws IOException {
+        if (!catalog.isLoaded()) {
+            catalog.refresh();
+        }
+        // The JDK server writes headers and body separately; with Nagle on, a
+        // response can wait out the client's delayed ACK (about 40ms)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(address, BACKLOG);
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("petgroom-api-", 0).factory());
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+        server.start();
+        LOG.log(Level.INFO, "Serving the API on http://{0}:{1}/api/",
+                new Object[]{address.getHostString(), String.valueOf(server.getAddress().getPort())});
+    }
+
+    /**
+     * Stops accepting requests, waits up to a second for those in progress and closes the executor.
+     */
+    @Override
+    public void close() {
+        if (server != null) {
+            server.stop(1);
+            executor.close();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Response response;
+            try {
+                response = route(exchange);
+            } catch (ApiError e) {
+                response = error(e.status, e.getMessage());
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Database call failed for " + exchange.getRequestURI(), e);
+                response = error(503, "The database is unavailable");
+            } catch (RejectedExecutionException e) {
+                // Too many password hashes queued
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                response = error(503, "Busy; try again shortly");
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Request failed: " + exchange.getRequestMethod() + " " + exchange.getRequestURI(), e);
+                response = error(500, "Internal error");
+            }
+            send(exchange, response);
+        }
+    }
+
+    private Response route(HttpExchange exchange) throws IOException, SQLException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getPath().substring("/api/".length()).split("/");
+        String resource = path[0];
+        String id = path.length > 1 ? path[1] : null;
+        if (path.length > 2) {
+            throw new ApiError(404, "No such resource");
+        }
+        if (resource.equals("login") && id == null) {
+            requireMethod(method, "POST");
+            return login(body(exchange));
+        }
+        Session session = authenticate(exchange);
+        Map<String, String> query = query(exchange);
+        return switch (resource) {
+            case "logout" -> {
+                requireMethod(method, "POST");
+                sessions.remove(token(exchange));
+                yield new Response(204, null, null);
+            }
+            case "register" -> {
+                requireMethod(method, "POST");
+                yield register(body(exchange), session);
+            }
+            case "services" -> {
+                requireMethod(method, "GET");
+                yield notModified(exchange, services());
+            }
+            case "slots" -> {
+                requireMethod(method, "GET");
+                yield slots(query);
+            }
+            case "appointments" -> id == null
+                    ? switch (method) {
+                        case "GET" -> listAppointments(exchange, query);
+                        case "POST" -> createAppointment(body(exchange));
+                        default -> throw new ApiError(405, "Use GET or POST");
+                    }
+                    : switch (method) {
+                        case "GET" -> notModified(exchange, getAppointment(parseId(id)));
+                        case "PUT" -> updateAppointment(parseId(id), exchange);
+                        case "DELETE" -> deleteAppointment(parseId(id));
+                        default -> throw new ApiError(405, "Use GET, PUT or DELETE");
+                    };
+            case "payments" -> id == null
+                    ? switch (method) {
+                        case "GET" -> listPayments(exchange, query);
+                        case "POST" -> createPayment(body(exchange));
+                        default -> throw new ApiError(405, "Use GET or POST");
+                    }
+                    : switch (method) {
+                        case "DELETE" -> deletePayment(parseId(id));
+                        default -> throw new ApiError(405, "Use DELETE");
+                    };
+            default -> throw new ApiError(404, "No such resource");
+        };
+    }
+
+    // Sessions
+
+    private Response login(Map<String, Object> body) throws SQLException {
+        String email = string(body, "email");
+        String password = string(body, "password");
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> session.expiresAt() < now);
+        if (!auth.login(email, password)) {
+            throw new ApiError(401, "Wrong email or password");
+        }
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        sessions.put(token, new Session(email, now + SESSION_MILLIS));
+        return new Response(200, "{\"token\":" + Json.quote(token) + ",\"expiresInSeconds\":" + SESSION_MILLIS / 1000 + "}", null);
+    }
+
+    private Response register(Map<String, Object> body, Session session) {
+        String email = string(body, "email");
+        if (!auth.register(string(body, "fullName"), email, string(body, "password"))) {
+            throw new ApiError(409, "The email is taken or the user could not be saved");
+        }
+        LOG.log(Level.INFO, "{0} registered {1} through the API", new Object[]{session.email(), email});
+        return new Response(201, "{\"email\":" + Json.quote(email) + "}", null);
+    }
+
+    private Session authenticate(HttpExchange exchange) {
+        String token = token(exchange);
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null || session.expiresAt() < System.currentTimeMillis()) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            throw new ApiError(401, "Log in first");
+        }
+        return session;
+    }
+
+    private static String token(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        return header != null && header.regionMatches(true, 0, "Bearer ", 0, 7) ? header.substring(7).trim() : null;
+    }
+
+    // Services and slots
+
+    private Response services() {
+        List<Service> services = catalog.services();
+        ServicesBody cached = servicesBody;
+        if (cached == null || cached.services() != services) {
+            StringBuilder out = new StringBuilder("{\"items\":[");
+            for (int i = 0; i < services.size(); i++) {
+                Service service = services.get(i);
+                out.append(i == 0 ? "" : ",")
+                        .append("{\"id\":").append(service.id())
+                        .append(",\"name\":").append(Json.quote(service.name()))
+                        .append(",\"priceCentavos\":").append(service.priceCentavos())
+                        .append(",\"durationMinutes\":").append(service.durationMinutes()).append('}');
+            }
+            String body = out.append("]}").toString();
+            cached = new ServicesBody(services, body, "\"" + Integer.toHexString(body.hashCode()) + "\"");
+            servicesBody = cached;
+        }
+        return new Response(200, cached.body(), cached.etag());
+    }
+
+    private Response slots(Map<String, String> query) {
+        LocalDate date = date(query.get("date"));
+        Service service = service(query.get("service"));
+        StringBuilder out = new StringBuilder("{\"items\":[");
+        List<TimeSlot> free = scheduler.freeSlots(date, scheduler.minutesFor(service), 0);
+        for (int i = 0; i < free.size(); i++) {
+            TimeSlot slot = free.get(i);
+            out.append(i == 0 ? "" : ",")
+                    .append("{\"station\":").append(slot.station())
+                    .append(",\"start\":\"").append(slot.start())
+                    .append("\",\"end\":\"").append(slot.end()).append("\"}");
+        }
+        return new Response(200, out.append("]}").toString(), null);
+    }
+
+    // Appointments
+
+    private Response listAppointments(HttpExchange exchange, Map<String, String> query) throws SQLException {
+        // Taken before the query: a write landing meanwhile leaves an older ETag, never a newer one
+        String etag = listETag();
+        if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return new Response(304, null, etag);
+        }
+        int limit = limit(query);
+        Appointment after = null;
+        String cursor = query.get("after");
+        if (cursor != null) {
+            int split = cursor.indexOf('_');
+            if (split < 0) {
+                throw new ApiError(400, "Bad cursor");
+            }
+            after = new Appointment(parseId(cursor.substring(split + 1)), null, null, Date.valueOf(date(cursor.substring(0, split))),
+                    null, null, null);
+        }
+        List<Appointment> page = db.queryAppointmentsAfter(after, limit);
+        StringBuilder out = new StringBuilder(256 * page.size() + 32).append("{\"items\":[");
+        for (int i = 0; i < page.size(); i++) {
+            appendAppointment(i == 0 ? out : out.append(','), page.get(i));
+        }
+        out.append("],\"next\":");
+        if (page.size() < limit) {
+            out.append("null");
+        } else {
+            Appointment last = page.get(page.size() - 1);
+            out.append('"').append(last.date().toLocalDate()).append('_').append(last.id()).append('"');
+        }
+        return new Response(200, out.append('}').toString(), etag);
+    }
+
+    private Response getAppointment(long id) throws SQLException {
+        Appointment row = db.queryAppointment(id);
+        if (row == null) {
+            throw new ApiError(404, "No appointment " + id);
+        }
+        return appointment(200, row);
+    }
+
+    private Response createAppointment(Map<String, Object> body) {
+        Appointment draft = draft(body);
+        if (!scheduler.isFree(draft.date().toLocalDate(), draft.slot(), 0)) {
+            throw new ApiError(409, "The slot is taken or outside opening hours");
+        }
+        Appointment saved = repository.save(draft.clientName(), draft.contact(), draft.petName(), draft.petBreed(),
+                draft.service(), draft.date(), draft.slot());
+        if (saved == null) {
+            if (!scheduler.isFree(draft.date().toLocalDate(), draft.slot(), 0)) {
+                throw new ApiError(409, "The slot was just booked");
+            }
+            throw new ApiError(503, "The appointment could not be saved");
+        }
+        writes.incrementAndGet();
+        return appointment(201, saved);
+    }
+
+    private Response updateAppointment(long id, HttpExchange exchange) throws IOException {
+        Map<String, Object> body = body(exchange);
+        int version = version(exchange.getRequestHeaders().getFirst("If-Match"), body.get("version"));
+        Appointment draft = draft(body);
+        if (!scheduler.isFree(draft.date().toLocalDate(), draft.slot(), id)) {
+            throw new ApiError(409, "The slot is taken or outside opening hours");
+        }
+        UpdateResult result = repository.update(id, version, draft.clientName(), draft.contact(), draft.petName(),
+                draft.petBreed(), draft.service(), draft.date(), draft.slot());
+        return switch (result.status()) {
+            case UPDATED -> {
+                writes.incrementAndGet();
+                yield appointment(200, result.row());
+            }
+            case CONFLICT -> {
+                StringBuilder out = new StringBuilder("{\"error\":\"The appointment was changed meanwhile\",\"current\":");
+                appendAppointment(out, result.row());
+                yield new Response(409, out.append('}').toString(), "\"" + result.row().version() + "\"");
+            }
+            case DELETED -> throw new ApiError(404, "No appointment " + id);
+            case SLOT_TAKEN -> throw new ApiError(409, "The slot was just booked");
+            case FAILED -> throw new ApiError(503, "The appointment could not be saved");
+        };
+    }
+
+    private Response deleteAppointment(long id) throws SQLException {
+        if (!repository.delete(id)) {
+            if (db.queryAppointment(id) == null) {
+                throw new ApiError(404, "No appointment " + id);
+            }
+            throw new ApiError(503, "The appointment could not be deleted");
+        }
+        writes.incrementAndGet();
+        return new Response(204, null, null);
+    }
+
+    /**
+     * Reads an appointment from a request body. The slot starts at "start"
+     * on "station" and lasts as long as the service.
+     */
+    private Appointment draft(Map<String, Object> body) {
+        Service service = service(string(body, "service"));
+        LocalTime start;
+        try {
+            start = LocalTime.parse(string(body, "start"));
+        } catch (DateTimeParseException e) {
+            throw new ApiError(400, "start must be a time such as 09:30");
+        }
+        TimeSlot slot = new TimeSlot((int) number(body, "station"), start, start.plusMinutes(scheduler.minutesFor(service)));
+        return new Appointment(0, string(body, "clientName"), string(body, "contact"), Date.valueOf(date(string(body, "date"))),
+                string(body, "petName"), string(body, "petBreed"), service.name(), slot);
+    }
+
+    private static Response appointment(int status, Appointment row) {
+        return new Response(status, appendAppointment(new StringBuilder(256), row).toString(), "\"" + row.version() + "\"");
+    }
+
+    private static StringBuilder appendAppointment(StringBuilder out, Appointment row) {
+        TimeSlot slot = row.slot();
+        return out.append("{\"id\":").append(row.id())
+                .append(",\"clientName\":").append(Json.quote(row.clientName()))
+                .append(",\"contact\":").append(Json.quote(row.contact()))
+                .append(",\"date\":\"").append(row.date().toLocalDate())
+                .append("\",\"petName\":").append(Json.quote(row.petName()))
+                .append(",\"petBreed\":").append(Json.quote(row.petBreed()))
+                .append(",\"service\":").append(Json.quote(row.service()))
+                .append(",\"station\":").append(slot == null ? "null" : String.valueOf(slot.station()))
+                .append(",\"start\":").append(slot == null ? "null" : Json.quote(slot.start().toString()))
+                .append(",\"end\":").append(slot == null ? "null" : Json.quote(slot.end().toString()))
+                .append(",\"version\":").append(row.version()).append('}');
+    }
+
+    /**
+     * @return The version an update is made against, from If-Match or the body
+     */
+    private static int version(String ifMatch, Object fromBody) {
+        if (ifMatch != null) {
+            String tag = ifMatch.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            try {
+                return Integer.parseInt(tag.replace("\"", ""));
+            } catch (NumberFormatException e) {
+                throw new ApiError(412, "If-Match must be the appointment's ETag");
+            }
+        }
+        if (fromBody instanceof Long version) {
+            return version.intValue();
+        }
+        throw new ApiError(428, "Send the version being edited in If-Match or \"version\"");
+    }
+
+    // Payments
+
+    private Response listPayments(HttpExchange exchange, Map<String, String> query) throws SQLException {
+        String etag = listETag();
+        if (etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return new Response(304, null, etag);
+        }
+        int limit = limit(query);
+        String cursor = query.get("after");
+        Payment after = cursor == null ? null : new Payment(parseId(cursor), null, null, 0, null, null);
+        List<Payment> page = db.queryPaymentsAfter(after, limit);
+        StringBuilder out = new StringBuilder(160 * page.size() + 32).append("{\"items\":[");
+        for (int i = 0; i < page.size(); i++) {
+            appendPayment(i == 0 ? out : out.append(','), page.get(i));
+        }
+        out.append("],\"next\":").append(page.size() < limit ? "null" : "\"" + page.get(page.size() - 1).id() + "\"");
+        return new Response(200, out.append('}').toString(), etag);
+    }
+
+    private Response createPayment(Map<String, Object> body) {
+        String status = string(body, "status");
+        if (!status.equals("Paid") && !status.equals("Downpayment")) {
+            throw new ApiError(400, "status must be Paid or Downpayment");
+        }
+        long centavos = number(body, "totalPaidCentavos");
+        if (centavos <= 0) {
+            throw new ApiError(400, "totalPaidCentavos must be positive");
+        }
+        Payment saved = db.savePayment(string(body, "clientName"), string(body, "contact"), centavos, status);
+        if (saved == null) {
+            throw new ApiError(503, "The payment could not be saved");
+        }
+        writes.incrementAndGet();
+        return new Response(201, appendPayment(new StringBuilder(160), saved).toString(), null);
+    }
+
+    private Response deletePayment(long id) throws SQLException {
+        if (!db.deletePayment(id)) {
+            if (db.queryPayments(List.of(id)).isEmpty()) {
+                throw new ApiError(404, "No payment " + id);
+            }
+            throw new ApiError(503, "The payment could not be deleted");
+        }
+        writes.incrementAndGet();
+        return new Response(204, null, null);
+    }
+
+    private static StringBuilder appendPayment(StringBuilder out, Payment row) {
+        return out.append("{\"id\":").append(row.id())
+                .append(",\"clientName\":").append(Json.quote(row.clientName()))
+                .append(",\"contact\":").append(Json.quote(row.contact()))
+                .append(",\"totalPaidCentavos\":").append(row.totalPaidCentavos())
+                .append(",\"status\":").append(Json.quote(row.status()))
+                .append(",\"paidAt\":").append(row.paidAt() == null ? "null" : Json.quote(row.paidAt().toLocalDateTime().toString()))
+                .append('}');
+    }
+
+    // Request and response plumbing
+
+    /**
+     * @return The ETag for list responses, or null when it cannot be trusted
+     *         (the feed has not read the log yet, or MySQL is down and the
+     *         local store is serving)
+     */
+    private String listETag() {
+        long position = feed.position();
+        if (position < 0 || db.isOffline()) {
+            return null;
+        }
+        return "W/\"" + position + "." + writes.get() + "\"";
+    }
+
+    private static Response notModified(HttpExchange exchange, Response response) {
+        String etag = response.etag();
+        if (response.status() == 200 && etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            return new Response(304, null, etag);
+        }
+        return response;
+    }
+
+    private static Response error(int status, String message) {
+        return new Response(status, "{\"error\":" + Json.quote(message) + "}", null);
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        if (response.etag() != null) {
+            headers.set("ETag", response.etag());
+            headers.set("Cache-Control", "no-cache");
+        }
+        if (response.body() == null) {
+            exchange.sendResponseHeaders(response.status(), -1);
+            return;
+        }
+        byte[] bytes = response.body().getBytes(StandardCharsets.UTF_8);
+        headers.set("Content-Type", JSON);
+        exchange.sendResponseHeaders(response.status(), bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> body(HttpExchange exchange) throws IOException {
+        byte[] bytes;
+        try (InputStream in = exchange.getRequestBody()) {
+            bytes = in.readNBytes(MAX_BODY_BYTES + 1);
+        }
+        if (bytes.length > MAX_BODY_BYTES) {
+            throw new ApiError(413, "The request body is too large");
+        }
+        Object parsed;
+        try {
+            parsed = Json.parse(new String(bytes, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ApiError(400, "Bad JSON: " + e.getMessage());
+        }
+        if (!(parsed instanceof Map)) {
+            throw new ApiError(400, "The request body must be a JSON object");
+        }
+        return (Map<String, Object>) parsed;
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if (raw == null) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            params.put(URLDecoder.decode(key, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static void requireMethod(String method, String allowed) {
+        if (!method.equals(allowed)) {
+            throw new ApiError(405, "Use " + allowed);
+        }
+    }
+
+    private static String string(Map<String, Object> body, String name) {
+        if (body.get(name) instanceof String value && !value.isBlank()) {
+            return value.trim();
+        }
+        throw new ApiError(400, name + " is required");
+    }
+
+    private static long number(Map<String, Object> body, String name) {
+        if (body.get(name) instanceof Long value) {
+            return value;
+        }
+        throw new ApiError(400, name + " must be a whole number");
+    }
+
+    private static long parseId(String text) {
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            throw new ApiError(404, "No such resource");
+        }
+    }
+
+    private static LocalDate date(String text) {
+        if (text == null) {
+            throw new ApiError(400, "date is required");
+        }
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            throw new ApiError(400, "Dates look like 2024-05-31");
+        }
+    }
+
+    private Service service(String name) {
+        if (name == null) {
+            throw new ApiError(400, "service is required");
+        }
+        Service service = catalog.find(name);
+        if (service == null) {
+            throw new ApiError(400, "Unknown service " + name);
+        }
+        return service;
+    }
+
+    private static int limit(Map<String, String> query) {
+        String text = query.get("limit");
+        if (text == null) {
+            return DEFAULT_LIMIT;
+        }
+        try {
+            int limit = Integer.parseInt(text);
+            if (limit >= 1 && limit <= MAX_LIMIT) {
+                return limit;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new ApiError(400, "limit must be between 1 and " + MAX_LIMIT);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Appointment.java
+ * One row of the appointments table.
+ */
+package petgroom;
+
+import java.sql.Date;
+import java.util.Objects;
+
+/**
+ * Immutable appointment row as read from the database.
+ * @param id Surrogate key
+ * @param clientName Client's name
+ * @param contact Client's contact information
+ * @param date Appointment date
+ * @param petName Pet's name
+ * @param petBreed Pet's breed
+ * @param service Service name (labels such as "FullGroom ₱600" on older rows)
+ * @param slot Station and time booked, or null for an appointment booked for the day as a whole
+ * @param version Number of times the row has been updated; an update names
+ *        the version it was made against and fails if the row has moved on
+ */
+public record Appointment(long id, String clientName, String contact, Date date, String petName, String petBreed, String service,
+        TimeSlot slot, int version) {
+
+    /**
+     * A row that has not been updated since it was inserted.
+     */
+    public Appointment(long id, String clientName, String contact, Date date, String petName, String petBreed, String service,
+            TimeSlot slot) {
+        this(id, clientName, contact, date, petName, petBreed, service, slot, 0);
+    }
+
+    /**
+     * An appointment for the day as a whole, as booked before time slots and by the CSV import.
+     */
+    public Appointment(long id, String clientName, String contact, Date date, String petName, String petBreed, String service) {
+        this(id, clientName, contact, date, petName, petBreed, service, null);
+    }
+
+    /**
+     * Combines an edit with a newer version saved elsewhere meanwhile. Fields
+     * the edit left alone take the newer value; fields the edit changed keep
+     * the edit's value, including any the newer version also changed.
+     * @param base The version the edit started from
+     * @param mine The edited row
+     * @param theirs The version now in the database
+     * @return The merged row, carrying theirs' id and version
+     */
+    static Appointment merge(Appointment base, Appointment mine, Appointment theirs) {
+        return new Appointment(theirs.id,
+                pick(base.clientName, mine.clientName, theirs.clientName),
+                pick(base.contact, mine.contact, theirs.contact),
+                base.date.toLocalDate().equals(mine.date.toLocalDate()) ? theirs.date : mine.date,
+                pick(base.petName, mine.petName, theirs.petName),
+                pick(base.petBreed, mine.petBreed, theirs.petBreed),
+                pick(base.service, mine.service, theirs.service),
+                pick(base.slot, mine.slot, theirs.slot),
+                theirs.version);
+    }
+
+    private static <T> T pick(T base, T mine, T theirs) {
+        return Objects.equals(base, mine) ? theirs : mine;
+    }
+}
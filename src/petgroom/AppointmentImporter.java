@@ -0,0 +1,186 @@
+/*
+ * AppointmentImporter.java
+ * Streams appointments from a CSV file into the database in batches.
+ */
+package petgroom;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Imports appointments from CSV with the columns
+ * client_name,contact,date,pet_name,pet_breed,service (date as yyyy-MM-dd).
+ * A header row with those names is skipped. The file is read as a stream and
+ * saved with {@link DatabaseConnectivity#saveAppointments}, one transaction
+ * per batch, so memory use depends on the batch size, not the file size.
+ *
+ * Command line: java -cp PETGROOM.jar petgroom.AppointmentImporter bookings.csv [batchSize]
+ */
+public final class AppointmentImporter {
+
+    private static final int DEFAULT_BATCH_SIZE = Integer.getInteger("petgroom.import.batchSize", 1_000);
+
+    /**
+     * Receives per-row errors and progress while importing.
+     */
+    public interface Listener {
+        /**
+         * @param line Line number of the rejected row
+         * @param reason Why it was rejected
+         */
+        void rowFailed(long line, String reason);
+
+        /**
+         * Called after each batch commits.
+         * @param rowsRead Data rows read so far
+         * @param saved Rows saved so far
+         */
+        void progress(long rowsRead, long saved);
+    }
+
+    /**
+     * Totals of one import.
+     * @param rowsRead Data rows read
+     * @param saved Rows saved
+     * @param failed Rows rejected while parsing or saving
+     */
+    public record Result(long rowsRead, long saved, long failed) {
+    }
+
+    private final DatabaseConnectivity db;
+    private final int batchSize;
+
+    /**
+     * @param db Where to save the rows
+     * @param batchSize Rows per batch and transaction
+     */
+    public AppointmentImporter(DatabaseConnectivity db, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.db = db;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports every row of the CSV.
+     * @param reader CSV source
+     * @param listener Receives row errors and progress
+     * @return Import totals
+     * @throws IOException if reading fails
+     */
+    public Result importCsv(Reader reader, Listener listener) throws IOException {
+        Csv csv = new Csv(reader instanceof BufferedReader ? reader : new BufferedReader(reader));
+        List<Appointment> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        long rowsRead = 0;
+        long saved = 0;
+        long[] failed = {0};
+        boolean first = true;
+
+        long line = csv.getLine();
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            long recordLine = line;
+            line = csv.getLine();
+            if (first && isHeader(record)) {
+                first = false;
+                continue;
+            }
+            first = false;
+            if (record.size() == 1 && record.get(0).isBlank()) {
+                continue;
+            }
+            rowsRead++;
+            try {
+                batch.add(parse(record));
+                batchLines.add(recordLine);
+            } catch (IllegalArgumentException e) {
+                failed[0]++;
+                listener.rowFailed(recordLine, e.getMessage());
+            }
+            if (batch.size() == batchSize) {
+                saved += flush(batch, batchLines, listener, failed);
+                listener.progress(rowsRead, saved);
+            }
+        }
+        if (!batch.isEmpty()) {
+            saved += flush(batch, batchLines, listener, failed);
+        }
+        listener.progress(rowsRead, saved);
+        return new Result(rowsRead, saved, failed[0]);
+    }
+
+    private int flush(List<Appointment> batch, List<Long> batchLines, Listener listener, long[] failed) {
+        int saved = db.saveAppointments(batch, batchSize, new DatabaseConnectivity.BatchListener() {
+            @Override
+            public void rowFailed(int index, Appointment row, SQLException error) {
+                failed[0]++;
+                listener.rowFailed(batchLines.get(index), error.getMessage());
+            }
+        });
+        batch.clear();
+        batchLines.clear();
+        return saved;
+    }
+
+    private static boolean isHeader(List<String> record) {
+        return !record.isEmpty() && record.get(0).trim().toLowerCase(Locale.ROOT).equals("client_name");
+    }
+
+    private static Appointment parse(List<String> record) {
+        if (record.size() != 6) {
+            throw new IllegalArgumentException("Expected 6 columns but found " + record.size());
+        }
+        String[] fields = new String[6];
+        for (int i = 0; i < 6; i++) {
+            fields[i] = record.get(i).trim();
+            if (fields[i].isEmpty()) {
+                throw new IllegalArgumentException("Column " + (i + 1) + " is empty");
+            }
+        }
+        Date date;
+        try {
+            date = Date.valueOf(fields[2]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid date '" + fields[2] + "', expected yyyy-MM-dd");
+        }
+        return new Appointment(0, fields[0], fields[1], date, fields[3], fields[4], fields[5]);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java -cp PETGROOM.jar petgroom.AppointmentImporter <file.csv> [batchSize]");
+            System.exit(2);
+        }
+        int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_BATCH_SIZE;
+        AppointmentImporter importer = new AppointmentImporter(new DatabaseConnectivity(), batchSize);
+        long start = System.nanoTime();
+        Result result;
+        try (Reader reader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8)) {
+            result = importer.importCsv(reader, new Listener() {
+                @Override
+                public void rowFailed(long line, String reason) {
+                    System.err.println("Line " + line + ": " + reason);
+                }
+
+                @Override
+                public void progress(long rowsRead, long saved) {
+                    System.out.println(rowsRead + " rows read, " + saved + " saved");
+                }
+            });
+        }
+        System.out.printf("Imported %d of %d rows (%d failed) in %.1f s%n",
+                result.saved(), result.rowsRead(), result.failed(), (System.nanoTime() - start) / 1e9);
+        System.exit(result.failed() == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,458 @@
+/*
+ * AppointmentRepository.java
+ * Write-through in-memory cache of appointments, indexed by date.
+ */
+package petgroom;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps appointments in memory, keyed by date, with secondary indexes by
+ * contact and pet name. Dates are loaded from the database a month at a time
+ * the first time they are asked for; the window around today is preloaded.
+ * Writes go to the database first and update the cache once they have
+ * committed, so the cache never shows a row the database does not have.
+ *
+ * Lookups on loaded months take a read lock and never touch the database.
+ * Contact and pet lookups only cover the months loaded so far. Type-ahead
+ * {@link #search} covers every appointment once {@link #loadSearchIndex} has run.
+ */
+public final class AppointmentRepository implements AppointmentRepositoryMBean {
+    private static final Logger LOG = Logger.getLogger(AppointmentRepository.class.getName());
+    private static final int PRELOAD_DAYS_BEFORE = Integer.getInteger("petgroom.repository.preloadDaysBefore", 7);
+    private static final int PRELOAD_WEEKS_AHEAD = Integer.getInteger("petgroom.repository.preloadWeeksAhead", 8);
+    private static final int SEARCH_CHUNK = 10_000;
+    private static final int SEARCH_LIMIT = Integer.getInteger("petgroom.search.maxResults", 500);
+
+    private static final class Shared {
+        static final AppointmentRepository INSTANCE = new AppointmentRepository(DatabaseConnectivity.shared());
+    }
+
+    private final DatabaseConnectivity db;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NavigableMap<LocalDate, Map<Long, Appointment>> byDate = new TreeMap<>();
+    private final Map<Long, Appointment> byId = new HashMap<>();
+    private final Map<String, Set<Long>> byContact = new HashMap<>();
+    private final Map<String, Set<Long>> byPet = new HashMap<>();
+    private final Set<YearMonth> loadedMonths = new HashSet<>();
+    // Writes made while a month load was running (null row = delete), so the
+    // load neither resurrects, overwrites nor misses them
+    private final Map<Long, Long> writeSequences = new HashMap<>();
+    private final Map<Long, Appointment> writesDuringLoad = new HashMap<>();
+    private long writeSequence;
+    private int loadsInFlight;
+    // Every appointment, for type-ahead search; filled once by loadSearchIndex
+    private final AppointmentSearchIndex searchIndex = new AppointmentSearchIndex();
+    private final Map<Long, Appointment> writesDuringSearchLoad = new HashMap<>();
+    private boolean searchLoading;
+    private volatile boolean searchReady;
+
+    /**
+     * @return The process-wide repository over the shared connection pool
+     */
+    public static AppointmentRepository shared() {
+        return Shared.INSTANCE;
+    }
+
+    AppointmentRepository(DatabaseConnectivity db) {
+        this.db = db;
+    }
+
+    /**
+     * Loads the months covering the days around today. Blocks on the database.
+     */
+    public void preload() {
+        LocalDate today = LocalDate.now();
+        ensureLoaded(today.minusDays(PRELOAD_DAYS_BEFORE), today.plusWeeks(PRELOAD_WEEKS_AHEAD));
+    }
+
+    /**
+     * @param date A date
+     * @return Whether the date's month is in memory, so lookups on it will not block
+     */
+    public boolean isLoaded(LocalDate date) {
+        lock.readLock().lock();
+        try {
+            return loadedMonths.contains(YearMonth.from(date));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param date A date
+     * @return Appointments on that date, ordered by id; loads the month if needed
+     */
+    public List<Appointment> findByDate(LocalDate date) {
+        return findBetween(date, date);
+    }
+
+    /**
+     * @param from First date, inclusive
+     * @param to Last date, inclusive
+     * @return Appointments in the range, ordered by date then id; loads missing months
+     */
+    public List<Appointment> findBetween(LocalDate from, LocalDate to) {
+        ensureLoaded(from, to);
+        lock.readLock().lock();
+        try {
+            List<Appointment> result = new ArrayList<>();
+            for (Map<Long, Appointment> day : byDate.subMap(from, true, to, true).values()) {
+                result.addAll(day.values());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param id Appointment id
+     * @return The cached appointment, or null if it is not in a loaded month
+     */
+    public Appointment findById(long id) {
+        lock.readLock().lock();
+        try {
+            return byId.get(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param contact Contact number, matched exactly
+     * @return Cached appointments for that contact, ordered by date then id
+     */
+    public List<Appointment> findByContact(String contact) {
+        return lookup(byContact, contact.trim());
+    }
+
+    /**
+     * @param petName Pet name, matched case-insensitively
+     * @return Cached appointments for that pet, ordered by date then id
+     */
+    public List<Appointment> findByPet(String petName) {
+        return lookup(byPet, petKey(petName));
+    }
+
+    /**
+     * Reads every appointment into the search index, once. Blocks on the
+     * database; writes made meanwhile are kept and win over the rows read.
+     */
+    public void loadSearchIndex() {
+        lock.writeLock().lock();
+        try {
+            if (searchReady || searchLoading) {
+                return;
+            }
+            searchLoading = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        long start = System.nanoTime();
+        List<Appointment> chunk = new ArrayList<>(SEARCH_CHUNK);
+        boolean loaded = false;
+        try {
+            db.streamAppointments(null, null, row -> {
+                chunk.add(row);
+                if (chunk.size() == SEARCH_CHUNK) {
+                    indexForSearch(chunk);
+                }
+            });
+            indexForSearch(chunk);
+            loaded = true;
+        } catch (SQLException | IOException e) {
+            LOG.log(Level.WARNING, "Could not load the search index", e);
+        }
+        lock.writeLock().lock();
+        try {
+            searchLoading = false;
+            writesDuringSearchLoad.clear();
+            if (loaded) {
+                searchReady = true;
+            } else {
+                searchIndex.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (loaded) {
+            LOG.log(Level.INFO, "Indexed {0} appointments for search in {1} ms",
+                    new Object[]{searchIndex.size(), (System.nanoTime() - start) / 1_000_000});
+        }
+    }
+
+    /**
+     * @return Whether {@link #search} covers every appointment
+     */
+    public boolean isSearchReady() {
+        return searchReady;
+    }
+
+    /**
+     * @return Appointments held in the date cache
+     */
+    public int getCachedCount() {
+        lock.readLock().lock();
+        try {
+            return byId.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return Months loaded into the date cache
+     */
+    public int getLoadedMonthCount() {
+        lock.readLock().lock();
+        try {
+            return loadedMonths.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds appointments by client name, contact, pet name or breed. Does not
+     * touch the database; returns nothing until the search index is loaded.
+     * @param query Words typed by the user; see AppointmentSearchIndex for the matching rules
+     * @return Up to -Dpetgroom.search.maxResults (default 500) matches in date order, the most recently written if there are more
+     */
+    public AppointmentSearchIndex.Result search(String query) {
+        return searchIndex.search(query, SEARCH_LIMIT);
+    }
+
+    /**
+     * Saves a new appointment and caches it once the insert has committed.
+     * @return The saved appointment, or null if saving failed or the slot was taken
+     */
+    public Appointment save(String clientName, String contact, String petName, String petBreed, String service, Date date, TimeSlot slot) {
+        Appointment saved = db.saveAppointment(clientName, contact, petName, petBreed, service, date, slot);
+        if (saved != null) {
+            applyWrite(saved.id(), saved);
+        }
+        return saved;
+    }
+
+    /**
+     * Updates an appointment if it is still at the given version, and
+     * re-indexes it once the update has committed. Another terminal's
+     * version, found on a conflict, reaches the cache through the change feed.
+     * @return The outcome, as from {@link DatabaseConnectivity#updateAppointment}
+     */
+    public UpdateResult update(long id, int version, String clientName, String contact, String petName, String petBreed, String service, Date date, TimeSlot slot) {
+        UpdateResult result = db.updateAppointment(id, version, clientName, contact, petName, petBreed, service, date, slot);
+        if (result.status() == UpdateResult.Status.UPDATED) {
+            applyWrite(id, result.row());
+        }
+        return result;
+    }
+
+    /**
+     * Deletes an appointment and drops it from the cache once the delete has committed.
+     * @return true if successful, false otherwise
+     */
+    public boolean delete(long id) {
+        boolean deleted = db.deleteAppointment(id);
+        if (deleted) {
+            applyWrite(id, null);
+        }
+        return deleted;
+    }
+
+    /**
+     * Applies a write another terminal made, as read back from the database.
+     * @param id Appointment id
+     * @param row The appointment now, or null if it was deleted
+     * @return The appointment as cached before, or null if it was not cached
+     */
+    Appointment applyChange(long id, Appointment row) {
+        return applyWrite(id, row);
+    }
+
+    /**
+     * Empties the cache and the search index; months are reloaded on next
+     * use, the index by the next {@link #loadSearchIndex}.
+     */
+    public void invalidate() {
+        lock.writeLock().lock();
+        try {
+            byDate.clear();
+            byId.clear();
+            byContact.clear();
+            byPet.clear();
+            loadedMonths.clear();
+            if (!searchLoading) {
+                searchReady = false;
+                searchIndex.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded(LocalDate from, LocalDate to) {
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            if (!isLoaded(month.atDay(1))) {
+                loadMonth(month);
+            }
+        }
+    }
+
+    private void loadMonth(YearMonth month) {
+        long startSequence;
+        lock.writeLock().lock();
+        try {
+            startSequence = writeSequence;
+            loadsInFlight++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        List<Appointment> rows = null;
+        try {
+            rows = db.queryAppointmentsBetween(Date.valueOf(month.atDay(1)), Date.valueOf(month.atEndOfMonth()));
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Could not load appointments for " + month, e);
+        }
+        lock.writeLock().lock();
+        try {
+            if (rows != null && loadedMonths.add(month)) {
+                for (Appointment row : rows) {
+                    if (!writtenSince(row.id(), startSequence)) {
+                        index(row);
+                    }
+                }
+                for (Map.Entry<Long, Appointment> write : writesDuringLoad.entrySet()) {
+                    Appointment row = write.getValue();
+                    if (row != null && writtenSince(write.getKey(), startSequence)
+                            && YearMonth.from(row.date().toLocalDate()).equals(month)) {
+                        index(row);
+                    }
+                }
+            }
+            if (--loadsInFlight == 0) {
+                writeSequences.clear();
+                writesDuringLoad.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces (or with a null row, removes) the cached version of an appointment.
+     * @return The version cached before, or null
+     */
+    private Appointment applyWrite(long id, Appointment row) {
+        lock.writeLock().lock();
+        try {
+            writeSequence++;
+            if (loadsInFlight > 0) {
+                writeSequences.put(id, writeSequence);
+                writesDuringLoad.put(id, row);
+            }
+            Appointment old = byId.get(id);
+            if (old != null) {
+                unindex(old);
+            }
+            if (row != null && loadedMonths.contains(YearMonth.from(row.date().toLocalDate()))) {
+                index(row);
+            }
+            if (searchLoading) {
+                writesDuringSearchLoad.put(id, row);
+            }
+            if (searchLoading || searchReady) {
+                if (row == null) {
+                    searchIndex.remove(id);
+                } else {
+                    searchIndex.put(row);
+                }
+            }
+            return old;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds streamed rows to the search index, skipping any written since the load began.
+     */
+    private void indexForSearch(List<Appointment> chunk) {
+        // The read lock keeps writes, which take the write lock, from landing between check and put
+        lock.readLock().lock();
+        try {
+            chunk.removeIf(row -> writesDuringSearchLoad.containsKey(row.id()));
+            searchIndex.putAll(chunk);
+        } finally {
+            lock.readLock().unlock();
+        }
+        chunk.clear();
+    }
+
+    private boolean writtenSince(long id, long sequence) {
+        Long writtenAt = writeSequences.get(id);
+        return writtenAt != null && writtenAt > sequence;
+    }
+
+    private void index(Appointment row) {
+        byId.put(row.id(), row);
+        byDate.computeIfAbsent(row.date().toLocalDate(), d -> new TreeMap<>()).put(row.id(), row);
+        byContact.computeIfAbsent(row.contact().trim(), c -> new HashSet<>()).add(row.id());
+        byPet.computeIfAbsent(petKey(row.petName()), p -> new HashSet<>()).add(row.id());
+    }
+
+    private void unindex(Appointment row) {
+        byId.remove(row.id());
+        LocalDate date = row.date().toLocalDate();
+        Map<Long, Appointment> day = byDate.get(date);
+        if (day != null && day.remove(row.id()) != null && day.isEmpty()) {
+            byDate.remove(date);
+        }
+        removeFrom(byContact, row.contact().trim(), row.id());
+        removeFrom(byPet, petKey(row.petName()), row.id());
+    }
+
+    private List<Appointment> lookup(Map<String, Set<Long>> index, String key) {
+        lock.readLock().lock();
+        try {
+            Set<Long> ids = index.getOrDefault(key, Collections.emptySet());
+            List<Appointment> result = new ArrayList<>(ids.size());
+            for (Long id : ids) {
+                result.add(byId.get(id));
+            }
+            result.sort(AppointmentTableModel.ORDER);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static void removeFrom(Map<String, Set<Long>> index, String key, long id) {
+        Set<Long> ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static String petKey(String petName) {
+        return petName.trim().toLowerCase(Locale.ROOT);
+    }
+}
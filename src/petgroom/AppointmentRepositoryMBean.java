@@ -0,0 +1,17 @@
+/*
+ * AppointmentRepositoryMBean.java
+ * JMX view of the appointment cache.
+ */
+package petgroom;
+
+/**
+ * Published as petgroom:type=AppointmentRepository.
+ */
+public interface AppointmentRepositoryMBean {
+
+    int getCachedCount();
+
+    int getLoadedMonthCount();
+
+    boolean isSearchReady();
+}
@@ -0,0 +1,17 @@
+/*
+ * AppointmentRollup.java
+ * One row of the daily_appointments rollup table.
+ */
+package petgroom;
+
+import java.time.LocalDate;
+
+/**
+ * Appointments for one service on one day, as kept up to date by the
+ * appointment writes in DatabaseConnectivity.
+ * @param day Appointment date
+ * @param service Service name as stored on the appointments
+ * @param appointments Number of appointments
+ */
+public record AppointmentRollup(LocalDate day, String service, int appointments) {
+}
@@ -0,0 +1,307 @@
+/*
+ * AppointmentSearchIndex.java
+ * In-memory n-gram index for type-ahead search over appointments.
+ */
+package petgroom;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Finds appointments by client name, contact, pet name and breed as the user
+ * types. Every word of those fields is indexed by its trigrams and by its one
+ * and two letter prefixes, each key mapping to the list of appointments that
+ * contain it. A query term looks up its rarest key and checks only the
+ * appointments in that list, so the cost follows the number of candidates and
+ * not the number of appointments.
+ *
+ * Matching ignores case and punctuation. Terms of three or more characters
+ * match anywhere in a word ("0917" finds any contact containing it); shorter
+ * terms match the start of a word. Every term of the query must match.
+ *
+ * A written row is appended and its previous slot blanked; blank slots are
+ * skipped by searches and reclaimed by an occasional rebuild of the key lists.
+ * Thread-safe: searches share a read lock, writes take the write lock.
+ */
+public final class AppointmentSearchIndex {
+
+    /**
+     * Outcome of a search.
+     * @param rows Matching appointments ordered by date then id, at most the requested limit
+     * @param more Whether there were more matches than the limit; the most recently written are returned
+     */
+    public record Result(List<Appointment> rows, boolean more) {
+    }
+
+    private static final String PREFIX = "\u0001";
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, IntList> postings = new HashMap<>();
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private Appointment[] rows = new Appointment[1024];
+    // " client contact pet breed", normalised, for checking candidates
+    private String[] texts = new String[1024];
+    private int slots;
+    private int removed;
+
+    /**
+     * Adds a row, replacing the row with the same id if there is one.
+     * @param row Appointment as stored
+     */
+    void put(Appointment row) {
+        lock.writeLock().lock();
+        try {
+            removeSlot(row.id());
+            addSlot(row);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds many rows at once, replacing rows with the same ids.
+     * @param added Appointments as stored
+     */
+    void putAll(List<Appointment> added) {
+        lock.writeLock().lock();
+        try {
+            for (Appointment row : added) {
+                removeSlot(row.id());
+                addSlot(row);
+            }
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param id Id of an appointment to drop; unknown ids are ignored
+     */
+    void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeSlot(id);
+            compactIfSparse();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Empties the index.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            slotById.clear();
+            Arrays.fill(rows, 0, slots, null);
+            Arrays.fill(texts, 0, slots, null);
+            slots = 0;
+            removed = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return Number of appointments in the index
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param query Words typed by the user
+     * @param limit Maximum rows to return
+     * @return Matching appointments; none for a blank query
+     */
+    public Result search(String query, int limit) {
+        String[] terms = normalize(query).trim().split(" +");
+        if (terms.length == 0 || terms[0].isEmpty()) {
+            return new Result(List.of(), false);
+        }
+        // What each candidate's text must contain: short terms only at the start of a word
+        String[] patterns = new String[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            patterns[i] = terms[i].length() < 3 ? " " + terms[i] : terms[i];
+        }
+        lock.readLock().lock();
+        try {
+            IntList candidates = null;
+            for (String term : terms) {
+                IntList list = candidatesFor(term);
+                if (list == null) {
+                    return new Result(List.of(), false);
+                }
+                if (candidates == null || list.size < candidates.size) {
+                    candidates = list;
+                }
+            }
+            // Newest slots first, stopping at the limit, so a broad query costs no more than a narrow one
+            List<Appointment> result = new ArrayList<>(Math.min(limit, candidates.size));
+            boolean more = false;
+            for (int i = candidates.size - 1; i >= 0; i--) {
+                String text = texts[candidates.values[i]];
+                if (text == null || !containsAll(text, patterns)) {
+                    continue;
+                }
+                if (result.size() == limit) {
+                    more = true;
+                    break;
+                }
+                result.add(rows[candidates.values[i]]);
+            }
+            result.sort(AppointmentTableModel.ORDER);
+            return new Result(result, more);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The smallest key list that every match of the term is in, or null if none can match
+     */
+    private IntList candidatesFor(String term) {
+        if (term.length() < 3) {
+            return postings.get(PREFIX + term);
+        }
+        IntList smallest = null;
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            IntList list = postings.get(term.substring(i, i + 3));
+            if (list == null) {
+                return null;
+            }
+            if (smallest == null || list.size < smallest.size) {
+                smallest = list;
+            }
+        }
+        return smallest;
+    }
+
+    private static boolean containsAll(String text, String[] patterns) {
+        for (String pattern : patterns) {
+            if (!text.contains(pattern)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addSlot(Appointment row) {
+        if (slots == rows.length) {
+            rows = Arrays.copyOf(rows, slots * 2);
+            texts = Arrays.copyOf(texts, slots * 2);
+        }
+        int slot = slots++;
+        String text = " " + normalize(row.clientName()) + " " + normalize(row.contact()) + " "
+                + normalize(row.petName()) + " " + normalize(row.petBreed());
+        rows[slot] = row;
+        texts[slot] = text;
+        slotById.put(row.id(), slot);
+        for (String word : text.trim().split(" +")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            post(PREFIX + word.substring(0, 1), slot);
+            if (word.length() >= 2) {
+                post(PREFIX + word.substring(0, 2), slot);
+            }
+            for (int i = 0; i + 3 <= word.length(); i++) {
+                post(word.substring(i, i + 3), slot);
+            }
+        }
+    }
+
+    private void post(String key, int slot) {
+        postings.computeIfAbsent(key, k -> new IntList()).addOnce(slot);
+    }
+
+    private void removeSlot(long id) {
+        Integer slot = slotById.remove(id);
+        if (slot != null) {
+            // Left in the key lists; searches skip it until the next compaction
+            rows[slot] = null;
+            texts[slot] = null;
+            removed++;
+        }
+    }
+
+    /**
+     * Rebuilds the key lists once removed slots outnumber live ones.
+     */
+    private void compactIfSparse() {
+        if (removed < 1024 || removed < slotById.size()) {
+            return;
+        }
+        Appointment[] live = new Appointment[slotById.size()];
+        int count = 0;
+        for (int i = 0; i < slots; i++) {
+            if (rows[i] != null) {
+                live[count++] = rows[i];
+            }
+        }
+        postings.clear();
+        slotById.clear();
+        Arrays.fill(rows, 0, slots, null);
+        Arrays.fill(texts, 0, slots, null);
+        slots = 0;
+        removed = 0;
+        for (int i = 0; i < count; i++) {
+            addSlot(live[i]);
+        }
+    }
+
+    /**
+     * Lower-cases letters and digits, turns whitespace into single spaces and
+     * drops everything else, so "0917-123" and "O'Neil" match "0917123" and "oneil".
+     */
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder out = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+                space = false;
+            } else if (Character.isWhitespace(c) && !space && out.length() > 0) {
+                out.append(' ');
+                space = true;
+            }
+        }
+        return out.toString().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Growable list of slots in increasing order.
+     */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void addOnce(int value) {
+            if (size > 0 && values[size - 1] == value) {
+                return;
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * AppointmentTableModel.java
+ * Paged view of the appointments table.
+ */
+package petgroom;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Appointments ordered by date, then id. Columns 0-2 hold client info and 3-5 pet info,
+ * so the dashboard's client and pet tables can share one model.
+ */
+public class AppointmentTableModel extends PagedTableModel<Appointment> {
+
+    /**
+     * Same order as the appointment page queries.
+     */
+    static final Comparator<Appointment> ORDER = Comparator.comparing(Appointment::date)
+            .thenComparingLong(Appointment::id);
+
+    private final DatabaseConnectivity db;
+
+    public AppointmentTableModel(DatabaseConnectivity db) {
+        super(ORDER, "Client Name", "Contact", "Date", "Pet Name", "Pet Breed", "Service");
+        this.db = db;
+    }
+
+    @Override
+    protected int count() {
+        return db.countAppointments();
+    }
+
+    @Override
+    protected List<Appointment> fetchAfter(Appointment last, int limit) {
+        return db.getAppointmentsAfter(last, limit);
+    }
+
+    @Override
+    protected List<Appointment> fetchAt(int offset, int limit) {
+        return db.getAppointmentsAt(offset, limit);
+    }
+
+    @Override
+    protected Object valueOf(Appointment row, int column) {
+        switch (column) {
+            case 0: return row.clientName();
+            case 1: return row.contact();
+            case 2: return row.slot() == null ? row.date() : row.date() + " " + row.slot().start();
+            case 3: return row.petName();
+            case 4: return row.petBreed();
+            default: return row.service();
+        }
+    }
+}
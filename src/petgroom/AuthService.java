@@ -0,0 +1,244 @@
+/*
+ * AuthService.java
+ * Password hashing and login checks with bcrypt on a bounded worker pool.
+ */
+package petgroom;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.mindrot.jbcrypt.BCrypt;
+
+/**
+ * Registers users and checks logins. Only the stored hash is read, by the
+ * unique email index; the bcrypt work runs on a small pool of dedicated
+ * threads so that a high work factor costs CPU on those threads only and
+ * never on the EDT or the database threads. The pool's queue is bounded:
+ * when every terminal logs in at once, requests beyond it fail fast instead
+ * of piling up.
+ *
+ * Methods block until the hash is done and are meant to be called from a
+ * background task. Settings are JVM system properties:
+ * -Dpetgroom.auth.logRounds (bcrypt work factor, default 12),
+ * -Dpetgroom.auth.threads (default 2) and -Dpetgroom.auth.queueSize (default 32).
+ *
+ * Accounts stored before hashing was introduced still hold the plain password;
+ * they are accepted once and rehashed, as are hashes below the current work factor.
+ */
+public final class AuthService implements AuthServiceMBean {
+    private static final Logger LOG = Logger.getLogger(AuthService.class.getName());
+    private static final int LOG_ROUNDS = Integer.getInteger("petgroom.auth.logRounds", 12);
+    private static final int THREADS = Integer.getInteger("petgroom.auth.threads", 2);
+    private static final int QUEUE_SIZE = Integer.getInteger("petgroom.auth.queueSize", 32);
+
+    private static final class Shared {
+        static final AuthService INSTANCE = new AuthService(DatabaseConnectivity.shared(), LOG_ROUNDS);
+    }
+
+    private final DatabaseConnectivity db;
+    private final int logRounds;
+    private final ThreadPoolExecutor workers;
+    // Checked against when the email is unknown, so a miss costs as much as a hit
+    private final String dummyHash;
+
+    private final LongAdder hashes = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final AtomicLong maxHashNanos = new AtomicLong();
+    private final LongAdder queueNanos = new LongAdder();
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @return The process-wide service over the shared connection pool
+     */
+    public static AuthService shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * @param db Where users are stored
+     * @param logRounds bcrypt work factor (4 to 31)
+     */
+    AuthService(DatabaseConnectivity db, int logRounds) {
+        if (logRounds < 4 || logRounds > 31) {
+            throw new IllegalArgumentException("logRounds must be between 4 and 31: " + logRounds);
+        }
+        this.db = db;
+        this.logRounds = logRounds;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), r -> {
+                    Thread t = new Thread(r, "petgroom-auth-" + threadNumber.getAndIncrement());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.dummyHash = BCrypt.hashpw("petgroom-dummy-password", BCrypt.gensalt(logRounds));
+    }
+
+    /**
+     * Hashes the password and creates the user.
+     * @param fullName User's full name
+     * @param email User's email (unique)
+     * @param password Plain password
+     * @return true if successful, false if the email is taken or saving failed
+     * @throws RejectedExecutionException if too many hashes are already queued
+     */
+    public boolean register(String fullName, String email, String password) {
+        return db.registerUser(fullName, email, hash(password));
+    }
+
+    /**
+     * Checks a login.
+     * @param email User's email
+     * @param password Plain password
+     * @return true if the email exists and the password matches
+     * @throws SQLException if the user could not be looked up, which must not
+     *         be reported as a wrong email or password
+     * @throws RejectedExecutionException if too many hashes are already queued
+     */
+    public boolean login(String email, String password) throws SQLException {
+        String stored = db.queryPasswordHash(email);
+        if (stored == null) {
+            onWorker(() -> BCrypt.checkpw(password, dummyHash));
+            return false;
+        }
+        if (!isBcrypt(stored)) {
+            // Plain password from before hashing; upgrade it on the first good login
+            boolean valid = MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8), password.getBytes(StandardCharsets.UTF_8));
+            if (valid) {
+                db.updatePasswordHash(email, hash(password));
+            }
+            return valid;
+        }
+        boolean valid = onWorker(() -> BCrypt.checkpw(password, stored));
+        if (valid && costOf(stored) < logRounds) {
+            db.updatePasswordHash(email, hash(password));
+        }
+        return valid;
+    }
+
+    /**
+     * @param password Plain password
+     * @return Its bcrypt hash at the configured work factor
+     * @throws RejectedExecutionException if too many hashes are already queued
+     */
+    public String hash(String password) {
+        return onWorker(() -> BCrypt.hashpw(password, BCrypt.gensalt(logRounds)));
+    }
+
+    /**
+     * @return Configured bcrypt work factor
+     */
+    public int getLogRounds() {
+        return logRounds;
+    }
+
+    /**
+     * @return Hashes and checks completed
+     */
+    public long getHashCount() {
+        return hashes.sum();
+    }
+
+    /**
+     * @return Mean time of one hash or check on a worker, in milliseconds
+     */
+    public double getMeanHashMillis() {
+        long count = hashes.sum();
+        return count == 0 ? 0 : hashNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return Slowest hash or check so far, in milliseconds
+     */
+    public double getMaxHashMillis() {
+        return maxHashNanos.get() / 1e6;
+    }
+
+    /**
+     * @return Mean time a request waited for a free worker, in milliseconds
+     */
+    public double getMeanQueueMillis() {
+        long count = hashes.sum();
+        return count == 0 ? 0 : queueNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return Requests waiting for a worker right now
+     */
+    public int getQueuedCount() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return Requests turned away because the queue was full
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hashes=%d, mean=%.1fms, max=%.1fms, queued=%d, rejected=%d, logRounds=%d",
+                getHashCount(), getMeanHashMillis(), getMaxHashMillis(), getQueuedCount(), getRejectedCount(), logRounds);
+    }
+
+    private <T> T onWorker(Callable<T> work) {
+        long submitted = System.nanoTime();
+        Future<T> future;
+        try {
+            future = workers.submit(() -> {
+                long start = System.nanoTime();
+                queueNanos.add(start - submitted);
+                try {
+                    return work.call();
+                } finally {
+                    long elapsed = System.nanoTime() - start;
+                    hashes.increment();
+                    hashNanos.add(elapsed);
+                    maxHashNanos.accumulateAndGet(elapsed, Math::max);
+                    LOG.log(Level.FINE, "bcrypt took {0} ms", elapsed / 1_000_000);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            LOG.log(Level.WARNING, "Authentication queue full ({0})", this);
+            throw e;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Hashing failed", e.getCause());
+        }
+    }
+
+    private static boolean isBcrypt(String stored) {
+        return stored.length() == 60 && stored.startsWith("$2");
+    }
+
+    /**
+     * Reads the work factor out of a "$2a$NN$..." hash.
+     */
+    private static int costOf(String hash) {
+        try {
+            return Integer.parseInt(hash.substring(4, 6));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
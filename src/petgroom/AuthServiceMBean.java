@@ -0,0 +1,25 @@
+/*
+ * AuthServiceMBean.java
+ * JMX view of the password hashing workers.
+ */
+package petgroom;
+
+/**
+ * Published as petgroom:type=AuthService.
+ */
+public interface AuthServiceMBean {
+
+    int getLogRounds();
+
+    long getHashCount();
+
+    double getMeanHashMillis();
+
+    double getMaxHashMillis();
+
+    double getMeanQueueMillis();
+
+    int getQueuedCount();
+
+    long getRejectedCount();
+}
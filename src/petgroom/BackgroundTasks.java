@@ -0,0 +1,157 @@
+/*
+ * BackgroundTasks.java
+ * Runs database calls off the Swing event dispatch thread.
+ */
+package petgroom;
+
+import java.awt.Cursor;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.JComponent;
+import javax.swing.JOptionPane;
+import javax.swing.JRootPane;
+import javax.swing.SwingUtilities;
+
+/**
+ * Executes blocking work (JDBC calls) on virtual threads and hands the result
+ * back on the EDT, so a slow database never freezes the forms. Concurrency
+ * against MySQL is still bounded by the connection pool.
+ */
+final class BackgroundTasks {
+    private static final Logger LOG = Logger.getLogger(BackgroundTasks.class.getName());
+    private static final String BUSY_COUNT = "petgroom.busyCount";
+    private static final ExecutorService EXECUTOR =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("petgroom-db-", 0).factory());
+
+    private BackgroundTasks() {
+    }
+
+    /**
+     * Runs a user-triggered action. The trigger is disabled and its window shows
+     * a wait cursor until the work completes. Must be called on the EDT.
+     * @param trigger Button (or other component) that started the action
+     * @param work Blocking work to run off the EDT
+     * @param onDone Receives the result on the EDT
+     * @param <T> Result type
+     */
+    static <T> void run(JComponent trigger, Callable<T> work, Consumer<? super T> onDone) {
+        JRootPane root = trigger.getRootPane();
+        trigger.setEnabled(false);
+        setBusy(root, true);
+        EXECUTOR.execute(() -> {
+            T result = null;
+            Throwable failure = null;
+            try {
+                result = work.call();
+            } catch (Throwable e) { // Errors too, or the trigger would stay disabled
+                failure = e;
+            }
+            T finalResult = result;
+            Throwable finalFailure = failure;
+            SwingUtilities.invokeLater(() -> {
+                setBusy(root, false);
+                trigger.setEnabled(true);
+                if (finalFailure != null) {
+                    LOG.log(Level.SEVERE, "Background task failed", finalFailure);
+                    JOptionPane.showMessageDialog(root, "Unexpected error: " + describe(finalFailure), "Error", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    onDone.accept(finalResult);
+                }
+            });
+        });
+    }
+
+    /**
+     * Runs a load whose result may become stale. Cancelling the returned future
+     * on the EDT suppresses the callback, even if the result is already on its
+     * way. Cancel with cancel(false): interrupting a virtual thread blocked in
+     * a JDBC read closes its socket, which costs the pool the connection and
+     * can look like MySQL going down.
+     * @param work Blocking work to run off the EDT
+     * @param onDone Receives the result on the EDT unless cancelled
+     * @param <T> Result type
+     * @return Handle for cancelling the load
+     */
+    static <T> Future<?> load(Callable<T> work, Consumer<? super T> onDone) {
+        Load<T> load = new Load<>(work, onDone);
+        EXECUTOR.execute(load);
+        return load;
+    }
+
+    /**
+     * A load that remembers being cancelled after its work finished, which
+     * FutureTask alone does not.
+     */
+    private static final class Load<T> extends FutureTask<T> {
+        private final Consumer<? super T> onDone;
+        private volatile boolean dropped;
+
+        Load(Callable<T> work, Consumer<? super T> onDone) {
+            super(work);
+            this.onDone = onDone;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            dropped = true;
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            try {
+                T result = get();
+                SwingUtilities.invokeLater(() -> {
+                    if (!dropped) {
+                        onDone.accept(result);
+                    }
+                });
+            } catch (ExecutionException e) {
+                LOG.log(Level.WARNING, "Background load failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Not reached: the task is done
+            }
+        }
+    }
+
+    /**
+     * Runs fire-and-forget work off the EDT.
+     * @param work Work to run
+     */
+    static void execute(Runnable work) {
+        EXECUTOR.execute(work);
+    }
+
+    /**
+     * @param failure What the work threw
+     * @return Its message, or its cause's when it has none, as with
+     *         ExceptionInInitializerError
+     */
+    private static String describe(Throwable failure) {
+        Throwable cause = failure;
+        while (cause.getMessage() == null && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause.getMessage() != null ? cause.getMessage() : cause.toString();
+    }
+
+    private static void setBusy(JRootPane root, boolean busy) {
+        if (root == null) {
+            return;
+        }
+        Integer count = (Integer) root.getClientProperty(BUSY_COUNT);
+        int next = (count == null ? 0 : count) + (busy ? 1 : -1);
+        root.putClientProperty(BUSY_COUNT, next);
+        root.setCursor(next > 0 ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : null);
+    }
+}
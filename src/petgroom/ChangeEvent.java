@@ -0,0 +1,17 @@
+/*
+ * ChangeEvent.java
+ * One entry of the change log.
+ */
+package petgroom;
+
+/**
+ * A write to appointments or payments, as logged in change_log in the same
+ * transaction.
+ * @param seq Position in the log; higher is later
+ * @param table Table written
+ * @param rowId Id of the row written; 0 when op is 'R'
+ * @param op 'I' insert, 'U' update, 'D' delete, or 'R' when many rows were written at once
+ * @param origin The writing process's {@link ChangeFeed#ORIGIN}
+ */
+public record ChangeEvent(long seq, String table, long rowId, char op, String origin) {
+}
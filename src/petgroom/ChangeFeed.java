@@ -0,0 +1,317 @@
+/*
+ * ChangeFeed.java
+ * Follows the change log so each terminal sees the others' writes.
+ */
+package petgroom;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Every write to appointments and payments adds an entry to change_log in
+ * its transaction, numbered in order. The feed reads the entries after the
+ * last one it saw every -Dpetgroom.changes.pollMillis (default 500), through
+ * the log's primary key, leaves out this process's own writes, reads the
+ * changed rows in one query per table, updates the shared
+ * {@link AppointmentRepository} and hands each change to its listeners on the
+ * EDT. A tick with nothing new costs one indexed query returning no rows.
+ *
+ * MySQL hands out a sequence number when a transaction inserts its entry, not
+ * when it commits, so a lower number can appear after a higher one has been
+ * read. Numbers skipped over are read again for a few seconds, until they
+ * appear or are taken to belong to a rolled-back transaction. If more than
+ * -Dpetgroom.changes.batchSize (default 500) entries arrive at once, or a
+ * bulk import is logged, listeners are told to reload instead. Entries older
+ * than -Dpetgroom.changes.keepHours (default 24) are deleted.
+ */
+public final class ChangeFeed {
+    private static final Logger LOG = Logger.getLogger(ChangeFeed.class.getName());
+    private static final long POLL_MILLIS = Long.getLong("petgroom.changes.pollMillis", 500);
+    private static final int BATCH_SIZE = Integer.getInteger("petgroom.changes.batchSize", 500);
+    static final long KEEP_MILLIS = TimeUnit.HOURS.toMillis(Long.getLong("petgroom.changes.keepHours", 24));
+    private static final long PRUNE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // How long a skipped sequence number is waited for; writes commit well within this
+    private static final long GAP_MILLIS = 10_000;
+    // Larger jumps come from auto-increment steps, not from transactions in flight
+    private static final int MAX_GAP = 1000;
+
+    /**
+     * Identifies this process in change_log, so the feed can skip its own writes.
+     */
+    static final String ORIGIN = UUID.randomUUID().toString();
+
+    /**
+     * Receives one table's changes.
+     * @param <R> Row type
+     */
+    public interface Listener<R> {
+        /**
+         * @param change The change; op is 'I', 'U' or 'D'
+         * @param before The row as cached on this terminal before the change,
+         *        or null if it was not cached (always null for payments)
+         * @param after The row now, or null if it was deleted
+         */
+        void changed(ChangeEvent change, R before, R after);
+    }
+
+    private static final class Shared {
+        static final ChangeFeed INSTANCE = start();
+
+        private static ChangeFeed start() {
+            ChangeFeed feed = new ChangeFeed(DatabaseConnectivity.shared(), AppointmentRepository.shared());
+            feed.start();
+            return feed;
+        }
+    }
+
+    private final DatabaseConnectivity db;
+    private final AppointmentRepository repository;
+    private final List<Listener<Appointment>> appointmentListeners = new CopyOnWriteArrayList<>();
+    private final List<Listener<Payment>> paymentListeners = new CopyOnWriteArrayList<>();
+    private final List<Runnable> reloadListeners = new CopyOnWriteArrayList<>();
+    // The rest is only touched by the polling thread
+    private long applied = -1;
+    // Skipped sequence numbers, and when to stop waiting for each
+    private TreeMap<Long, Long> gaps = new TreeMap<>();
+    private long lastPrune;
+    private boolean failing;
+    // Every entry up to here has been read or given up on; -1 before the first tick
+    private volatile long settled = -1;
+
+    /**
+     * @return The process-wide feed, polling from its first use
+     */
+    public static ChangeFeed shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * @param db Where change_log and the changed rows are read
+     * @param repository Cache to keep current with other terminals' appointment writes
+     */
+    ChangeFeed(DatabaseConnectivity db, AppointmentRepository repository) {
+        this.db = db;
+        this.repository = repository;
+    }
+
+    /**
+     * Starts polling on a daemon thread.
+     */
+    void start() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "petgroom-changes");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::poll, 0, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param listener Called on the EDT for each appointment another terminal writes
+     */
+    public void addAppointmentListener(Listener<Appointment> listener) {
+        appointmentListeners.add(listener);
+    }
+
+    /**
+     * @param listener Called on the EDT for each payment another terminal writes
+     */
+    public void addPaymentListener(Listener<Payment> listener) {
+        paymentListeners.add(listener);
+    }
+
+    /**
+     * @param listener Called on the EDT when too much changed at once to apply
+     *        row by row; everything shown should be read again
+     */
+    public void addReloadListener(Runnable listener) {
+        reloadListeners.add(listener);
+    }
+
+    /**
+     * @return A sequence number such that every change_log entry up to it has
+     *         been applied here, or -1 before the first successful read. It
+     *         changes whenever another terminal's write reaches this one, so
+     *         it can serve as a version of the whole data set.
+     */
+    public long position() {
+        return settled;
+    }
+
+    /**
+     * One tick: read the new entries and apply them. The position in the log
+     * only moves once the changed rows have been read, so a failed tick is
+     * repeated whole.
+     */
+    void poll() {
+        if (db.isOffline()) {
+            return; // change_log is only in MySQL; the dashboard reloads on reconnecting
+        }
+        try {
+            if (applied < 0) {
+                applied = db.queryLatestChangeSeq(); // Only writes from now on
+            }
+            long from = gaps.isEmpty() ? applied : Math.min(applied, gaps.firstKey() - 1);
+            List<ChangeEvent> changes = db.queryChangesAfter(from, BATCH_SIZE);
+            long now = System.currentTimeMillis();
+            long next = applied;
+            TreeMap<Long, Long> nextGaps = new TreeMap<>(gaps);
+            List<ChangeEvent> fresh = new ArrayList<>();
+            for (ChangeEvent change : changes) {
+                if (change.seq() <= next) {
+                    if (nextGaps.remove(change.seq()) == null) {
+                        continue; // Applied on an earlier tick
+                    }
+                } else {
+                    if (change.seq() - next - 1 <= MAX_GAP) {
+                        for (long seq = next + 1; seq < change.seq(); seq++) {
+                            nextGaps.put(seq, now + GAP_MILLIS);
+                        }
+                    }
+                    next = change.seq();
+                }
+                if (!ORIGIN.equals(change.origin())) {
+                    fresh.add(change);
+                }
+            }
+            nextGaps.values().removeIf(deadline -> deadline < now);
+            if (changes.size() == BATCH_SIZE || fresh.stream().anyMatch(change -> change.op() == 'R')) {
+                reload(changes.size() == BATCH_SIZE ? db.queryLatestChangeSeq() : next);
+            } else {
+                apply(fresh);
+                applied = next;
+                gaps = nextGaps;
+            }
+            settled = gaps.isEmpty() ? applied : Math.min(applied, gaps.firstKey() - 1);
+            if (now - lastPrune >= PRUNE_MILLIS) {
+                lastPrune = now;
+                db.pruneChanges(new Timestamp(now - KEEP_MILLIS));
+            }
+            if (failing) {
+                LOG.info("Reading the change log again");
+                failing = false;
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!failing) {
+                LOG.log(Level.WARNING, "Could not read the change log; retrying", e);
+                failing = true;
+            }
+        }
+    }
+
+    /**
+     * Skips to the given position and has everything read again.
+     */
+    private void reload(long seq) {
+        applied = seq;
+        gaps = new TreeMap<>();
+        repository.invalidate();
+        for (Runnable listener : reloadListeners) {
+            SwingUtilities.invokeLater(listener);
+        }
+    }
+
+    /**
+     * Reads the rows behind the changes and hands them out, in log order.
+     */
+    private void apply(List<ChangeEvent> changes) throws SQLException {
+        if (changes.isEmpty()) {
+            return;
+        }
+        Map<Long, ChangeEvent> appointments = coalesce(changes, "appointments");
+        Map<Long, ChangeEvent> payments = coalesce(changes, "payments");
+        Map<Long, Appointment> appointmentRows = new HashMap<>();
+        for (Appointment row : db.queryAppointments(idsToRead(appointments))) {
+            appointmentRows.put(row.id(), row);
+        }
+        Map<Long, Payment> paymentRows = new HashMap<>();
+        for (Payment row : db.queryPayments(idsToRead(payments))) {
+            paymentRows.put(row.id(), row);
+        }
+        List<Runnable> deliveries = new ArrayList<>();
+        for (ChangeEvent change : appointments.values()) {
+            Appointment after = change.op() == 'D' ? null : appointmentRows.get(change.rowId());
+            ChangeEvent settled = settle(change, after != null);
+            if (settled != null) {
+                Appointment before = repository.applyChange(change.rowId(), after);
+                for (Listener<Appointment> listener : appointmentListeners) {
+                    deliveries.add(() -> listener.changed(settled, before, after));
+                }
+            }
+        }
+        for (ChangeEvent change : payments.values()) {
+            Payment after = change.op() == 'D' ? null : paymentRows.get(change.rowId());
+            ChangeEvent settled = settle(change, after != null);
+            if (settled != null) {
+                for (Listener<Payment> listener : paymentListeners) {
+                    deliveries.add(() -> listener.changed(settled, null, after));
+                }
+            }
+        }
+        if (!deliveries.isEmpty()) {
+            SwingUtilities.invokeLater(() -> deliveries.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * Merges several changes to the same row into one: an insert followed by
+     * edits is still an insert, and a row inserted and deleted in the same
+     * tick is left out.
+     */
+    private static Map<Long, ChangeEvent> coalesce(List<ChangeEvent> changes, String table) {
+        Map<Long, ChangeEvent> merged = new LinkedHashMap<>();
+        for (ChangeEvent change : changes) {
+            if (!change.table().equals(table)) {
+                continue;
+            }
+            ChangeEvent earlier = merged.remove(change.rowId());
+            if (earlier != null && earlier.op() == 'I') {
+                if (change.op() == 'D') {
+                    continue;
+                }
+                change = new ChangeEvent(change.seq(), table, change.rowId(), 'I', change.origin());
+            }
+            merged.put(change.rowId(), change);
+        }
+        return merged;
+    }
+
+    private static List<Long> idsToRead(Map<Long, ChangeEvent> changes) {
+        List<Long> ids = new ArrayList<>();
+        for (ChangeEvent change : changes.values()) {
+            if (change.op() != 'D') {
+                ids.add(change.rowId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Checks a change against the row read back: a row no longer there was
+     * deleted by a later write whose entry has not been read yet.
+     * @return The change to hand out, or null to leave it to that later entry
+     */
+    private static ChangeEvent settle(ChangeEvent change, boolean rowExists) {
+        if (change.op() == 'D' || rowExists) {
+            return change;
+        }
+        if (change.op() == 'I') {
+            return null;
+        }
+        return new ChangeEvent(change.seq(), change.table(), change.rowId(), 'D', change.origin());
+    }
+}
@@ -0,0 +1,361 @@
+/*
+ * ConnectionPool.java
+ * Bounded, process-wide pool of JDBC connections shared by every form.
+ */
+package petgroom;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public final class ConnectionPool implements AutoCloseable, ConnectionPoolMBean {
+    private static final Logger LOG = Logger.getLogger(ConnectionPool.class.getName());
+
+    /**
+     * Pool tuning. Defaults can be overridden with -Dpetgroom.pool.* system properties.
+     */
+    static final class Settings {
+        int maxSize = Integer.getInteger("petgroom.pool.maxSize", 8);
+        int minIdle = Integer.getInteger("petgroom.pool.minIdle", 1);
+        long borrowTimeoutMillis = Long.getLong("petgroom.pool.borrowTimeoutMillis", 5_000L);
+        long idleTimeoutMillis = Long.getLong("petgroom.pool.idleTimeoutMillis", 300_000L);
+        long leakThresholdMillis = Long.getLong("petgroom.pool.leakThresholdMillis", 60_000L);
+        // Capturing the borrower's stack costs a stack walk per borrow, so it is off unless asked for
+        boolean trackLeaks = Boolean.getBoolean("petgroom.pool.trackLeaks");
+        long housekeepingMillis = Long.getLong("petgroom.pool.housekeepingMillis", 30_000L);
+        int validationTimeoutSeconds = Integer.getInteger("petgroom.pool.validationTimeoutSeconds", 2);
+        int statementCacheSize = Integer.getInteger("petgroom.pool.statementCacheSize", 32);
+    }
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final Settings settings;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ConcurrentLinkedDeque<>();
+    private final Set<PooledConnection> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong leaks = new AtomicLong();
+    private final StatementCache.Stats statementStats = new StatementCache.Stats();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    /**
+     * Creates a pool. No connection is opened until the first borrow.
+     * @param url JDBC URL
+     * @param user Database user
+     * @param password Database password
+     * @param settings Pool tuning
+     */
+    ConnectionPool(String url, String user, String password, Settings settings) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize, true);
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "petgroom-pool-housekeeper");
+            t.setDaemon(true);
+            return t;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                settings.housekeepingMillis, settings.housekeepingMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a validated connection, waiting up to the borrow timeout for one to free up.
+     * Close the returned handle (try-with-resources) to give it back.
+     * @return A pooled connection
+     * @throws SQLException if the pool is exhausted, closed, or the database is unreachable
+     */
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        boolean acquired;
+        waiting.incrementAndGet();
+        try {
+            acquired = permits.tryAcquire(settings.borrowTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + settings.borrowTimeoutMillis
+                    + " ms waiting for a database connection (" + this + ")");
+        }
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null && !isUsable(pooled)) {
+                destroy(pooled);
+            }
+            if (pooled == null) {
+                pooled = open();
+            }
+            pooled.markBorrowed();
+            borrowed.add(pooled);
+            return pooled;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens connections until the pool holds at least minIdle idle ones.
+     */
+    public void prefill() {
+        while (!closed && idle.size() < settings.minIdle && totalConnections() < settings.maxSize) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not prefill connection pool", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return Connections currently borrowed
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return Open connections sitting in the pool
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return Threads blocked in {@link #borrow()}
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    public int getMaxSize() {
+        return settings.maxSize;
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyed.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+
+    public long getLeakCount() {
+        return leaks.get();
+    }
+
+    public int getStatementCacheSize() {
+        return settings.statementCacheSize;
+    }
+
+    public long getStatementCacheHits() {
+        return statementStats.hits.get();
+    }
+
+    public long getStatementCacheMisses() {
+        return statementStats.misses.get();
+    }
+
+    public long getStatementCacheEvictions() {
+        return statementStats.evictions.get();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            destroy(pooled);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "active=" + getActiveCount() + ", idle=" + getIdleCount() + ", waiting=" + getWaitingCount()
+                + ", max=" + settings.maxSize;
+    }
+
+    private int totalConnections() {
+        return borrowed.size() + idle.size();
+    }
+
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+        created.incrementAndGet();
+        return pooled;
+    }
+
+    private boolean isUsable(PooledConnection pooled) {
+        try {
+            return pooled.raw.isValid(settings.validationTimeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pooled) {
+        if (!borrowed.remove(pooled)) {
+            return;
+        }
+        pooled.statements.releaseUncached();
+        try {
+            boolean reusable = !closed && !pooled.raw.isClosed();
+            if (reusable && !pooled.raw.getAutoCommit()) {
+                pooled.raw.rollback();
+                pooled.raw.setAutoCommit(true);
+            }
+            if (reusable) {
+                pooled.lastReturned = System.currentTimeMillis();
+                idle.offerFirst(pooled);
+            } else {
+                destroy(pooled);
+            }
+        } catch (SQLException e) {
+            destroy(pooled);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void destroy(PooledConnection pooled) {
+        destroyed.incrementAndGet();
+        pooled.statements.clear();
+        try {
+            pooled.raw.close();
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Error closing pooled connection", e);
+        }
+    }
+
+    /**
+     * Evicts connections idle past the idle timeout (keeping minIdle) and reports leaks.
+     */
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        Iterator<PooledConnection> it = idle.descendingIterator();
+        while (it.hasNext() && idle.size() > settings.minIdle) {
+            PooledConnection pooled = it.next();
+            if (now - pooled.lastReturned > settings.idleTimeoutMillis && idle.remove(pooled)) {
+                destroy(pooled);
+            }
+        }
+        for (PooledConnection pooled : borrowed) {
+            long heldFor = now - pooled.borrowedAt;
+            if (heldFor > settings.leakThresholdMillis && pooled.leakReported.compareAndSet(false, true)) {
+                leaks.incrementAndGet();
+                LOG.log(Level.WARNING, "Connection held for " + heldFor + " ms without being returned ("
+                        + this + ")" + (settings.trackLeaks ? "" : "; run with -Dpetgroom.pool.trackLeaks=true to see where"),
+                        pooled.borrowSite);
+            }
+        }
+    }
+
+    /**
+     * A borrowed connection. Closing it returns the underlying connection to the pool.
+     */
+    public final class PooledConnection implements AutoCloseable {
+        private final Connection raw;
+        private final StatementCache statements;
+        private final AtomicBoolean leakReported = new AtomicBoolean();
+        private volatile long borrowedAt;
+        private volatile long lastReturned = System.currentTimeMillis();
+        private volatile Throwable borrowSite;
+
+        private PooledConnection(Connection raw) {
+            this.raw = raw;
+            this.statements = new StatementCache(raw, settings.statementCacheSize, statementStats);
+        }
+
+        private void markBorrowed() {
+            borrowedAt = System.currentTimeMillis();
+            borrowSite = settings.trackLeaks ? new Throwable("Connection borrowed here") : null;
+            leakReported.set(false);
+        }
+
+        /**
+         * @return The underlying connection; do not close it directly
+         */
+        public Connection connection() {
+            return raw;
+        }
+
+        /**
+         * @return The pool this connection belongs to
+         */
+        public ConnectionPool pool() {
+            return ConnectionPool.this;
+        }
+
+        /**
+         * Returns this connection's cached statement for the SQL, preparing it
+         * on first use. Do not close it; it lives as long as the connection.
+         * @param sql Constant statement text
+         * @return A cached prepared statement
+         * @throws SQLException if preparing fails
+         */
+        public PreparedStatement prepareCached(String sql) throws SQLException {
+            return statements.get(sql);
+        }
+
+        /**
+         * Like {@link #prepareCached(String)}, for inserts that read back generated keys.
+         * @param sql Constant statement text
+         * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+         * @return A cached prepared statement
+         * @throws SQLException if preparing fails
+         */
+        public PreparedStatement prepareCached(String sql, int autoGeneratedKeys) throws SQLException {
+            return statements.get(sql, autoGeneratedKeys);
+        }
+
+        public PreparedStatement prepareStatement(String sql) throws SQLException {
+            return raw.prepareStatement(sql);
+        }
+
+        public Statement createStatement() throws SQLException {
+            return raw.createStatement();
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * ConnectionPoolMBean.java
+ * JMX view of a connection pool and its statement cache.
+ */
+package petgroom;
+
+/**
+ * Published as petgroom:type=ConnectionPool,name=MySQL (and name=Local for
+ * the offline copy's pool). Counts are since the pool was created.
+ */
+public interface ConnectionPoolMBean {
+
+    int getActiveCount();
+
+    int getIdleCount();
+
+    int getWaitingCount();
+
+    int getMaxSize();
+
+    long getCreatedCount();
+
+    long getDestroyedCount();
+
+    long getTimeoutCount();
+
+    long getLeakCount();
+
+    int getStatementCacheSize();
+
+    long getStatementCacheHits();
+
+    long getStatementCacheMisses();
+
+    long getStatementCacheEvictions();
+}
@@ -0,0 +1,128 @@
+/*
+ * Csv.java
+ * Minimal RFC 4180 CSV reading and writing for the import and export tools.
+ */
+package petgroom;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads CSV one record at a time from a stream, so files of any size can be
+ * processed in constant memory. Supports quoted fields containing commas,
+ * doubled quotes and line breaks, and both \n and \r\n line endings.
+ */
+final class Csv {
+
+    private final Reader in;
+    private int peeked = -2;
+    private long line = 1;
+
+    /**
+     * @param in Source; wrap it in a BufferedReader for speed
+     */
+    Csv(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * @return Line number the next record starts on
+     */
+    long getLine() {
+        return line;
+    }
+
+    /**
+     * @return The next record's fields, or null at end of input
+     * @throws IOException if reading fails
+     */
+    List<String> readRecord() throws IOException {
+        int c = read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == -1) {
+                    throw new IOException("Unterminated quoted field before line " + line);
+                }
+                if (c == '"') {
+                    if (peek() == '"') {
+                        read();
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\n' || c == -1) {
+                if (c == '\n') {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '\r') {
+                if (peek() != '\n') {
+                    field.append('\r');
+                }
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    /**
+     * Writes one record, quoting fields that contain commas, quotes or line breaks.
+     * @param out Destination
+     * @param fields Field values; null is written as an empty field
+     * @throws IOException if writing fails
+     */
+    static void writeRecord(Writer out, String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            String field = fields[i] == null ? "" : fields[i];
+            if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0 || field.indexOf('\n') >= 0 || field.indexOf('\r') >= 0) {
+                out.write('"');
+                out.write(field.replace("\"", "\"\""));
+                out.write('"');
+            } else {
+                out.write(field);
+            }
+        }
+        out.write("\r\n");
+    }
+
+    private int read() throws IOException {
+        if (peeked != -2) {
+            int c = peeked;
+            peeked = -2;
+            return c;
+        }
+        return in.read();
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = in.read();
+        }
+        return peeked;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * DataExporter.java
+ * Streams full or date-bounded dumps of appointments and payments to a file.
+ */
+package petgroom;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the appointments or payments table to CSV or JSON lines as rows
+ * arrive from a forward-only cursor, so heap use stays the same whatever the
+ * table size. Output can be gzipped. The file is written under a temporary
+ * name and moved into place once complete, so a failed export never leaves a
+ * truncated file behind.
+ *
+ * Command line: java -cp PETGROOM.jar petgroom.DataExporter appointments|payments out.csv[.gz]
+ * [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--format csv|jsonl]
+ */
+public final class DataExporter {
+
+    /**
+     * Tables that can be exported.
+     */
+    public enum Table {
+        APPOINTMENTS, PAYMENTS
+    }
+
+    /**
+     * Output formats.
+     */
+    public enum Format {
+        CSV, JSONL
+    }
+
+    private static final String[] APPOINTMENT_COLUMNS = {"id", "client_name", "contact", "date", "pet_name", "pet_breed", "service"};
+    private static final String[] PAYMENT_COLUMNS = {"id", "client_name", "contact", "total_paid", "status", "paid_at"};
+
+    private final DatabaseConnectivity db;
+
+    /**
+     * @param db Where to read the rows from
+     */
+    public DataExporter(DatabaseConnectivity db) {
+        this.db = db;
+    }
+
+    /**
+     * Exports one table.
+     * @param table Table to export
+     * @param format Output format
+     * @param target File to write; replaced if it exists
+     * @param gzip Whether to gzip the output
+     * @param from First date, inclusive, or null
+     * @param to Last date, inclusive, or null
+     * @return Number of rows written
+     * @throws IOException if writing fails
+     * @throws SQLException if the query fails
+     */
+    public long export(Table table, Format format, Path target, boolean gzip, LocalDate from, LocalDate to)
+            throws IOException, SQLException {
+        Path dir = target.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".part");
+        try {
+            long rows;
+            try (OutputStream file = Files.newOutputStream(temp);
+                 OutputStream stream = gzip ? new GZIPOutputStream(file, 64 * 1024) : file;
+                 Writer out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 64 * 1024)) {
+                Date fromDate = from == null ? null : Date.valueOf(from);
+                Date toDate = to == null ? null : Date.valueOf(to);
+                if (table == Table.APPOINTMENTS) {
+                    if (format == Format.CSV) {
+                        Csv.writeRecord(out, APPOINTMENT_COLUMNS);
+                    }
+                    rows = db.streamAppointments(fromDate, toDate, a -> write(out, format, APPOINTMENT_COLUMNS,
+                            Long.toString(a.id()), a.clientName(), a.contact(), a.date().toString(),
+                            a.petName(), a.petBreed(), a.service()));
+                } else {
+                    if (format == Format.CSV) {
+                        Csv.writeRecord(out, PAYMENT_COLUMNS);
+                    }
+                    rows = db.streamPayments(fromDate, toDate, p -> write(out, format, PAYMENT_COLUMNS,
+                            Long.toString(p.id()), p.clientName(), p.contact(), Money.plain(p.totalPaidCentavos()),
+                            p.status(), p.paidAt() == null ? null : p.paidAt().toLocalDateTime().toString()));
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return rows;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void write(Writer out, Format format, String[] columns, String... values) throws IOException {
+        if (format == Format.CSV) {
+            Csv.writeRecord(out, values);
+            return;
+        }
+        // Ids and amounts are written as JSON numbers, everything else as strings
+        out.write('{');
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            out.write('"');
+            out.write(columns[i]);
+            out.write("\":");
+            boolean number = columns[i].equals("id") || columns[i].equals("total_paid");
+            if (values[i] == null) {
+                out.write("null");
+            } else if (number) {
+                out.write(values[i]);
+            } else {
+                Json.writeString(out, values[i]);
+            }
+        }
+        out.write("}\n");
+    }
+
+    public static void main(String[] args) throws IOException, SQLException {
+        if (args.length < 2) {
+            System.err.println("Usage: java -cp PETGROOM.jar petgroom.DataExporter appointments|payments <file> "
+                    + "[--from yyyy-MM-dd] [--to yyyy-MM-dd] [--format csv|jsonl]");
+            System.exit(2);
+        }
+        Table table = Table.valueOf(args[0].toUpperCase(Locale.ROOT));
+        Path target = Paths.get(args[1]);
+        String name = target.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        Format format = name.replaceFirst("\\.gz$", "").endsWith(".jsonl") ? Format.JSONL : Format.CSV;
+        LocalDate from = null;
+        LocalDate to = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--from" -> from = LocalDate.parse(args[i + 1]);
+                case "--to" -> to = LocalDate.parse(args[i + 1]);
+                case "--format" -> format = Format.valueOf(args[i + 1].toUpperCase(Locale.ROOT));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        long start = System.nanoTime();
+        long rows = new DataExporter(new DatabaseConnectivity()).export(table, format, target, gzip, from, to);
+        System.out.printf("Exported %d rows to %s in %.1f s%n", rows, target, (System.nanoTime() - start) / 1e9);
+        System.exit(0);
+    }
+}
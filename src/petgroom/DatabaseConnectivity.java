@@ -4,27 +4,206 @@
  */
 package petgroom;
 
+import java.io.IOException;
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 public class DatabaseConnectivity {
-    private static final String URL = "jdbc:mysql://localhost:3306/petgroom";
+    private static final String URL = "jdbc:mysql://localhost:3306/petgroom?useServerPrepStmts=true&rewriteBatchedStatements=true&useCursorFetch=true&connectTimeout=3000";
     private static final String USER = "root";
     private static final String PASSWORD = "@l03e1t3";
-    private Connection connection;
+    private static final int STREAM_FETCH_SIZE = Integer.getInteger("petgroom.export.fetchSize", 500);
+    // Calls, errors and latency of each method, shown by DiagnosticsDialog and over JMX
+    private static final OperationStats SAVE_APPOINTMENT = Metrics.operation("saveAppointment");
+    private static final OperationStats SAVE_OFFLINE_APPOINTMENT = Metrics.operation("saveOfflineAppointment");
+    private static final OperationStats SAVE_APPOINTMENTS = Metrics.operation("saveAppointments");
+    private static final OperationStats GET_APPOINTMENTS = Metrics.operation("getAppointments");
+    private static final OperationStats GET_APPOINTMENTS_BETWEEN = Metrics.operation("getAppointmentsBetween");
+    private static final OperationStats QUERY_APPOINTMENT = Metrics.operation("queryAppointment");
+    private static final OperationStats QUERY_APPOINTMENTS = Metrics.operation("queryAppointments");
+    private static final OperationStats COUNT_APPOINTMENTS = Metrics.operation("countAppointments");
+    private static final OperationStats GET_APPOINTMENTS_AFTER = Metrics.operation("getAppointmentsAfter");
+    private static final OperationStats GET_APPOINTMENTS_AT = Metrics.operation("getAppointmentsAt");
+    private static final OperationStats SAVE_PAYMENT = Metrics.operation("savePayment");
+    private static final OperationStats SAVE_PENDING_PAYMENTS = Metrics.operation("savePendingPayments");
+    private static final OperationStats QUERY_PAYMENTS = Metrics.operation("queryPayments");
+    private static final OperationStats GET_PAYMENTS = Metrics.operation("getPayments");
+    private static final OperationStats COUNT_PAYMENTS = Metrics.operation("countPayments");
+    private static final OperationStats GET_PAYMENTS_AFTER = Metrics.operation("getPaymentsAfter");
+    private static final OperationStats GET_PAYMENTS_AT = Metrics.operation("getPaymentsAt");
+    private static final OperationStats STREAM_APPOINTMENTS = Metrics.operation("streamAppointments");
+    private static final OperationStats STREAM_PAYMENTS = Metrics.operation("streamPayments");
+    private static final OperationStats DELETE_APPOINTMENT = Metrics.operation("deleteAppointment");
+    private static final OperationStats UPDATE_APPOINTMENT = Metrics.operation("updateAppointment");
+    private static final OperationStats DELETE_PAYMENT = Metrics.operation("deletePayment");
+    private static final OperationStats QUERY_SERVICES = Metrics.operation("queryServices");
+    private static final OperationStats QUERY_SERVICES_VERSION = Metrics.operation("queryServicesVersion");
+    private static final OperationStats QUERY_REVENUE_ROLLUPS = Metrics.operation("queryRevenueRollups");
+    private static final OperationStats QUERY_APPOINTMENT_ROLLUPS = Metrics.operation("queryAppointmentRollups");
+    private static final OperationStats QUERY_APPOINTMENT_COUNTS_BY_DAY = Metrics.operation("queryAppointmentCountsByDay");
+    private static final OperationStats QUERY_CHANGES_AFTER = Metrics.operation("queryChangesAfter");
+    private static final OperationStats QUERY_LATEST_CHANGE_SEQ = Metrics.operation("queryLatestChangeSeq");
+    private static final OperationStats QUERY_SETTLED_CHANGE_SEQ = Metrics.operation("querySettledChangeSeq");
+    private static final OperationStats PRUNE_CHANGES = Metrics.operation("pruneChanges");
+    private static final OperationStats REBUILD_ROLLUPS = Metrics.operation("rebuildRollups");
+    private static final OperationStats REGISTER_USER = Metrics.operation("registerUser");
+    private static final OperationStats GET_PASSWORD_HASH = Metrics.operation("getPasswordHash");
+    private static final OperationStats UPDATE_PASSWORD_HASH = Metrics.operation("updatePasswordHash");
+
+    private final ConnectionPool pool;
+    private final LocalStore local;
+    private final boolean logChanges;
+
+    /**
+     * Receives rows one at a time from the streaming queries.
+     * @param <R> Row type
+     */
+    public interface RowSink<R> {
+        /**
+         * @param row The next row
+         * @throws IOException to abort the query
+         */
+        void accept(R row) throws IOException;
+    }
+
+    /**
+     * Receives per-row outcomes and progress from {@link #saveAppointments}.
+     */
+    public interface BatchListener {
+        /**
+         * Called for each row the database rejected; the rest of its chunk is still saved.
+         * @param index Position of the row in the list passed to saveAppointments
+         * @param row The rejected row
+         * @param error Why it was rejected
+         */
+        void rowFailed(int index, Appointment row, SQLException error);
+
+        /**
+         * Called after each chunk commits.
+         * @param processed Rows processed so far
+         * @param saved Rows saved so far
+         */
+        default void chunkCommitted(int processed, int saved) {
+        }
+    }
+
+    /**
+     * Process-wide pool, created on first use and closed when the JVM exits.
+     */
+    private static final class SharedPool {
+        static final ConnectionPool INSTANCE = create();
+
+        private static ConnectionPool create() {
+            ConnectionPool pool = new ConnectionPool(URL, USER, PASSWORD, new ConnectionPool.Settings());
+            Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "petgroom-pool-shutdown"));
+            return pool;
+        }
+    }
+
+    private static final class Shared {
+        static final DatabaseConnectivity INSTANCE = create();
+
+        private static DatabaseConnectivity create() {
+            if (!LocalStore.ENABLED) {
+                return new DatabaseConnectivity();
+            }
+            LocalStore local;
+            try {
+                local = LocalStore.open();
+            } catch (SQLException e) {
+                Logger.getLogger(DatabaseConnectivity.class.getName()).log(Level.WARNING,
+                        "Could not open the local store; working without an offline fallback", e);
+                return new DatabaseConnectivity();
+            }
+            new SyncEngine(SharedPool.INSTANCE, local).start();
+            return new DatabaseConnectivity(SharedPool.INSTANCE, local);
+        }
+    }
 
     /**
-     * Initializes the database connection.
+     * @return The process-wide instance over the shared pool, used by every form
+     */
+    public static DatabaseConnectivity shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Uses the shared connection pool. Cheap: no connection is opened here.
      */
     public DatabaseConnectivity() {
-        try {
-            connection = DriverManager.getConnection(URL, USER, PASSWORD);
-        } catch (SQLException e) {
-            e.printStackTrace();
+        this(SharedPool.INSTANCE);
+    }
+
+    /**
+     * Uses the given pool instead of the shared one.
+     * @param pool Connection pool to borrow from
+     */
+    DatabaseConnectivity(ConnectionPool pool) {
+        this(pool, null);
+    }
+
+    /**
+     * Uses the given pool, and the local store while the pool's database is unreachable.
+     * @param pool Connection pool to borrow from
+     * @param local Store to fall back to; null for none
+     */
+    DatabaseConnectivity(ConnectionPool pool, LocalStore local) {
+        this(pool, local, true);
+    }
+
+    /**
+     * @param pool Connection pool to borrow from
+     * @param local Store to fall back to; null for none
+     * @param logChanges Whether writes are added to change_log; false for a
+     *        pool over the local store, which has no change log
+     */
+    DatabaseConnectivity(ConnectionPool pool, LocalStore local, boolean logChanges) {
+        this.pool = pool;
+        this.local = local;
+        this.logChanges = logChanges;
+    }
+
+    /**
+     * @return Whether calls are served by the local store because MySQL is unreachable
+     */
+    public boolean isOffline() {
+        return local != null && local.isOffline();
+    }
+
+    /**
+     * @param listener Called on the EDT when calls switch to the local store or back to MySQL
+     */
+    public void addOfflineListener(Runnable listener) {
+        if (local != null) {
+            local.addListener(listener);
         }
     }
 
+    /**
+     * @return The pool backing this instance, for its live counters
+     */
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @return The local store's pool, or null when there is no local store
+     */
+    ConnectionPool getLocalPool() {
+        return local == null ? null : local.getPool();
+    }
+
     /**
      * Saves a new appointment to the database.
      * @param clientName Client's name
@@ -33,106 +212,702 @@ public class DatabaseConnectivity {
      * @param petBreed Pet's breed
      * @param service Service type
      * @param sqlDate Appointment date
-     * @return true if successful, false otherwise
+     * @param slot Station and time to book, or null to book the day as a whole
+     * @return The saved appointment, or null if saving failed or the slot overlaps another booking
      */
-    public boolean saveAppointment(String clientName, String contact, String petName, String petBreed, String service, Date sqlDate) {
-        String query = "INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service) VALUES (?, ?, ?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, clientName);
-            stmt.setString(2, contact);
-            stmt.setDate(3, sqlDate);
-            stmt.setString(4, petName);
-            stmt.setString(5, petBreed);
-            stmt.setString(6, service);
-            return stmt.executeUpdate() > 0;
+    public Appointment saveAppointment(String clientName, String contact, String petName, String petBreed, String service, Date sqlDate, TimeSlot slot) {
+        String query = "INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        try {
+            return timed(SAVE_APPOINTMENT, () -> {
+                try (ConnectionPool.PooledConnection conn = borrow()) {
+                    // The rollup changes in the same transaction; the pool rolls back if we do not commit
+                    conn.connection().setAutoCommit(false);
+                    if (slot != null && isSlotTaken(conn, sqlDate, slot, 0)) {
+                        return null;
+                    }
+                    PreparedStatement stmt = conn.prepareCached(query, Statement.RETURN_GENERATED_KEYS);
+                    stmt.setString(1, clientName);
+                    stmt.setString(2, contact);
+                    stmt.setDate(3, sqlDate);
+                    stmt.setString(4, petName);
+                    stmt.setString(5, petBreed);
+                    stmt.setString(6, service);
+                    bindSlot(stmt, 7, slot);
+                    long id = executeInsert(stmt);
+                    if (id == 0) {
+                        return null;
+                    }
+                    bumpAppointments(conn, sqlDate, service, 1);
+                    recordChange(conn, "appointments", id, 'I');
+                    conn.connection().commit();
+                    return new Appointment(id, clientName, contact, sqlDate, petName, petBreed, service, slot);
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
+            return null;
+        }
+    }
+
+    /**
+     * Saves an appointment booked in the local store while offline. The
+     * offline id is stored with it and is unique in the appointments table,
+     * so if the booking was saved before and the local store never heard
+     * back, that row is returned instead of booking it again.
+     * @param row The booking as made offline; its id is ignored
+     * @param slot Station and time to book, or null to book the day as a whole
+     * @param offlineId Id given to the booking in the outbox
+     * @return The appointment as saved, now or earlier; null if the slot overlaps another booking
+     * @throws SQLException if saving fails
+     */
+    Appointment saveOfflineAppointment(Appointment row, TimeSlot slot, String offlineId) throws SQLException {
+        String find = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version "
+                + "FROM appointments WHERE offline_id = ?";
+        String query = "INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, offline_id) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        return timed(SAVE_OFFLINE_APPOINTMENT, () -> {
+            try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                conn.connection().setAutoCommit(false);
+                PreparedStatement existing = conn.prepareCached(find);
+                existing.setString(1, offlineId);
+                try (ResultSet rs = existing.executeQuery()) {
+                    if (rs.next()) {
+                        return readAppointment(rs);
+                    }
+                }
+                if (slot != null && isSlotTaken(conn, row.date(), slot, 0)) {
+                    return null;
+                }
+                PreparedStatement stmt = conn.prepareCached(query, Statement.RETURN_GENERATED_KEYS);
+                stmt.setString(1, row.clientName());
+                stmt.setString(2, row.contact());
+                stmt.setDate(3, row.date());
+                stmt.setString(4, row.petName());
+                stmt.setString(5, row.petBreed());
+                stmt.setString(6, row.service());
+                bindSlot(stmt, 7, slot);
+                stmt.setString(10, offlineId);
+                long id = executeInsert(stmt);
+                if (id == 0) {
+                    throw new SQLException("Offline booking " + offlineId + " was not inserted");
+                }
+                bumpAppointments(conn, row.date(), row.service(), 1);
+                recordChange(conn, "appointments", id, 'I');
+                conn.connection().commit();
+                return new Appointment(id, row.clientName(), row.contact(), row.date(), row.petName(), row.petBreed(),
+                        row.service(), slot);
+            }
+        });
+    }
+
+    /**
+     * Saves many appointments with JDBC batching. Rows are sent in chunks of
+     * batchSize, each chunk in its own transaction. If a chunk fails, it is
+     * rolled back and retried row by row so that only the bad rows are skipped
+     * and reported to the listener. Chunks with booked slots go row by row
+     * from the start, and a row whose slot overlaps another booking, saved
+     * or earlier in the list, is reported as failed.
+     * @param appointments Rows to insert; their ids are ignored
+     * @param batchSize Rows per chunk, at least 1
+     * @param listener Receives failed rows and progress
+     * @return Number of appointments saved
+     * @throws IllegalArgumentException if batchSize is less than 1
+     */
+    public int saveAppointments(List<Appointment> appointments, int batchSize, BatchListener listener) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        String query = "INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time) "
+                + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        int saved = 0;
+        // Timed by hand: chunks committed before a failure still count as saved
+        long started = System.nanoTime();
+        boolean failed = true;
+        try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+            Connection connection = conn.connection();
+            PreparedStatement stmt = conn.prepareCached(query);
+            // If a chunk fails part way, the pool rolls it back on release
+            connection.setAutoCommit(false);
+            for (int start = 0; start < appointments.size(); start += batchSize) {
+                List<Appointment> chunk = appointments.subList(start, Math.min(start + batchSize, appointments.size()));
+                saved += saveChunk(conn, stmt, chunk, start, listener);
+                listener.chunkCommitted(start + chunk.size(), saved);
+            }
+            connection.setAutoCommit(true);
+            failed = false;
+        } catch (SQLException e) {
+            e.printStackTrace();
+        } finally {
+            SAVE_APPOINTMENTS.record(System.nanoTime() - started, failed);
+        }
+        return saved;
+    }
+
+    private int saveChunk(ConnectionPool.PooledConnection conn, PreparedStatement stmt, List<Appointment> chunk, int offset, BatchListener listener) throws SQLException {
+        Connection connection = conn.connection();
+        // Slotted rows need an overlap check each, so only slotless chunks are batched
+        if (chunk.stream().allMatch(appointment -> appointment.slot() == null)) {
+            try {
+                for (Appointment appointment : chunk) {
+                    bindAppointment(stmt, appointment);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+                bumpAppointments(conn, chunk);
+                // Batched inserts return no ids; one entry tells other terminals to reload
+                recordChange(conn, "appointments", 0, 'R');
+                connection.commit();
+                return chunk.size();
+            } catch (SQLException batchError) {
+                stmt.clearBatch();
+                connection.rollback();
+            }
+        }
+        // Row by row, isolating the failing rows; a failed statement does not abort the MySQL transaction.
+        // The overlap check sees the rows inserted before it in this transaction.
+        List<Appointment> saved = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Appointment appointment = chunk.get(i);
+            try {
+                if (appointment.slot() != null && isSlotTaken(conn, appointment.date(), appointment.slot(), 0)) {
+                    listener.rowFailed(offset + i, appointment, new SQLException("Slot overlaps another booking"));
+                    continue;
+                }
+                bindAppointment(stmt, appointment);
+                stmt.executeUpdate();
+                saved.add(appointment);
+            } catch (SQLException rowError) {
+                listener.rowFailed(offset + i, appointment, rowError);
+            }
+        }
+        bumpAppointments(conn, saved);
+        if (!saved.isEmpty()) {
+            recordChange(conn, "appointments", 0, 'R');
         }
+        connection.commit();
+        return saved.size();
+    }
+
+    private static void bindAppointment(PreparedStatement stmt, Appointment appointment) throws SQLException {
+        stmt.setString(1, appointment.clientName());
+        stmt.setString(2, appointment.contact());
+        stmt.setDate(3, appointment.date());
+        stmt.setString(4, appointment.petName());
+        stmt.setString(5, appointment.petBreed());
+        stmt.setString(6, appointment.service());
+        bindSlot(stmt, 7, appointment.slot());
     }
 
     /**
      * Retrieves all appointments from the database.
-     * @return List of appointment data as Object arrays
+     * @return All appointments ordered by date then id
+     */
+    public List<Appointment> getAppointments() {
+        String query = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments ORDER BY date, id";
+        try {
+            return timed(GET_APPOINTMENTS, () -> {
+                List<Appointment> appointments = new ArrayList<>();
+                try (ConnectionPool.PooledConnection conn = borrow();
+                     ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                    while (rs.next()) {
+                        appointments.add(readAppointment(rs));
+                    }
+                }
+                return appointments;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Retrieves the appointments within a date range.
+     * @param from First date, inclusive
+     * @param to Last date, inclusive
+     * @return Appointments ordered by date then id
+     */
+    public List<Appointment> getAppointmentsBetween(Date from, Date to) {
+        try {
+            return queryAppointmentsBetween(from, to);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Like {@link #getAppointmentsBetween}, but reports failures to the caller
+     * so an empty result can be told apart from an error.
+     */
+    List<Appointment> queryAppointmentsBetween(Date from, Date to) throws SQLException {
+        return timed(GET_APPOINTMENTS_BETWEEN, () -> {
+            List<Appointment> appointments = new ArrayList<>();
+            String query = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments "
+                    + "WHERE date BETWEEN ? AND ? ORDER BY date, id";
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setDate(1, from);
+                stmt.setDate(2, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        appointments.add(readAppointment(rs));
+                    }
+                }
+            }
+            return appointments;
+        });
+    }
+
+    /**
+     * @param id Appointment id
+     * @return The appointment, or null if there is none with that id
+     * @throws SQLException if the query fails
      */
-    public List<Object[]> getAppointments() {
-        List<Object[]> appointments = new ArrayList<>();
-        String query = "SELECT client_name, contact, date, pet_name, pet_breed, service FROM appointments";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            while (rs.next()) {
-                appointments.add(new Object[]{
-                    rs.getString("client_name"),
-                    rs.getString("contact"),
-                    rs.getDate("date"),
-                    rs.getString("pet_name"),
-                    rs.getString("pet_breed"),
-                    rs.getString("service")
-                });
+    Appointment queryAppointment(long id) throws SQLException {
+        return timed(QUERY_APPOINTMENT, () -> {
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                return findAppointment(conn, id);
             }
+        });
+    }
+
+    private static Appointment findAppointment(ConnectionPool.PooledConnection conn, long id) throws SQLException {
+        String query = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments "
+                + "WHERE id = ?";
+        PreparedStatement stmt = conn.prepareCached(query);
+        stmt.setLong(1, id);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? readAppointment(rs) : null;
+        }
+    }
+
+    /**
+     * Reads the appointments with the given ids in one query.
+     * @param ids Appointment ids
+     * @return The appointments found; ids with no row are left out
+     * @throws SQLException if the query fails
+     */
+    List<Appointment> queryAppointments(Collection<Long> ids) throws SQLException {
+        return timed(QUERY_APPOINTMENTS, () -> queryByIds("SELECT id, client_name, contact, date, pet_name, pet_breed, service, "
+                + "station, start_time, end_time, version FROM appointments WHERE id IN ", ids, DatabaseConnectivity::readAppointment));
+    }
+
+    /**
+     * Counts all appointments.
+     * @return Number of appointments, or 0 on error
+     */
+    public int countAppointments() {
+        return count(COUNT_APPOINTMENTS, "SELECT COUNT(*) FROM appointments");
+    }
+
+    /**
+     * Retrieves one page of appointments ordered by date then id, using keyset pagination.
+     * @param after Last appointment of the previous page, or null for the first page
+     * @param limit Maximum number of appointments to return
+     * @return Appointments strictly after the given one
+     */
+    public List<Appointment> getAppointmentsAfter(Appointment after, int limit) {
+        try {
+            return queryAppointmentsAfter(after, limit);
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Like {@link #getAppointmentsAfter}, but reports failures to the caller.
+     * @throws SQLException if the query fails
+     */
+    List<Appointment> queryAppointmentsAfter(Appointment after, int limit) throws SQLException {
+        return timed(GET_APPOINTMENTS_AFTER, () -> {
+            String columns = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments ";
+            String order = "ORDER BY date, id LIMIT ?";
+            List<Appointment> appointments = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt;
+                if (after == null) {
+                    stmt = conn.prepareCached(columns + order);
+                    stmt.setInt(1, limit);
+                } else {
+                    stmt = conn.prepareCached(columns + "WHERE (date, id) > (?, ?) " + order);
+                    stmt.setDate(1, after.date());
+                    stmt.setLong(2, after.id());
+                    stmt.setInt(3, limit);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        appointments.add(readAppointment(rs));
+                    }
+                }
+            }
+            return appointments;
+        });
+    }
+
+    /**
+     * Retrieves one page of appointments ordered by date then id, by offset. Used when
+     * jumping to a page whose predecessor has not been read.
+     * @param offset Number of appointments to skip
+     * @param limit Maximum number of appointments to return
+     * @return Appointments starting at the offset
+     */
+    public List<Appointment> getAppointmentsAt(int offset, int limit) {
+        String query = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments "
+                + "ORDER BY date, id LIMIT ? OFFSET ?";
+        try {
+            return timed(GET_APPOINTMENTS_AT, () -> {
+                List<Appointment> appointments = new ArrayList<>();
+                try (ConnectionPool.PooledConnection conn = borrow()) {
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setInt(1, limit);
+                    stmt.setInt(2, offset);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            appointments.add(readAppointment(rs));
+                        }
+                    }
+                }
+                return appointments;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
         }
-        return appointments;
     }
 
     /**
      * Saves a new payment to the database.
      * @param clientName Client's name
      * @param contact Client's contact information
-     * @param totalPaid Amount paid
+     * @param totalPaidCentavos Amount paid, in centavos
      * @param status Payment status (Paid or Downpayment)
-     * @return true if successful, false otherwise
+     * @return The saved payment, or null if saving failed
      */
-    public boolean savePayment(String clientName, String contact, double totalPaid, String status) {
-        String query = "INSERT INTO payments (client_name, contact, total_paid, status) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, clientName);
-            stmt.setString(2, contact);
-            stmt.setDouble(3, totalPaid);
-            stmt.setString(4, status);
-            return stmt.executeUpdate() > 0;
+    public Payment savePayment(String clientName, String contact, long totalPaidCentavos, String status) {
+        String query = "INSERT INTO payments (client_name, contact, total_paid_centavos, status, paid_at) VALUES (?, ?, ?, ?, ?)";
+        // DATETIME keeps whole seconds; truncate so the returned row matches a re-read
+        Timestamp paidAt = new Timestamp(System.currentTimeMillis() / 1000 * 1000);
+        try {
+            return timed(SAVE_PAYMENT, () -> {
+                try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                    conn.connection().setAutoCommit(false);
+                    PreparedStatement stmt = conn.prepareCached(query, Statement.RETURN_GENERATED_KEYS);
+                    stmt.setString(1, clientName);
+                    stmt.setString(2, contact);
+                    stmt.setLong(3, totalPaidCentavos);
+                    stmt.setString(4, status);
+                    stmt.setTimestamp(5, paidAt);
+                    long id = executeInsert(stmt);
+                    if (id == 0) {
+                        return null;
+                    }
+                    bumpRevenue(conn, Date.valueOf(paidAt.toLocalDateTime().toLocalDate()), status, 1, totalPaidCentavos);
+                    recordChange(conn, "payments", id, 'I');
+                    conn.connection().commit();
+                    return new Payment(id, clientName, contact, totalPaidCentavos, status, paidAt);
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
-            return false;
+            return null;
         }
     }
 
+    /**
+     * Saves payments taken through the payment journal, in one transaction.
+     * Each row carries its journal id, which is unique in the payments table,
+     * so entries that were saved before a crash are skipped on replay and
+     * their revenue is not counted twice. Saved ids are looked up rather than
+     * left to INSERT IGNORE, which would also let a bad entry through as a
+     * truncated row or drop it as if it had been saved.
+     *
+     * If the database refuses the batch for its data (a value too long, say)
+     * rather than failing to run it, each entry is saved in a transaction of
+     * its own, so one bad entry cannot hold back the rest. Entries refused
+     * again are handed to onRejected and not saved.
+     * @param pending Journal entries, oldest first
+     * @param onRejected Receives each entry the database refused, with the reason
+     * @return The payments inserted by this call, leaving out any already saved or refused; null if saving failed
+     */
+    public List<Payment> savePendingPayments(List<PendingPayment> pending, BiConsumer<PendingPayment, SQLException> onRejected) {
+        try {
+            try {
+                return timed(SAVE_PENDING_PAYMENTS, () -> insertPendingPayments(pending));
+            } catch (SQLException e) {
+                if (!isRejection(e)) {
+                    throw e;
+                }
+            }
+            List<Payment> saved = new ArrayList<>(pending.size());
+            for (PendingPayment payment : pending) {
+                try {
+                    saved.addAll(timed(SAVE_PENDING_PAYMENTS, () -> insertPendingPayments(List.of(payment))));
+                } catch (SQLException e) {
+                    if (!isRejection(e)) {
+                        throw e;
+                    }
+                    onRejected.accept(payment, e);
+                }
+            }
+            return saved;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private List<Payment> insertPendingPayments(List<PendingPayment> pending) throws SQLException {
+        String query = "INSERT INTO payments (journal_id, client_name, contact, total_paid_centavos, status, paid_at) "
+                + "VALUES (?, ?, ?, ?, ?, ?)";
+        List<Payment> saved = new ArrayList<>(pending.size());
+        try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+            conn.connection().setAutoCommit(false);
+            Set<String> done = savedJournalIds(conn, pending);
+            PreparedStatement stmt = conn.prepareCached(query, Statement.RETURN_GENERATED_KEYS);
+            for (PendingPayment payment : pending) {
+                if (done.contains(payment.journalId())) {
+                    continue; // Already saved before a restart
+                }
+                stmt.setString(1, payment.journalId());
+                stmt.setString(2, payment.clientName());
+                stmt.setString(3, payment.contact());
+                stmt.setLong(4, payment.totalPaidCentavos());
+                stmt.setString(5, payment.status());
+                stmt.setTimestamp(6, payment.paidAt());
+                long id = executeInsert(stmt);
+                if (id == 0) {
+                    throw new SQLException("Journalled payment " + payment.journalId() + " was not inserted");
+                }
+                bumpRevenue(conn, Date.valueOf(payment.paidAt().toLocalDateTime().toLocalDate()), payment.status(), 1,
+                        payment.totalPaidCentavos());
+                recordChange(conn, "payments", id, 'I');
+                saved.add(new Payment(id, payment.clientName(), payment.contact(), payment.totalPaidCentavos(),
+                        payment.status(), payment.paidAt()));
+            }
+            conn.connection().commit();
+            return saved;
+        }
+    }
+
+    /**
+     * @return Whether the database refused the statement for its data or a
+     *         constraint (SQLSTATE class 22 or 23), so running it again would fail the same way
+     */
+    private static boolean isRejection(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLDataException || e instanceof SQLIntegrityConstraintViolationException
+                || state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    /**
+     * @return The journal ids among the entries that already have a payment row
+     */
+    private static Set<String> savedJournalIds(ConnectionPool.PooledConnection conn, List<PendingPayment> pending) throws SQLException {
+        Set<String> saved = new HashSet<>();
+        if (pending.isEmpty()) {
+            return saved;
+        }
+        String query = "SELECT journal_id FROM payments WHERE journal_id IN ("
+                + String.join(", ", Collections.nCopies(pending.size(), "?")) + ")";
+        // Only one journal saves a given entry; should two ever race, the unique key fails one batch, which is retried
+        try (PreparedStatement stmt = conn.connection().prepareStatement(query)) {
+            int index = 1;
+            for (PendingPayment payment : pending) {
+                stmt.setString(index++, payment.journalId());
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    saved.add(rs.getString(1));
+                }
+            }
+        }
+        return saved;
+    }
+
+    /**
+     * Reads the payments with the given ids in one query.
+     * @param ids Payment ids
+     * @return The payments found; ids with no row are left out
+     * @throws SQLException if the query fails
+     */
+    List<Payment> queryPayments(Collection<Long> ids) throws SQLException {
+        return timed(QUERY_PAYMENTS, () -> queryByIds("SELECT id, client_name, contact, total_paid_centavos, status, paid_at "
+                + "FROM payments WHERE id IN ", ids, DatabaseConnectivity::readPayment));
+    }
+
     /**
      * Retrieves all payments from the database.
-     * @return List of payment data as Object arrays
+     * @return All payments ordered by id
+     */
+    public List<Payment> getPayments() {
+        String query = "SELECT id, client_name, contact, total_paid_centavos, status, paid_at FROM payments ORDER BY id";
+        try {
+            return timed(GET_PAYMENTS, () -> {
+                List<Payment> payments = new ArrayList<>();
+                try (ConnectionPool.PooledConnection conn = borrow();
+                     ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                    while (rs.next()) {
+                        payments.add(readPayment(rs));
+                    }
+                }
+                return payments;
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Counts all payments.
+     * @return Number of payments, or 0 on error
      */
-    public List<Object[]> getPayments() {
-        List<Object[]> payments = new ArrayList<>();
-        String query = "SELECT client_name, contact, total_paid, status FROM payments";
-        try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
-            while (rs.next()) {
-                payments.add(new Object[]{
-                    rs.getString("client_name"),
-                    rs.getString("contact"),
-                    rs.getDouble("total_paid"),
-                    rs.getString("status")
-                });
+    public int countPayments() {
+        return count(COUNT_PAYMENTS, "SELECT COUNT(*) FROM payments");
+    }
+
+    /**
+     * Retrieves one page of payments ordered by id, using keyset pagination.
+     * @param after Last payment of the previous page, or null for the first page
+     * @param limit Maximum number of payments to return
+     * @return Payments strictly after the given one
+     */
+    public List<Payment> getPaymentsAfter(Payment after, int limit) {
+        try {
+            return queryPaymentsAfter(after, limit);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Like {@link #getPaymentsAfter}, but reports failures to the caller.
+     * @throws SQLException if the query fails
+     */
+    List<Payment> queryPaymentsAfter(Payment after, int limit) throws SQLException {
+        return timed(GET_PAYMENTS_AFTER, () -> {
+            String columns = "SELECT id, client_name, contact, total_paid_centavos, status, paid_at FROM payments ";
+            String order = "ORDER BY id LIMIT ?";
+            List<Payment> payments = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt;
+                if (after == null) {
+                    stmt = conn.prepareCached(columns + order);
+                    stmt.setInt(1, limit);
+                } else {
+                    stmt = conn.prepareCached(columns + "WHERE id > ? " + order);
+                    stmt.setLong(1, after.id());
+                    stmt.setInt(2, limit);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        payments.add(readPayment(rs));
+                    }
+                }
             }
+            return payments;
+        });
+    }
+
+    /**
+     * Retrieves one page of payments ordered by id, by offset.
+     * @param offset Number of payments to skip
+     * @param limit Maximum number of payments to return
+     * @return Payments starting at the offset
+     */
+    public List<Payment> getPaymentsAt(int offset, int limit) {
+        String query = "SELECT id, client_name, contact, total_paid_centavos, status, paid_at FROM payments "
+                + "ORDER BY id LIMIT ? OFFSET ?";
+        try {
+            return timed(GET_PAYMENTS_AT, () -> {
+                List<Payment> payments = new ArrayList<>();
+                try (ConnectionPool.PooledConnection conn = borrow()) {
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setInt(1, limit);
+                    stmt.setInt(2, offset);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            payments.add(readPayment(rs));
+                        }
+                    }
+                }
+                return payments;
+            });
         } catch (SQLException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        return payments;
+    }
+
+    /**
+     * Streams appointments to a sink in date order without holding them in memory.
+     * The result set is forward-only and fetched from a server-side cursor
+     * a few hundred rows at a time (-Dpetgroom.export.fetchSize).
+     * @param from First date, inclusive, or null for no lower bound
+     * @param to Last date, inclusive, or null for no upper bound
+     * @param sink Receives each row
+     * @return Number of rows streamed
+     * @throws SQLException if the query fails
+     * @throws IOException if the sink fails
+     */
+    public long streamAppointments(Date from, Date to, RowSink<? super Appointment> sink) throws SQLException, IOException {
+        String query = "SELECT id, client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time, version FROM appointments"
+                + rangeClause("date", from, to) + " ORDER BY date, id";
+        return stream(STREAM_APPOINTMENTS, query, from, to, DatabaseConnectivity::readAppointment, sink);
+    }
+
+    /**
+     * Streams payments to a sink in id order without holding them in memory.
+     * @param from First payment day, inclusive, or null for no lower bound
+     * @param to Last payment day, inclusive, or null for no upper bound
+     * @param sink Receives each row
+     * @return Number of rows streamed
+     * @throws SQLException if the query fails
+     * @throws IOException if the sink fails
+     * @see #streamAppointments
+     */
+    public long streamPayments(Date from, Date to, RowSink<? super Payment> sink) throws SQLException, IOException {
+        String query = "SELECT id, client_name, contact, total_paid_centavos, status, paid_at FROM payments"
+                + rangeClause("paid_at", from, to) + " ORDER BY id";
+        return stream(STREAM_PAYMENTS, query, from, to, DatabaseConnectivity::readPayment, sink);
     }
 
     /**
      * Deletes an appointment from the database.
-     * @param clientName Client's name
-     * @param contact Client's contact information
-     * @param sqlDate Appointment date
+     * @param id Appointment id
      * @return true if successful, false otherwise
      */
-    public boolean deleteAppointment(String clientName, String contact, Date sqlDate) {
-        String query = "DELETE FROM appointments WHERE client_name = ? AND contact = ? AND date = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, clientName);
-            stmt.setString(2, contact);
-            stmt.setDate(3, sqlDate);
-            return stmt.executeUpdate() > 0;
+    public boolean deleteAppointment(long id) {
+        String select = "SELECT date, service FROM appointments WHERE id = ? FOR UPDATE";
+        String query = "DELETE FROM appointments WHERE id = ?";
+        try {
+            return timed(DELETE_APPOINTMENT, () -> {
+                try (ConnectionPool.PooledConnection conn = borrow()) {
+                    conn.connection().setAutoCommit(false);
+                    PreparedStatement find = conn.prepareCached(select);
+                    find.setLong(1, id);
+                    Date date;
+                    String service;
+                    try (ResultSet rs = find.executeQuery()) {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        date = rs.getDate(1);
+                        service = rs.getString(2);
+                    }
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setLong(1, id);
+                    stmt.executeUpdate();
+                    bumpAppointments(conn, date, service, -1);
+                    recordChange(conn, "appointments", id, 'D');
+                    conn.connection().commit();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -140,31 +915,106 @@ public class DatabaseConnectivity {
     }
 
     /**
-     * Updates an existing appointment in the database.
-     * @param oldClientName Original client's name
-     * @param oldContact Original client's contact
-     * @param oldDate Original appointment date
+     * Updates an appointment if nobody else has since the given version was
+     * read. The check is the version in the UPDATE's WHERE clause, so no row
+     * is locked while the user edits and two terminals never wait on each
+     * other; the one that saves second is told and shown the other's version.
+     * @param id Appointment id
+     * @param version The version the edit was made against
      * @param newClientName Updated client's name
      * @param newContact Updated client's contact
      * @param newPetName Updated pet's name
      * @param newPetBreed Updated pet's breed
      * @param newService Updated service type
      * @param newDate Updated appointment date
+     * @param newSlot Updated station and time, or null for the day as a whole
+     * @return The outcome, with the new version when UPDATED and the current one on a CONFLICT
+     */
+    public UpdateResult updateAppointment(long id, int version, String newClientName, String newContact, String newPetName, String newPetBreed, String newService, Date newDate, TimeSlot newSlot) {
+        String query = "UPDATE appointments SET client_name = ?, contact = ?, date = ?, pet_name = ?, pet_breed = ?, service = ?, "
+                + "station = ?, start_time = ?, end_time = ?, version = version + 1 WHERE id = ? AND version = ?";
+        try {
+            return timed(UPDATE_APPOINTMENT, () -> {
+                try (ConnectionPool.PooledConnection conn = borrow()) {
+                    conn.connection().setAutoCommit(false);
+                    Appointment current = findAppointment(conn, id);
+                    if (current == null) {
+                        return UpdateResult.of(UpdateResult.Status.DELETED);
+                    }
+                    if (current.version() != version) {
+                        return new UpdateResult(UpdateResult.Status.CONFLICT, current);
+                    }
+                    if (newSlot != null && isSlotTaken(conn, newDate, newSlot, id)) {
+                        return UpdateResult.of(UpdateResult.Status.SLOT_TAKEN);
+                    }
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setString(1, newClientName);
+                    stmt.setString(2, newContact);
+                    stmt.setDate(3, newDate);
+                    stmt.setString(4, newPetName);
+                    stmt.setString(5, newPetBreed);
+                    stmt.setString(6, newService);
+                    bindSlot(stmt, 7, newSlot);
+                    stmt.setLong(10, id);
+                    stmt.setInt(11, version);
+                    if (stmt.executeUpdate() == 0) {
+                        // Saved elsewhere since it was read; a new transaction sees that save
+                        conn.connection().rollback();
+                        current = findAppointment(conn, id);
+                        return current == null ? UpdateResult.of(UpdateResult.Status.DELETED)
+                                : new UpdateResult(UpdateResult.Status.CONFLICT, current);
+                    }
+                    // Matching the version means the row still held current's date and service
+                    if (!current.date().toLocalDate().equals(newDate.toLocalDate()) || !current.service().equals(newService)) {
+                        bumpAppointments(conn, current.date(), current.service(), -1);
+                        bumpAppointments(conn, newDate, newService, 1);
+                    }
+                    recordChange(conn, "appointments", id, 'U');
+                    conn.connection().commit();
+                    return new UpdateResult(UpdateResult.Status.UPDATED,
+                            new Appointment(id, newClientName, newContact, newDate, newPetName, newPetBreed, newService, newSlot, version + 1));
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return UpdateResult.of(UpdateResult.Status.FAILED);
+        }
+    }
+
+    /**
+     * Deletes a payment from the database.
+     * @param id Payment id
      * @return true if successful, false otherwise
      */
-    public boolean updateAppointment(String oldClientName, String oldContact, Date oldDate, String newClientName, String newContact, String newPetName, String newPetBreed, String newService, Date newDate) {
-        String query = "UPDATE appointments SET client_name = ?, contact = ?, date = ?, pet_name = ?, pet_breed = ?, service = ? WHERE client_name = ? AND contact = ? AND date = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, newClientName);
-            stmt.setString(2, newContact);
-            stmt.setDate(3, newDate);
-            stmt.setString(4, newPetName);
-            stmt.setString(5, newPetBreed);
-            stmt.setString(6, newService);
-            stmt.setString(7, oldClientName);
-            stmt.setString(8, oldContact);
-            stmt.setDate(9, oldDate);
-            return stmt.executeUpdate() > 0;
+    public boolean deletePayment(long id) {
+        String select = "SELECT paid_at, status, total_paid_centavos FROM payments WHERE id = ? FOR UPDATE";
+        String query = "DELETE FROM payments WHERE id = ?";
+        try {
+            return timed(DELETE_PAYMENT, () -> {
+                try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                    conn.connection().setAutoCommit(false);
+                    PreparedStatement find = conn.prepareCached(select);
+                    find.setLong(1, id);
+                    Date day;
+                    String status;
+                    long centavos;
+                    try (ResultSet rs = find.executeQuery()) {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        day = Date.valueOf(rs.getTimestamp(1).toLocalDateTime().toLocalDate());
+                        status = rs.getString(2);
+                        centavos = rs.getLong(3);
+                    }
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setLong(1, id);
+                    stmt.executeUpdate();
+                    bumpRevenue(conn, day, status, -1, -centavos);
+                    recordChange(conn, "payments", id, 'D');
+                    conn.connection().commit();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -172,21 +1022,220 @@ public class DatabaseConnectivity {
     }
 
     /**
-     * Deletes a payment from the database.
-     * @param clientName Client's name
-     * @param contact Client's contact information
-     * @param totalPaid Amount paid
-     * @param status Payment status (Paid or Downpayment)
+     * Reads the active services in display order.
+     * @return Active services
+     * @throws SQLException if the query fails
+     */
+    List<Service> queryServices() throws SQLException {
+        return timed(QUERY_SERVICES, () -> {
+            String query = "SELECT id, name, price_centavos, duration_minutes FROM services WHERE active ORDER BY sort_order, id";
+            List<Service> services = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrow();
+                 ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                while (rs.next()) {
+                    services.add(new Service(rs.getInt("id"), rs.getString("name"), rs.getLong("price_centavos"), rs.getInt("duration_minutes")));
+                }
+            }
+            return services;
+        });
+    }
+
+    /**
+     * Summarises the services table so a change can be detected without reading it.
+     * @return A value that changes whenever a service is added, edited or removed
+     * @throws SQLException if the query fails
+     */
+    String queryServicesVersion() throws SQLException {
+        return timed(QUERY_SERVICES_VERSION, () -> {
+            String query = "SELECT COUNT(*), MAX(updated_at), COALESCE(SUM(id), 0) FROM services";
+            try (ConnectionPool.PooledConnection conn = borrow();
+                 ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                return rs.next() ? rs.getLong(1) + "/" + rs.getTimestamp(2) + "/" + rs.getLong(3) : "";
+            }
+        });
+    }
+
+    /**
+     * Reads the revenue rollup for a range of days.
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Rows by day, then status
+     * @throws SQLException if the query fails
+     */
+    List<RevenueRollup> queryRevenueRollups(Date from, Date to) throws SQLException {
+        return timed(QUERY_REVENUE_ROLLUPS, () -> {
+            String query = "SELECT day, status, payments, total_centavos FROM daily_revenue "
+                    + "WHERE day BETWEEN ? AND ? AND payments <> 0 ORDER BY day, status";
+            List<RevenueRollup> rows = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setDate(1, from);
+                stmt.setDate(2, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new RevenueRollup(rs.getDate(1).toLocalDate(), rs.getString(2), rs.getInt(3), rs.getLong(4)));
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Reads the appointments rollup for a range of days.
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Rows by day, then service
+     * @throws SQLException if the query fails
+     */
+    List<AppointmentRollup> queryAppointmentRollups(Date from, Date to) throws SQLException {
+        return timed(QUERY_APPOINTMENT_ROLLUPS, () -> {
+            String query = "SELECT day, service, appointments FROM daily_appointments "
+                    + "WHERE day BETWEEN ? AND ? AND appointments <> 0 ORDER BY day, service";
+            List<AppointmentRollup> rows = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setDate(1, from);
+                stmt.setDate(2, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        rows.add(new AppointmentRollup(rs.getDate(1).toLocalDate(), rs.getString(2), rs.getInt(3)));
+                    }
+                }
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * Counts appointments per day from the appointments rollup.
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Appointments per day; days without appointments are left out
+     * @throws SQLException if the query fails
+     */
+    Map<LocalDate, Integer> queryAppointmentCountsByDay(Date from, Date to) throws SQLException {
+        return timed(QUERY_APPOINTMENT_COUNTS_BY_DAY, () -> {
+            String query = "SELECT day, SUM(appointments) FROM daily_appointments "
+                    + "WHERE day BETWEEN ? AND ? GROUP BY day HAVING SUM(appointments) > 0";
+            Map<LocalDate, Integer> counts = new HashMap<>();
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setDate(1, from);
+                stmt.setDate(2, to);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        counts.put(rs.getDate(1).toLocalDate(), rs.getInt(2));
+                    }
+                }
+            }
+            return counts;
+        });
+    }
+
+    /**
+     * Reads change_log entries in order, through its primary key.
+     * @param afterSeq Last sequence number already seen
+     * @param limit Maximum number of entries to return
+     * @return Entries with a higher sequence number, oldest first
+     * @throws SQLException if the query fails, or MySQL is offline
+     */
+    List<ChangeEvent> queryChangesAfter(long afterSeq, int limit) throws SQLException {
+        return timed(QUERY_CHANGES_AFTER, () -> {
+            String query = "SELECT seq, table_name, row_id, op, origin FROM change_log WHERE seq > ? ORDER BY seq LIMIT ?";
+            List<ChangeEvent> changes = new ArrayList<>();
+            try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setLong(1, afterSeq);
+                stmt.setInt(2, limit);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        changes.add(new ChangeEvent(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4).charAt(0),
+                                rs.getString(5)));
+                    }
+                }
+            }
+            return changes;
+        });
+    }
+
+    /**
+     * @return The highest sequence number in change_log, 0 if it is empty
+     * @throws SQLException if the query fails, or MySQL is offline
+     */
+    long queryLatestChangeSeq() throws SQLException {
+        return timed(QUERY_LATEST_CHANGE_SEQ, () -> {
+            try (ConnectionPool.PooledConnection conn = borrowPrimary();
+                 ResultSet rs = conn.prepareCached("SELECT COALESCE(MAX(seq), 0) FROM change_log").executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Finds a point in change_log that no transaction still open can land
+     * before: the newest entry logged over a minute ago, by MySQL's clock.
+     * Writes take well under that, so every lower sequence number is either
+     * in the log or was rolled back.
+     * @return That entry's sequence number, or 0 if there is none
+     * @throws SQLException if the query fails, or MySQL is offline
+     */
+    long querySettledChangeSeq() throws SQLException {
+        String query = "SELECT seq FROM change_log WHERE changed_at < NOW() - INTERVAL '1' MINUTE "
+                + "ORDER BY changed_at DESC, seq DESC LIMIT 1";
+        return timed(QUERY_SETTLED_CHANGE_SEQ, () -> {
+            try (ConnectionPool.PooledConnection conn = borrowPrimary();
+                 ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Deletes change_log entries older than the given time.
+     * @param before Entries logged before this are deleted
+     * @return Number of entries deleted
+     * @throws SQLException if the delete fails, or MySQL is offline
+     */
+    int pruneChanges(Timestamp before) throws SQLException {
+        return timed(PRUNE_CHANGES, () -> {
+            try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                PreparedStatement stmt = conn.prepareCached("DELETE FROM change_log WHERE changed_at < ?");
+                stmt.setTimestamp(1, before);
+                return stmt.executeUpdate();
+            }
+        });
+    }
+
+    /**
+     * Recomputes both rollup tables from the raw tables in one transaction.
+     * Only needed once after upgrading, or if the rollups were edited by hand;
+     * the write methods keep them current otherwise.
      * @return true if successful, false otherwise
      */
-    public boolean deletePayment(String clientName, String contact, double totalPaid, String status) {
-        String query = "DELETE FROM payments WHERE client_name = ? AND contact = ? AND total_paid = ? AND status = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, clientName);
-            stmt.setString(2, contact);
-            stmt.setDouble(3, totalPaid);
-            stmt.setString(4, status);
-            return stmt.executeUpdate() > 0;
+    public boolean rebuildRollups() {
+        String[] statements = {
+            "DELETE FROM daily_revenue",
+            "INSERT INTO daily_revenue (day, status, payments, total_centavos) "
+                + "SELECT CAST(paid_at AS DATE), status, COUNT(*), SUM(total_paid_centavos) FROM payments GROUP BY CAST(paid_at AS DATE), status",
+            "DELETE FROM daily_appointments",
+            "INSERT INTO daily_appointments (day, service, appointments) "
+                + "SELECT date, service, COUNT(*) FROM appointments GROUP BY date, service"
+        };
+        try {
+            return timed(REBUILD_ROLLUPS, () -> {
+                try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                    Connection connection = conn.connection();
+                    connection.setAutoCommit(false);
+                    try (Statement stmt = connection.createStatement()) {
+                        for (String sql : statements) {
+                            stmt.executeUpdate(sql);
+                        }
+                    }
+                    connection.commit();
+                    return true;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -197,16 +1246,21 @@ public class DatabaseConnectivity {
      * Registers a new user in the database.
      * @param fullName User's full name
      * @param email User's email (unique)
-     * @param password User's password
+     * @param passwordHash bcrypt hash of the user's password; see AuthService
      * @return true if successful, false otherwise
      */
-    public boolean registerUser(String fullName, String email, String password) {
+    public boolean registerUser(String fullName, String email, String passwordHash) {
         String query = "INSERT INTO users (full_name, email, password) VALUES (?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, fullName);
-            stmt.setString(2, email);
-            stmt.setString(3, password); // Note: In production, hash the password
-            return stmt.executeUpdate() > 0;
+        try {
+            return timed(REGISTER_USER, () -> {
+                try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setString(1, fullName);
+                    stmt.setString(2, email);
+                    stmt.setString(3, passwordHash);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
@@ -214,21 +1268,328 @@ public class DatabaseConnectivity {
     }
 
     /**
-     * Validates user credentials against the database.
+     * Looks up the stored password hash by email, through the unique email index.
      * @param email User's email
-     * @param password User's password
-     * @return true if credentials are valid, false otherwise
+     * @return The stored hash, or null if there is no such user or the query failed
      */
-    public boolean validateUser(String email, String password) {
-        String query = "SELECT * FROM users WHERE email = ? AND password = ?";
-        try (PreparedStatement stmt = connection.prepareStatement(query)) {
-            stmt.setString(1, email);
-            stmt.setString(2, password); // Note: In production, compare hashed passwords
-            ResultSet rs = stmt.executeQuery();
-            return rs.next(); // Returns true if a matching user is found
+    public String getPasswordHash(String email) {
+        try {
+            return queryPasswordHash(email);
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Like {@link #getPasswordHash}, but reports failures to the caller, so
+     * that a login during an outage is not taken for an unknown user.
+     * @throws SQLException if the query fails
+     */
+    String queryPasswordHash(String email) throws SQLException {
+        String query = "SELECT password FROM users WHERE email = ?";
+        return timed(GET_PASSWORD_HASH, () -> {
+            try (ConnectionPool.PooledConnection conn = borrow()) {
+                PreparedStatement stmt = conn.prepareCached(query);
+                stmt.setString(1, email);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    return rs.next() ? rs.getString(1) : null;
+                }
+            }
+        });
+    }
+
+    /**
+     * Replaces a user's stored password hash, e.g. after raising the work factor.
+     * @param email User's email
+     * @param passwordHash New bcrypt hash
+     * @return true if successful, false otherwise
+     */
+    public boolean updatePasswordHash(String email, String passwordHash) {
+        String query = "UPDATE users SET password = ? WHERE email = ?";
+        try {
+            return timed(UPDATE_PASSWORD_HASH, () -> {
+                try (ConnectionPool.PooledConnection conn = borrowPrimary()) {
+                    PreparedStatement stmt = conn.prepareCached(query);
+                    stmt.setString(1, passwordHash);
+                    stmt.setString(2, email);
+                    return stmt.executeUpdate() > 0;
+                }
+            });
         } catch (SQLException e) {
             e.printStackTrace();
             return false;
         }
     }
+
+    /**
+     * Borrows from MySQL, or from the local store while MySQL is unreachable.
+     */
+    private ConnectionPool.PooledConnection borrow() throws SQLException {
+        if (local == null) {
+            return pool.borrow();
+        }
+        if (local.isOffline()) {
+            return local.borrow();
+        }
+        try {
+            return pool.borrow();
+        } catch (SQLException e) {
+            if (!LocalStore.isConnectionFailure(e)) {
+                throw e;
+            }
+            local.wentOffline(e);
+            return local.borrow();
+        }
+    }
+
+    /**
+     * Borrows from MySQL, for writes the local store does not take.
+     */
+    private ConnectionPool.PooledConnection borrowPrimary() throws SQLException {
+        if (isOffline()) {
+            throw new SQLNonTransientConnectionException("Not available while offline", "08000");
+        }
+        return pool.borrow();
+    }
+
+    /**
+     * Logs a write in its transaction: to the local store's outbox when it was
+     * made there, otherwise to change_log for the other terminals' change feeds.
+     * @param id Id of the row written; 0 with op 'R' when many rows were
+     */
+    private void recordChange(ConnectionPool.PooledConnection conn, String table, long id, char op) throws SQLException {
+        if (local != null && local.owns(conn)) {
+            LocalStore.queue(conn, table, id, op);
+            return;
+        }
+        if (!logChanges) {
+            return;
+        }
+        String query = "INSERT INTO change_log (table_name, row_id, op, origin) VALUES (?, ?, ?, ?)";
+        PreparedStatement stmt = conn.prepareCached(query);
+        stmt.setString(1, table);
+        stmt.setLong(2, id);
+        stmt.setString(3, String.valueOf(op));
+        stmt.setString(4, ChangeFeed.ORIGIN);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Runs an insert prepared with RETURN_GENERATED_KEYS.
+     * @return The generated id, or 0 if no row was inserted
+     */
+    private static long executeInsert(PreparedStatement stmt) throws SQLException {
+        if (stmt.executeUpdate() == 0) {
+            return 0;
+        }
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            return keys.next() ? keys.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Builds the WHERE clause for an optional day range; the upper bound is
+     * exclusive on the following day so it also works on DATETIME columns.
+     */
+    private static String rangeClause(String column, Date from, Date to) {
+        if (from == null && to == null) {
+            return "";
+        }
+        if (to == null) {
+            return " WHERE " + column + " >= ?";
+        }
+        return from == null
+                ? " WHERE " + column + " < ?"
+                : " WHERE " + column + " >= ? AND " + column + " < ?";
+    }
+
+    private interface RowReader<R> {
+        R read(ResultSet rs) throws SQLException;
+    }
+
+    private interface SqlWork<T> {
+        T run() throws SQLException;
+    }
+
+    /**
+     * Runs one call of an operation, recording how long it took and whether it threw.
+     */
+    private static <T> T timed(OperationStats op, SqlWork<T> work) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = work.run();
+            failed = false;
+            return result;
+        } finally {
+            op.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Runs a query ending in "IN " for a set of ids. Not taken from the
+     * statement cache, whose entries would differ by the number of ids.
+     */
+    private <R> List<R> queryByIds(String query, Collection<Long> ids, RowReader<R> reader) throws SQLException {
+        List<R> rows = new ArrayList<>(ids.size());
+        if (ids.isEmpty()) {
+            return rows;
+        }
+        String in = "(" + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+        try (ConnectionPool.PooledConnection conn = borrow();
+             PreparedStatement stmt = conn.connection().prepareStatement(query + in)) {
+            int index = 1;
+            for (long id : ids) {
+                stmt.setLong(index++, id);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(reader.read(rs));
+                }
+            }
+        }
+        return rows;
+    }
+
+    private <R> long stream(OperationStats op, String query, Date from, Date to, RowReader<R> reader, RowSink<? super R> sink) throws SQLException, IOException {
+        // Timed by hand, as the sink can throw IOException; a failed sink counts as a failed call
+        long start = System.nanoTime();
+        boolean failed = true;
+        // Not taken from the statement cache: it is rare and carries its own fetch size
+        try (ConnectionPool.PooledConnection conn = borrow();
+             PreparedStatement stmt = conn.connection().prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(STREAM_FETCH_SIZE);
+            int index = 1;
+            if (from != null) {
+                stmt.setDate(index++, from);
+            }
+            if (to != null) {
+                stmt.setDate(index, Date.valueOf(to.toLocalDate().plusDays(1)));
+            }
+            long rows = 0;
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(reader.read(rs));
+                    rows++;
+                }
+            }
+            failed = false;
+            return rows;
+        } finally {
+            op.record(System.nanoTime() - start, failed);
+        }
+    }
+
+    /**
+     * Checks for a booking overlapping the slot, locking the station's bookings
+     * for the day so a concurrent save of the same slot waits for this transaction.
+     * @param ignoreId Appointment being moved, which does not conflict with itself; 0 for none
+     */
+    private static boolean isSlotTaken(ConnectionPool.PooledConnection conn, Date date, TimeSlot slot, long ignoreId) throws SQLException {
+        String query = "SELECT id FROM appointments WHERE date = ? AND station = ? AND start_time < ? AND end_time > ? "
+                + "AND id <> ? FOR UPDATE";
+        PreparedStatement stmt = conn.prepareCached(query);
+        stmt.setDate(1, date);
+        stmt.setInt(2, slot.station());
+        stmt.setTime(3, Time.valueOf(slot.end()));
+        stmt.setTime(4, Time.valueOf(slot.start()));
+        stmt.setLong(5, ignoreId);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    private static void bindSlot(PreparedStatement stmt, int index, TimeSlot slot) throws SQLException {
+        if (slot == null) {
+            stmt.setNull(index, Types.TINYINT);
+            stmt.setNull(index + 1, Types.TIME);
+            stmt.setNull(index + 2, Types.TIME);
+        } else {
+            stmt.setInt(index, slot.station());
+            stmt.setTime(index + 1, Time.valueOf(slot.start()));
+            stmt.setTime(index + 2, Time.valueOf(slot.end()));
+        }
+    }
+
+    /**
+     * Adjusts the appointments-per-day rollup for one day and service.
+     */
+    private static void bumpAppointments(ConnectionPool.PooledConnection conn, Date day, String service, int delta) throws SQLException {
+        String query = "INSERT INTO daily_appointments (day, service, appointments) VALUES (?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE appointments = appointments + VALUES(appointments)";
+        PreparedStatement stmt = conn.prepareCached(query);
+        stmt.setDate(1, day);
+        stmt.setString(2, service);
+        stmt.setInt(3, delta);
+        stmt.executeUpdate();
+    }
+
+    /**
+     * Adds a batch of new appointments to the rollup, one upsert per day and service.
+     */
+    private static void bumpAppointments(ConnectionPool.PooledConnection conn, List<Appointment> added) throws SQLException {
+        Map<Date, Map<String, Integer>> counts = new HashMap<>();
+        for (Appointment appointment : added) {
+            counts.computeIfAbsent(appointment.date(), d -> new HashMap<>()).merge(appointment.service(), 1, Integer::sum);
+        }
+        for (Map.Entry<Date, Map<String, Integer>> day : counts.entrySet()) {
+            for (Map.Entry<String, Integer> service : day.getValue().entrySet()) {
+                bumpAppointments(conn, day.getKey(), service.getKey(), service.getValue());
+            }
+        }
+    }
+
+    /**
+     * Adjusts the revenue-per-day rollup for one day and payment status.
+     */
+    private static void bumpRevenue(ConnectionPool.PooledConnection conn, Date day, String status, int payments, long centavos) throws SQLException {
+        String query = "INSERT INTO daily_revenue (day, status, payments, total_centavos) VALUES (?, ?, ?, ?) "
+                + "ON DUPLICATE KEY UPDATE payments = payments + VALUES(payments), total_centavos = total_centavos + VALUES(total_centavos)";
+        PreparedStatement stmt = conn.prepareCached(query);
+        stmt.setDate(1, day);
+        stmt.setString(2, status);
+        stmt.setInt(3, payments);
+        stmt.setLong(4, centavos);
+        stmt.executeUpdate();
+    }
+
+    private int count(OperationStats op, String query) {
+        try {
+            return timed(op, () -> {
+                try (ConnectionPool.PooledConnection conn = borrow();
+                     ResultSet rs = conn.prepareCached(query).executeQuery()) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            });
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    private static Appointment readAppointment(ResultSet rs) throws SQLException {
+        Time start = rs.getTime("start_time");
+        Time end = rs.getTime("end_time");
+        return new Appointment(
+            rs.getLong("id"),
+            rs.getString("client_name"),
+            rs.getString("contact"),
+            rs.getDate("date"),
+            rs.getString("pet_name"),
+            rs.getString("pet_breed"),
+            rs.getString("service"),
+            start == null || end == null ? null : new TimeSlot(rs.getInt("station"), start.toLocalTime(), end.toLocalTime()),
+            rs.getInt("version"));
+    }
+
+    private static Payment readPayment(ResultSet rs) throws SQLException {
+        return new Payment(
+            rs.getLong("id"),
+            rs.getString("client_name"),
+            rs.getString("contact"),
+            rs.getLong("total_paid_centavos"),
+            rs.getString("status"),
+            rs.getTimestamp("paid_at"));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,153 @@
+/*
+ * DiagnosticsDialog.java
+ * Live database timings and pool and cache counters, for support.
+ */
+package petgroom;
+
+import java.awt.BorderLayout;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.awt.Frame;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JTable;
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.WindowConstants;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Shows, for every {@link DatabaseConnectivity} method, how often it was
+ * called, how often it failed and its latency percentiles, with the
+ * connection pools, statement cache, appointment cache and password hashing
+ * below. Reads only in-memory counters, once a second while open, so it can
+ * stay open on a busy terminal. Opened from the dashboard with Ctrl+Shift+D;
+ * the same numbers are published over JMX (see {@link Metrics}).
+ */
+final class DiagnosticsDialog extends JDialog {
+    private static final int REFRESH_MILLIS = 1000;
+    private static final Class<?>[] COLUMN_CLASSES = {
+        String.class, Long.class, Long.class, Double.class, Double.class, Double.class, Double.class, Double.class
+    };
+
+    private final DatabaseConnectivity db;
+    private final AppointmentRepository repository;
+    private final AuthService auth;
+    private final DefaultTableModel operations = new DefaultTableModel(
+            new String[]{"Operation", "Calls", "Errors", "Mean ms", "p50 ms", "p95 ms", "p99 ms", "Max ms"}, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+
+        @Override
+        public Class<?> getColumnClass(int column) {
+            return COLUMN_CLASSES[column];
+        }
+    };
+    private final JTextArea resources = new JTextArea(7, 80);
+    private final Timer refresher = new Timer(REFRESH_MILLIS, e -> refresh());
+
+    /**
+     * @param owner Window to show the dialog over
+     * @param db Database whose pools are shown
+     * @param repository Appointment cache
+     * @param auth Password hashing service
+     */
+    DiagnosticsDialog(Frame owner, DatabaseConnectivity db, AppointmentRepository repository, AuthService auth) {
+        super(owner, "Diagnostics", false);
+        this.db = db;
+        this.repository = repository;
+        this.auth = auth;
+        initComponents();
+        refresh();
+        refresher.start();
+    }
+
+    private void initComponents() {
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                refresher.stop();
+            }
+        });
+
+        JTable table = new JTable(operations);
+        table.setAutoCreateRowSorter(true);
+        resources.setEditable(false);
+        resources.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+
+        JButton reset = new JButton("Reset Counters");
+        reset.setToolTipText("Start the operation counters again from zero");
+        reset.addActionListener(e -> {
+            Metrics.resetAll();
+            refresh();
+        });
+        JButton close = new JButton("Close");
+        close.addActionListener(e -> dispose());
+        JPanel buttons = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        buttons.add(reset);
+        buttons.add(close);
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(resources));
+        split.setResizeWeight(0.75);
+        getContentPane().add(split, BorderLayout.CENTER);
+        getContentPane().add(buttons, BorderLayout.SOUTH);
+        setSize(860, 600);
+        setLocationRelativeTo(getOwner());
+    }
+
+    /**
+     * Reads the counters again. Row selection and sort order are kept.
+     */
+    private void refresh() {
+        int row = 0;
+        for (OperationStats stats : Metrics.operations()) {
+            LatencyHistogram.Snapshot s = stats.snapshot();
+            Object[] values = {stats.getName(), s.count(), stats.getErrorCount(), round(s.meanMillis()),
+                round(s.p50Millis()), round(s.p95Millis()), round(s.p99Millis()), round(s.maxMillis())};
+            if (row < operations.getRowCount()) {
+                for (int column = 0; column < values.length; column++) {
+                    operations.setValueAt(values[column], row, column);
+                }
+            } else {
+                operations.addRow(values);
+            }
+            row++;
+        }
+
+        StringBuilder text = new StringBuilder();
+        appendPool(text, "MySQL pool", db.getPool());
+        ConnectionPool localPool = db.getLocalPool();
+        if (localPool != null) {
+            appendPool(text, "Local pool", localPool);
+        }
+        text.append(String.format("Appointment cache: %d appointments in %d months; search index %s%n",
+                repository.getCachedCount(), repository.getLoadedMonthCount(),
+                repository.isSearchReady() ? "ready" : "loading"));
+        text.append("Password hashing: ").append(auth).append('\n');
+        text.append(db.isOffline() ? "Working offline from the local store\n" : "Connected to MySQL\n");
+        resources.setText(text.toString());
+    }
+
+    private static void appendPool(StringBuilder text, String label, ConnectionPool pool) {
+        long hits = pool.getStatementCacheHits();
+        long lookups = hits + pool.getStatementCacheMisses();
+        text.append(String.format("%s: %d active, %d idle, %d waiting (max %d); %d opened, %d closed, %d borrow timeouts, %d leaks%n",
+                label, pool.getActiveCount(), pool.getIdleCount(), pool.getWaitingCount(), pool.getMaxSize(),
+                pool.getCreatedCount(), pool.getDestroyedCount(), pool.getTimeoutCount(), pool.getLeakCount()));
+        text.append(String.format("  Statement cache: %d per connection; %d hits, %d misses (%.1f%% hits), %d evictions%n",
+                pool.getStatementCacheSize(), hits, pool.getStatementCacheMisses(),
+                lookups == 0 ? 0.0 : hits * 100.0 / lookups, pool.getStatementCacheEvictions()));
+    }
+
+    private static double round(double millis) {
+        return Math.round(millis * 100) / 100.0;
+    }
+}
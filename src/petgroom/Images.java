@@ -0,0 +1,38 @@
+/*
+ * Images.java
+ * Process-wide cache of decoded form images.
+ */
+package petgroom;
+
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.swing.ImageIcon;
+
+/**
+ * Decodes each classpath image once and hands out the same icon to every
+ * label that shows it. The forms reference their images through
+ * {@link #icon} (custom code in the .form files), so a label shown twice, or
+ * a form built after the startup warmup, never decodes an image again.
+ */
+final class Images {
+    private static final Map<String, ImageIcon> CACHE = new ConcurrentHashMap<>();
+
+    private Images() {
+    }
+
+    /**
+     * @param path Classpath resource, e.g. "/LOGINIMAGES/Dog.png"
+     * @return The decoded icon, shared by all callers
+     * @throws IllegalArgumentException if the resource does not exist
+     */
+    static ImageIcon icon(String path) {
+        return CACHE.computeIfAbsent(path, p -> {
+            URL url = Images.class.getResource(p);
+            if (url == null) {
+                throw new IllegalArgumentException("Image not found: " + p);
+            }
+            return new ImageIcon(url);
+        });
+    }
+}
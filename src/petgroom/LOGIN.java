@@ -4,13 +4,16 @@
  */
 package petgroom;
 
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.swing.JOptionPane;
 
 /**
  *
  * @author githu
  */
-public class LOGIN extends javax.swing.JFrame {
+public class LOGIN extends javax.swing.JFrame implements Navigator.Refreshable {
 
     /**
      * Creates new form LOGIN
@@ -47,9 +50,9 @@ public class LOGIN extends javax.swing.JFrame {
 
         jPanel1.setBackground(new java.awt.Color(255, 153, 153));
 
-        jLabel1.setIcon(new javax.swing.ImageIcon(getClass().getResource("/LOGINIMAGES/Login&RegisterIcon.png"))); // NOI18N
+        jLabel1.setIcon(Images.icon("/LOGINIMAGES/Login&RegisterIcon.png"));
 
-        jLabel3.setIcon(new javax.swing.ImageIcon(getClass().getResource("/LOGINIMAGES/Dog.png"))); // NOI18N
+        jLabel3.setIcon(Images.icon("/LOGINIMAGES/Dog.png"));
 
         jLabel4.setFont(new java.awt.Font("Segoe UI", 1, 16)); // NOI18N
         jLabel4.setForeground(new java.awt.Color(255, 255, 255));
@@ -68,7 +71,7 @@ public class LOGIN extends javax.swing.JFrame {
         jButton2.setForeground(new java.awt.Color(255, 255, 255));
         jButton2.setText("Still Doesn't have an Account?");
 
-        jLabel6.setIcon(new javax.swing.ImageIcon(getClass().getResource("/LOGINIMAGES/Dog.png"))); // NOI18N
+        jLabel6.setIcon(Images.icon("/LOGINIMAGES/Dog.png"));
 
         javax.swing.GroupLayout jPanel1Layout = new javax.swing.GroupLayout(jPanel1);
         jPanel1.setLayout(jPanel1Layout);
@@ -139,20 +142,37 @@ public class LOGIN extends javax.swing.JFrame {
             return;
         }
 
-        DatabaseConnectivity db = new DatabaseConnectivity();
-        if (db.validateUser(email, password)) {
-            JOptionPane.showMessageDialog(this, "Login successful! Welcome!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            // Open MainDashboard
-            new MAINDASHBOARD().setVisible(true);
-            this.dispose(); // Close login window
-        } else {
-            JOptionPane.showMessageDialog(this, "Invalid email or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
-        }
+        // The first call hashes once and opens the database; keep it off the EDT
+        BackgroundTasks.run(jButton1, () -> {
+            try {
+                return AuthService.shared().login(email, password);
+            } catch (SQLException e) {
+                Logger.getLogger(LOGIN.class.getName()).log(Level.WARNING, "Could not look up " + email, e);
+                return null;
+            }
+        }, valid -> {
+            if (valid == null) {
+                JOptionPane.showMessageDialog(this, "Can't reach the database right now. Please try again in a moment.", "Login Failed", JOptionPane.ERROR_MESSAGE);
+            } else if (valid) {
+                JOptionPane.showMessageDialog(this, "Login successful! Welcome!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                // Open MainDashboard
+                Navigator.show(Navigator.Screen.DASHBOARD);
+            } else {
+                JOptionPane.showMessageDialog(this, "Invalid email or password.", "Login Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     private void openRegisterForm() {
-        new REGISTER().setVisible(true);
-        this.dispose(); // Close login window
+        Navigator.show(Navigator.Screen.REGISTER);
+    }
+
+    /**
+     * Clears the password left from the previous visit; the email is kept.
+     */
+    @Override
+    public void refreshOnShow() {
+        jPasswordField1.setText("");
     }
 
     // Variables declaration - do not modify
@@ -0,0 +1,135 @@
+/*
+ * LatencyHistogram.java
+ * Lock-free latency recorder with percentile estimates.
+ */
+package petgroom;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies into log-linear buckets: every power of two of
+ * nanoseconds is split into 16 buckets, so a percentile read back is at
+ * most 1/16 (about 6%) above the true value, from nanoseconds up to half an
+ * hour, in 608 counters. Recording is a few atomic increments with no lock
+ * and no allocation, so it can sit on every database call; reading walks
+ * the counters and is meant for a diagnostics screen, not a hot path.
+ *
+ * Readers see each counter as of some moment during the read, so a snapshot
+ * taken while calls are recorded may be off by those calls.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // 2^40 ns is about 18 minutes; longer calls land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = SUB_COUNT * (MAX_EXPONENT - SUB_BITS + 2);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Latencies as of one read, in milliseconds.
+     * @param count Calls recorded
+     * @param meanMillis Mean
+     * @param p50Millis Median
+     * @param p95Millis 95th percentile
+     * @param p99Millis 99th percentile
+     * @param maxMillis Slowest call
+     */
+    record Snapshot(long count, double meanMillis, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+    }
+
+    /**
+     * @param nanos Duration of one call
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(index(value));
+        count.increment();
+        totalNanos.add(value);
+        long max = maxNanos.get();
+        while (value > max && !maxNanos.compareAndSet(max, value)) {
+            max = maxNanos.get();
+        }
+    }
+
+    /**
+     * @return Calls recorded since creation or the last reset
+     */
+    long count() {
+        return count.sum();
+    }
+
+    /**
+     * @return The current latencies
+     */
+    Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+        if (total == 0) {
+            return new Snapshot(0, 0, 0, 0, 0, 0);
+        }
+        return new Snapshot(total, totalNanos.sum() / 1e6 / Math.max(1, count.sum()),
+                percentile(counts, total, 0.50, max), percentile(counts, total, 0.95, max),
+                percentile(counts, total, 0.99, max), max / 1e6);
+    }
+
+    /**
+     * Starts counting again from zero. Calls recorded during the reset may be
+     * partly kept.
+     */
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+        maxNanos.set(0);
+    }
+
+    /**
+     * @return The upper bound of the bucket holding the given share of calls, in milliseconds
+     */
+    private static double percentile(long[] counts, long total, double share, long max) {
+        long rank = (long) Math.ceil(share * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                // The last bucket has no upper bound of its own
+                return (i == counts.length - 1 ? max : Math.min(upperBound(i), max)) / 1e6;
+            }
+        }
+        return max / 1e6;
+    }
+
+    private static int index(long nanos) {
+        if (nanos < SUB_COUNT) {
+            return (int) nanos;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BITS;
+        return SUB_COUNT * (shift + 1) + (int) ((nanos >>> shift) - SUB_COUNT);
+    }
+
+    private static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long sub = index % SUB_COUNT + SUB_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+}
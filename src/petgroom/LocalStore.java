@@ -0,0 +1,451 @@
+/*
+ * LocalStore.java
+ * Embedded copy of the database that the application falls back to when MySQL is unreachable.
+ */
+package petgroom;
+
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * An H2 database file on this terminal holding a copy of the shop's tables,
+ * kept current by {@link SyncEngine}. While MySQL cannot be reached,
+ * {@link DatabaseConnectivity} reads from here and writes appointments here;
+ * every such write also adds a row to the outbox table in the same
+ * transaction, and the sync engine replays the outbox against MySQL once it
+ * is back. The tables have the same columns and indexes as in MySQL, and H2
+ * runs in MySQL mode, so the same statements serve both.
+ *
+ * Appointments booked offline get negative ids, which can never clash with
+ * the ids MySQL hands out; they are renumbered when pushed. Payments wait in
+ * the {@link PaymentJournal} instead, and users, services and payments are
+ * read-only while offline.
+ *
+ * The file is -Dpetgroom.offline.dir (default ~/.petgroom) /petgroom.mv.db.
+ * It holds the users' password hashes, so keep it as private as the
+ * database. -Dpetgroom.offline.disabled=true turns the fallback off.
+ */
+public final class LocalStore implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(LocalStore.class.getName());
+    static final boolean ENABLED = !Boolean.getBoolean("petgroom.offline.disabled");
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS users (id INT PRIMARY KEY, full_name VARCHAR(255) NOT NULL, "
+            + "email VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)",
+        // Counts down from -1, so rows booked here never take an id MySQL could give out
+        "CREATE TABLE IF NOT EXISTS appointments (id BIGINT GENERATED BY DEFAULT AS IDENTITY "
+            + "(START WITH -1 INCREMENT BY -1 MAXVALUE -1) PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+            + "contact VARCHAR(255) NOT NULL, date DATE NOT NULL, pet_name VARCHAR(255) NOT NULL, "
+            + "pet_breed VARCHAR(255) NOT NULL, service VARCHAR(255) NOT NULL, station TINYINT NULL, "
+            + "start_time TIME NULL, end_time TIME NULL, version INT NOT NULL DEFAULT 0)",
+        // Files created before versions were kept
+        "ALTER TABLE appointments ADD COLUMN IF NOT EXISTS version INT NOT NULL DEFAULT 0",
+        "CREATE INDEX IF NOT EXISTS idx_appointments_date ON appointments (date, id)",
+        "CREATE INDEX IF NOT EXISTS idx_appointments_contact ON appointments (contact)",
+        "CREATE INDEX IF NOT EXISTS idx_appointments_slot ON appointments (date, station, start_time)",
+        "CREATE TABLE IF NOT EXISTS payments (id BIGINT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+            + "contact VARCHAR(255) NOT NULL, total_paid_centavos BIGINT NOT NULL, status VARCHAR(50) NOT NULL, "
+            + "paid_at DATETIME NOT NULL, journal_id CHAR(36) NULL UNIQUE)",
+        "CREATE INDEX IF NOT EXISTS idx_payments_contact ON payments (contact)",
+        "CREATE INDEX IF NOT EXISTS idx_payments_paid_at ON payments (paid_at)",
+        "CREATE TABLE IF NOT EXISTS services (id INT PRIMARY KEY, name VARCHAR(100) NOT NULL UNIQUE, "
+            + "price_centavos BIGINT NOT NULL, duration_minutes INT NOT NULL, active BOOLEAN NOT NULL, "
+            + "sort_order INT NOT NULL, updated_at TIMESTAMP NOT NULL)",
+        "CREATE TABLE IF NOT EXISTS daily_revenue (day DATE NOT NULL, status VARCHAR(50) NOT NULL, "
+            + "payments INT NOT NULL, total_centavos BIGINT NOT NULL, PRIMARY KEY (day, status))",
+        "CREATE TABLE IF NOT EXISTS daily_appointments (day DATE NOT NULL, service VARCHAR(255) NOT NULL, "
+            + "appointments INT NOT NULL, PRIMARY KEY (day, service))",
+        "CREATE TABLE IF NOT EXISTS outbox (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(64) NOT NULL, "
+            + "row_id BIGINT NOT NULL, op CHAR(1) NOT NULL, offline_id CHAR(36) NULL)",
+        // Files created before offline ids were kept
+        "ALTER TABLE outbox ADD COLUMN IF NOT EXISTS offline_id CHAR(36) NULL",
+        "UPDATE outbox SET offline_id = CAST(RANDOM_UUID() AS CHAR(36)) WHERE offline_id IS NULL",
+        "CREATE TABLE IF NOT EXISTS pull_mark (id INT PRIMARY KEY, seq BIGINT NOT NULL, pulled_at BIGINT NOT NULL)"
+    };
+
+    /**
+     * A write made while offline, waiting to be replayed against MySQL.
+     * @param seq Position in the outbox
+     * @param table Table written
+     * @param rowId Id of the row written, negative if it was inserted offline
+     * @param op 'I' insert, 'U' update or 'D' delete
+     * @param offlineId Unique id given when the change was made; stored in
+     *        appointments.offline_id when an insert is replayed, so it is never replayed twice
+     */
+    record Change(long seq, String table, long rowId, char op, String offlineId) {
+    }
+
+    /**
+     * How far the copy of MySQL is known to be current.
+     * @param seq change_log entries up to here are in the copy
+     * @param pulledAt When the copy was last brought up to date, in epoch milliseconds
+     */
+    record PullMark(long seq, long pulledAt) {
+    }
+
+    private final ConnectionPool pool;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile boolean offline;
+
+    /**
+     * Opens, and if needed creates, the store in -Dpetgroom.offline.dir.
+     * @return The store
+     * @throws SQLException if the file cannot be opened, e.g. because another copy of the application has it
+     */
+    static LocalStore open() throws SQLException {
+        Path dir = Path.of(System.getProperty("petgroom.offline.dir",
+                Path.of(System.getProperty("user.home"), ".petgroom").toString()));
+        return new LocalStore("jdbc:h2:file:" + dir.resolve("petgroom").toAbsolutePath()
+                + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY");
+    }
+
+    /**
+     * @param url JDBC URL of the H2 database
+     * @throws SQLException if it cannot be opened or its tables created
+     */
+    LocalStore(String url) throws SQLException {
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement()) {
+            for (String ddl : SCHEMA) {
+                stmt.execute(ddl);
+            }
+        } catch (SQLException e) {
+            pool.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param e A failed database call
+     * @return Whether it failed because the database could not be reached, rather than on the statement
+     */
+    static boolean isConnectionFailure(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLNonTransientConnectionException || t instanceof SQLTransientConnectionException) {
+                return true;
+            }
+            if (t instanceof SQLException sql && sql.getSQLState() != null && sql.getSQLState().startsWith("08")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether calls are being served from here
+     */
+    boolean isOffline() {
+        return offline;
+    }
+
+    /**
+     * Serves calls from here until {@link #wentOnline}.
+     * @param cause Why MySQL was given up on, for the log; may be null
+     */
+    synchronized void wentOffline(SQLException cause) {
+        if (offline) {
+            return;
+        }
+        offline = true;
+        LOG.log(Level.WARNING, "MySQL is unreachable; working from the local store", cause);
+        notifyListeners();
+    }
+
+    /**
+     * Sends calls to MySQL again; called by the sync engine once the outbox is replayed.
+     */
+    synchronized void wentOnline() {
+        if (!offline) {
+            return;
+        }
+        offline = false;
+        LOG.info("MySQL is back; offline changes are saved");
+        notifyListeners();
+    }
+
+    /**
+     * @param listener Called on the EDT when the store starts or stops serving calls
+     */
+    void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return A connection to the store; close it to give it back
+     * @throws SQLException if the pool is exhausted
+     */
+    ConnectionPool.PooledConnection borrow() throws SQLException {
+        return pool.borrow();
+    }
+
+    /**
+     * @return The pool over the store
+     */
+    ConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * @param conn A borrowed connection
+     * @return Whether it is a connection to this store
+     */
+    boolean owns(ConnectionPool.PooledConnection conn) {
+        return conn.pool() == pool;
+    }
+
+    /**
+     * Adds a write to the outbox. Call in the transaction that made it.
+     * @param conn Connection to this store, in the write's transaction
+     * @param table Table written
+     * @param rowId Id of the row written
+     * @param op 'I' insert, 'U' update or 'D' delete
+     * @throws SQLException if the insert fails
+     */
+    static void queue(ConnectionPool.PooledConnection conn, String table, long rowId, char op) throws SQLException {
+        PreparedStatement stmt = conn.prepareCached("INSERT INTO outbox (table_name, row_id, op, offline_id) VALUES (?, ?, ?, ?)");
+        stmt.setString(1, table);
+        stmt.setLong(2, rowId);
+        stmt.setString(3, String.valueOf(op));
+        stmt.setString(4, UUID.randomUUID().toString());
+        stmt.executeUpdate();
+    }
+
+    /**
+     * @param limit Maximum changes to return
+     * @return The oldest changes in the outbox, in the order they were made
+     * @throws SQLException if the query fails
+     */
+    List<Change> pendingChanges(int limit) throws SQLException {
+        List<Change> changes = new ArrayList<>();
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepareCached("SELECT seq, table_name, row_id, op, offline_id FROM outbox ORDER BY seq LIMIT ?");
+            stmt.setInt(1, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    changes.add(new Change(rs.getLong(1), rs.getString(2), rs.getLong(3), rs.getString(4).charAt(0), rs.getString(5)));
+                }
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Removes a replayed change from the outbox.
+     * @param change The change
+     * @throws SQLException if the delete fails
+     */
+    void done(Change change) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepareCached("DELETE FROM outbox WHERE seq = ?");
+            stmt.setLong(1, change.seq());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Gives an appointment booked offline the id MySQL assigned, in the table
+     * and in later outbox entries, and removes its insert from the outbox.
+     * @param insert The replayed insert
+     * @param saved The row as MySQL saved it
+     * @throws SQLException if the update fails
+     */
+    void renumber(Change insert, Appointment saved) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            conn.connection().setAutoCommit(false);
+            PreparedStatement row = conn.prepareCached(
+                    "UPDATE appointments SET id = ?, station = ?, start_time = ?, end_time = ?, version = ? WHERE id = ?");
+            row.setLong(1, saved.id());
+            TimeSlot slot = saved.slot();
+            row.setObject(2, slot == null ? null : slot.station(), Types.TINYINT);
+            row.setObject(3, slot == null ? null : Time.valueOf(slot.start()), Types.TIME);
+            row.setObject(4, slot == null ? null : Time.valueOf(slot.end()), Types.TIME);
+            row.setInt(5, saved.version());
+            row.setLong(6, insert.rowId());
+            row.executeUpdate();
+            PreparedStatement later = conn.prepareCached("UPDATE outbox SET row_id = ? WHERE table_name = ? AND row_id = ?");
+            later.setLong(1, saved.id());
+            later.setString(2, insert.table());
+            later.setLong(3, insert.rowId());
+            later.executeUpdate();
+            PreparedStatement done = conn.prepareCached("DELETE FROM outbox WHERE seq = ?");
+            done.setLong(1, insert.seq());
+            done.executeUpdate();
+            conn.connection().commit();
+        }
+    }
+
+    /**
+     * Replaces the rows of a table whose ids fall in (afterId, throughId] with
+     * rows copied from MySQL, in one transaction. Rows with changes still in
+     * the outbox are kept as they are: a write can reach the store just after
+     * the sync engine found the outbox empty, and copying over it would lose
+     * it before it is replayed.
+     * @param table Table name
+     * @param columns Columns copied, the id first
+     * @param afterId Lower bound, exclusive
+     * @param throughId Upper bound, inclusive; Long.MAX_VALUE for the rest of the table
+     * @param rows Values in column order
+     * @throws SQLException if the copy fails
+     */
+    void replaceRange(String table, String[] columns, long afterId, long throughId, List<Object[]> rows) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            conn.connection().setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement(
+                    "DELETE FROM " + table + " WHERE " + columns[0] + " > ? AND " + columns[0] + " <= ? "
+                    + "AND " + columns[0] + " NOT IN (SELECT row_id FROM outbox WHERE table_name = ?)")) {
+                delete.setLong(1, afterId);
+                delete.setLong(2, throughId);
+                delete.setString(3, table);
+                delete.executeUpdate();
+            }
+            insertRows(conn, table, columns, withoutPending(conn, table, rows));
+            conn.connection().commit();
+        }
+    }
+
+    /**
+     * @return The rows whose ids have no change waiting in the outbox
+     */
+    private static List<Object[]> withoutPending(ConnectionPool.PooledConnection conn, String table, List<Object[]> rows) throws SQLException {
+        Set<Long> pending = new HashSet<>();
+        PreparedStatement stmt = conn.prepareCached("SELECT row_id FROM outbox WHERE table_name = ?");
+        stmt.setString(1, table);
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                pending.add(rs.getLong(1));
+            }
+        }
+        if (pending.isEmpty()) {
+            return rows;
+        }
+        List<Object[]> kept = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            if (!pending.contains(((Number) row[0]).longValue())) {
+                kept.add(row);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Replaces the rows with the given ids with rows copied from MySQL, in
+     * one transaction; ids with no row copied are deleted. Rows with changes
+     * still in the outbox are kept, as in {@link #replaceRange}.
+     * @param table Table name
+     * @param columns Columns copied, the id first
+     * @param ids Ids of the rows changed in MySQL
+     * @param rows Values in column order, for the ids that still have a row
+     * @throws SQLException if the copy fails
+     */
+    void replaceRows(String table, String[] columns, Collection<Long> ids, List<Object[]> rows) throws SQLException {
+        if (ids.isEmpty()) {
+            return;
+        }
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            conn.connection().setAutoCommit(false);
+            try (PreparedStatement delete = conn.prepareStatement(
+                    "DELETE FROM " + table + " WHERE " + columns[0] + " IN ("
+                    + String.join(", ", Collections.nCopies(ids.size(), "?")) + ") "
+                    + "AND " + columns[0] + " NOT IN (SELECT row_id FROM outbox WHERE table_name = ?)")) {
+                int index = 1;
+                for (long id : ids) {
+                    delete.setLong(index++, id);
+                }
+                delete.setString(index, table);
+                delete.executeUpdate();
+            }
+            insertRows(conn, table, columns, withoutPending(conn, table, rows));
+            conn.connection().commit();
+        }
+    }
+
+    /**
+     * @return How far the copy is current, or null if MySQL was never copied here
+     * @throws SQLException if the query fails
+     */
+    PullMark pullMark() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             ResultSet rs = conn.prepareCached("SELECT seq, pulled_at FROM pull_mark WHERE id = 1").executeQuery()) {
+            return rs.next() ? new PullMark(rs.getLong(1), rs.getLong(2)) : null;
+        }
+    }
+
+    /**
+     * Records how far the copy is current, once it is.
+     * @param mark The new mark
+     * @throws SQLException if the update fails
+     */
+    void setPullMark(PullMark mark) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            PreparedStatement stmt = conn.prepareCached("MERGE INTO pull_mark (id, seq, pulled_at) KEY (id) VALUES (1, ?, ?)");
+            stmt.setLong(1, mark.seq());
+            stmt.setLong(2, mark.pulledAt());
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Replaces every row of a small table with rows copied from MySQL, in one transaction.
+     * @param table Table name
+     * @param columns Columns copied
+     * @param rows Values in column order
+     * @throws SQLException if the copy fails
+     */
+    void replaceAll(String table, String[] columns, List<Object[]> rows) throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            conn.connection().setAutoCommit(false);
+            try (Statement delete = conn.createStatement()) {
+                delete.executeUpdate("DELETE FROM " + table);
+            }
+            insertRows(conn, table, columns, rows);
+            conn.connection().commit();
+        }
+    }
+
+    private static void insertRows(ConnectionPool.PooledConnection conn, String table, String[] columns, List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + "?, ".repeat(columns.length - 1) + "?)";
+        try (PreparedStatement insert = conn.prepareStatement(sql)) {
+            for (Object[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    insert.setObject(i + 1, row[i]);
+                }
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    private void notifyListeners() {
+        for (Runnable listener : listeners) {
+            SwingUtilities.invokeLater(listener);
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.close();
+    }
+}
@@ -4,50 +4,336 @@
  */
 package petgroom;
 
+import java.awt.Color;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import javax.swing.Box;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.DefaultListModel;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JMenu;
+import javax.swing.JMenuBar;
+import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
-import javax.swing.table.DefaultTableModel;
-import java.sql.Date;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.KeyStroke;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableColumnModel;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Future;
 
 /**
  * Main dashboard for managing pet grooming appointments.
  * @author githu
  */
-public class MAINDASHBOARD extends javax.swing.JFrame {
+public class MAINDASHBOARD extends javax.swing.JFrame implements Navigator.Refreshable {
 
     private DatabaseConnectivity db;
+    private AppointmentTableModel appointmentModel;
+    private AppointmentRepository repository;
+    private ServiceCatalog catalog;
+    private Future<?> bookingsLoad;
+    private Future<?> searchLoad;
+    private OccupancyCalendar occupancy;
+    private SlotScheduler scheduler;
+    private Future<?> slotsLoad;
+    private final JTextField searchField = new JTextField(18);
+    private final JLabel searchStatus = new JLabel();
+    private final JLabel offlineStatus = new JLabel();
+    private DiagnosticsDialog diagnostics;
+    private ChangeFeed feed;
     private boolean isEditing = false;
-    private String editClientName;
-    private String editContact;
-    private Date editDate;
+    private Appointment editing;
 
     /**
      * Creates new form MainDashboard
      */
     public MAINDASHBOARD() {
-        db = new DatabaseConnectivity();
+        db = DatabaseConnectivity.shared();
         initComponents();
+        // Both tables show the same paged rows: client info in jTable2, pet info in jTable1
+        appointmentModel = new AppointmentTableModel(db);
+        showColumns(jTable2, appointmentModel, 0, 2);
+        showColumns(jTable1, appointmentModel, 3, 5);
         loadAppointments();
+        repository = AppointmentRepository.shared();
+        BackgroundTasks.execute(repository::preload);
+        loadSearchIndex();
+        catalog = ServiceCatalog.shared();
+        catalog.addListener(this::showServices);
+        showServices();
+        if (!catalog.isLoaded()) {
+            BackgroundTasks.execute(catalog::refresh);
+        }
+        occupancy = new OccupancyCalendar(db, jCalendar1);
+        scheduler = new SlotScheduler(repository);
+        jCalendar1.addPropertyChangeListener("calendar", e -> {
+            occupancy.showMonth();
+            showBookingsFor(jCalendar1.getDate());
+            showFreeSlots();
+        });
+        Services.addActionListener(e -> showFreeSlots());
+        showFreeSlots();
         // Add action listeners
         jButton1.addActionListener(e -> setAppointment());
         jButton2.addActionListener(e -> deleteAppointment());
         jButton3.addActionListener(e -> editAppointment());
         jButton4.addActionListener(e -> openPaymentForm());
         jButton5.addActionListener(e -> processPayment());
+        BackgroundTasks.load(PaymentJournal::shared, journal -> journal.addListener(this::paymentSaved));
+        db.addOfflineListener(this::offlineChanged);
+        BackgroundTasks.load(ChangeFeed::shared, feed -> {
+            feed.addAppointmentListener(this::appointmentChanged);
+            feed.addReloadListener(this::reloadAll);
+            this.feed = feed;
+        });
+        addMenuBar();
+        getRootPane().registerKeyboardAction(e -> showDiagnostics(),
+                KeyStroke.getKeyStroke(KeyEvent.VK_D, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK),
+                JComponent.WHEN_IN_FOCUSED_WINDOW);
+    }
+
+    /**
+     * Opens the diagnostics dialog (Ctrl+Shift+D), or brings it to the front.
+     * Not on any menu: it is for whoever supports the shop, not for the desk.
+     */
+    private void showDiagnostics() {
+        if (diagnostics != null && diagnostics.isDisplayable()) {
+            diagnostics.toFront();
+            return;
+        }
+        // The hashing service may not have started yet, and starting it hashes once
+        BackgroundTasks.load(AuthService::shared, auth -> {
+            if (diagnostics == null || !diagnostics.isDisplayable()) {
+                diagnostics = new DiagnosticsDialog(this, db, repository, auth);
+                diagnostics.setVisible(true);
+            }
+        });
+    }
+
+    /**
+     * Adds the Reports menu and the search box; the generated layout has no room for either.
+     */
+    private void addMenuBar() {
+        JMenuItem reports = new JMenuItem("Revenue and Workload");
+        reports.addActionListener(e -> Navigator.show(Navigator.Screen.REPORTS));
+        JMenu menu = new JMenu("Reports");
+        menu.add(reports);
+        JMenuBar menuBar = new JMenuBar();
+        menuBar.add(menu);
+        menuBar.add(Box.createHorizontalStrut(12));
+        offlineStatus.setForeground(Color.RED);
+        menuBar.add(offlineStatus);
+        menuBar.add(Box.createHorizontalGlue());
+        menuBar.add(searchStatus);
+        menuBar.add(Box.createHorizontalStrut(8));
+        menuBar.add(new JLabel("Search: "));
+        searchField.setToolTipText("Client name, contact, pet name or breed");
+        searchField.setMaximumSize(searchField.getPreferredSize());
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                search();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                search();
+            }
+        });
+        searchField.addActionListener(e -> search());
+        searchField.registerKeyboardAction(e -> searchField.setText(""),
+                KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_FOCUSED);
+        menuBar.add(searchField);
+        setJMenuBar(menuBar);
+    }
+
+    /**
+     * Shows the appointments matching the search box in both tables, or all
+     * appointments when it is empty. Runs on every keystroke against the
+     * in-memory index, without touching the database.
+     */
+    private void search() {
+        String query = searchField.getText();
+        if (query.isBlank()) {
+            appointmentModel.clearFilter();
+            searchStatus.setText("");
+            return;
+        }
+        if (!repository.isSearchReady()) {
+            searchStatus.setText("Indexing...");
+            loadSearchIndex();
+            return;
+        }
+        AppointmentSearchIndex.Result result = repository.search(query);
+        appointmentModel.filter(result.rows());
+        int shown = result.rows().size();
+        searchStatus.setText(result.more()
+                ? shown + "+ matches, showing the latest"
+                : shown + (shown == 1 ? " match" : " matches"));
+    }
+
+    /**
+     * Loads the search index in the background, then applies any search typed meanwhile.
+     */
+    private void loadSearchIndex() {
+        if (searchLoad != null) {
+            return;
+        }
+        searchLoad = BackgroundTasks.load(() -> {
+            repository.loadSearchIndex();
+            return repository.isSearchReady();
+        }, ready -> {
+            searchLoad = null;
+            if (ready) {
+                if (!searchField.getText().isBlank()) {
+                    search();
+                }
+            } else if (!searchField.getText().isBlank()) {
+                searchStatus.setText("Search unavailable");
+            }
+        });
+    }
+
+    /**
+     * Re-runs the search after a write, so the filtered tables show it.
+     */
+    private void searchAgain() {
+        if (appointmentModel.isFiltered()) {
+            search();
+        }
     }
 
     /**
-     * Loads appointments from the database into jTable1 and jTable2.
+     * Installs the model on the table and keeps only the given range of model columns visible.
+     * @param table Table to configure
+     * @param model Shared appointment model
+     * @param firstColumn First model column to show
+     * @param lastColumn Last model column to show
+     */
+    private static void showColumns(JTable table, AppointmentTableModel model, int firstColumn, int lastColumn) {
+        table.setModel(model);
+        TableColumnModel columns = table.getColumnModel();
+        for (int i = columns.getColumnCount() - 1; i >= 0; i--) {
+            int modelIndex = columns.getColumn(i).getModelIndex();
+            if (modelIndex < firstColumn || modelIndex > lastColumn) {
+                columns.removeColumn(columns.getColumn(i));
+            }
+        }
+    }
+
+    /**
+     * Fills the Services combo box and jList1 from the catalog, keeping the
+     * current selections where the service still exists.
+     */
+    private void showServices() {
+        Service comboSelection = (Service) Services.getSelectedItem();
+        Service listSelection = jList1.getSelectedValue();
+        List<Service> services = catalog.services();
+
+        Services.setModel(new DefaultComboBoxModel<>(services.toArray(new Service[0])));
+        DefaultListModel<Service> listModel = new DefaultListModel<>();
+        listModel.addAll(services);
+        jList1.setModel(listModel);
+
+        if (comboSelection != null && catalog.get(comboSelection.id()) != null) {
+            Services.setSelectedItem(catalog.get(comboSelection.id()));
+        }
+        if (listSelection != null && catalog.get(listSelection.id()) != null) {
+            jList1.setSelectedValue(catalog.get(listSelection.id()), true);
+        }
+    }
+
+    /**
+     * Reloads appointments into jTable1 and jTable2. Rows are fetched page by page as they are displayed.
      */
     private void loadAppointments() {
-        DefaultTableModel petModel = (DefaultTableModel) jTable1.getModel();
-        DefaultTableModel clientModel = (DefaultTableModel) jTable2.getModel();
-        petModel.setRowCount(0);
-        clientModel.setRowCount(0);
+        appointmentModel.refresh();
+    }
+
+    /**
+     * Shows how many appointments are booked on the date picked in jCalendar1.
+     * Served from the in-memory repository; a month not yet cached is loaded in the background.
+     * @param selected Selected date
+     */
+    private void showBookingsFor(java.util.Date selected) {
+        if (selected == null) {
+            return;
+        }
+        LocalDate date = new java.sql.Date(selected.getTime()).toLocalDate();
+        if (bookingsLoad != null) {
+            bookingsLoad.cancel(false);
+            bookingsLoad = null;
+        }
+        if (repository.isLoaded(date)) {
+            describeBookings(date, repository.findByDate(date));
+        } else {
+            bookingsLoad = BackgroundTasks.load(() -> repository.findByDate(date), booked -> describeBookings(date, booked));
+        }
+    }
 
-        for (Object[] row : db.getAppointments()) {
-            clientModel.addRow(new Object[]{row[0], row[1], row[2]});
-            petModel.addRow(new Object[]{row[3], row[4], row[5]});
+    private void describeBookings(LocalDate date, List<Appointment> booked) {
+        jLabel7.setText("Client info (" + booked.size() + " booked on " + date + ")");
+        StringBuilder tip = new StringBuilder("<html>");
+        for (Appointment appointment : booked) {
+            tip.append(appointment.clientName()).append(" - ").append(appointment.petName())
+                    .append(" (").append(appointment.service()).append(")<br>");
         }
+        jLabel7.setToolTipText(booked.isEmpty() ? null : tip.append("</html>").toString());
+    }
+
+    /**
+     * Lists the free start times for the selected date and service in
+     * TimeSlots, keeping the edited appointment's own time selected, and puts
+     * the next opening on a later day in its tooltip when the day is full.
+     * Computed at once when the month is in memory, otherwise in the background.
+     */
+    private void showFreeSlots() {
+        Service service = (Service) Services.getSelectedItem();
+        java.util.Date selected = jCalendar1.getDate();
+        if (scheduler == null || service == null || selected == null) {
+            return;
+        }
+        LocalDate date = new java.sql.Date(selected.getTime()).toLocalDate();
+        int minutes = scheduler.minutesFor(service);
+        Appointment moving = isEditing ? editing : null;
+        long ignoreId = moving == null ? 0 : moving.id();
+        if (slotsLoad != null) {
+            slotsLoad.cancel(false);
+            slotsLoad = null;
+        }
+        if (scheduler.isLoaded(date)) {
+            describeFreeSlots(scheduler.freeSlots(date, minutes, ignoreId), date, minutes, moving);
+        } else {
+            slotsLoad = BackgroundTasks.load(() -> scheduler.freeSlots(date, minutes, ignoreId),
+                    free -> describeFreeSlots(free, date, minutes, moving));
+        }
+    }
+
+    private void describeFreeSlots(List<TimeSlot> free, LocalDate date, int minutes, Appointment moving) {
+        TimeSlots.setModel(new DefaultComboBoxModel<>(free.toArray(new TimeSlot[0])));
+        if (moving != null && moving.slot() != null && free.contains(moving.slot())) {
+            TimeSlots.setSelectedItem(moving.slot());
+        }
+        if (!free.isEmpty()) {
+            TimeSlots.setToolTipText(free.size() + " start times free");
+            return;
+        }
+        TimeSlots.setToolTipText("Fully booked");
+        long ignoreId = moving == null ? 0 : moving.id();
+        slotsLoad = BackgroundTasks.load(() -> scheduler.nextFree(date.plusDays(1), minutes, ignoreId, 30), next -> {
+            TimeSlots.setToolTipText(next == null ? "Fully booked for the next 30 days" : "Next free: " + next);
+        });
     }
 
     /**
@@ -58,39 +344,157 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         String contact = jTextField2.getText().trim();
         String petName = jTextField3.getText().trim();
         String petBreed = jTextField4.getText().trim();
-        String service = (String) Services.getSelectedItem();
+        Service selectedService = (Service) Services.getSelectedItem();
+        String service = selectedService == null ? null : selectedService.name();
         java.util.Date selectedDate = jCalendar1.getDate();
+        TimeSlot slot = (TimeSlot) TimeSlots.getSelectedItem();
 
         if (clientName.isEmpty() || contact.isEmpty() || petName.isEmpty() || petBreed.isEmpty() || service == null || selectedDate == null) {
             JOptionPane.showMessageDialog(this, "Please fill in all fields and select a date.", "Input Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
+        if (slot == null) {
+            String next = TimeSlots.getToolTipText();
+            JOptionPane.showMessageDialog(this, "There is no free time for " + service + " on this day."
+                    + (next == null ? "" : "\n" + next), "Fully Booked", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
         java.sql.Date sqlDate = new java.sql.Date(selectedDate.getTime());
-        boolean success;
 
         if (isEditing) {
-            success = db.updateAppointment(editClientName, editContact, editDate, clientName, contact, petName, petBreed, service, sqlDate);
-            if (success) {
-                JOptionPane.showMessageDialog(this, "Appointment updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                isEditing = false;
-                jButton1.setText("Set Appointment");
-            } else {
-                JOptionPane.showMessageDialog(this, "Failed to update appointment.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
-            }
+            saveEdit(editing, new Appointment(editing.id(), clientName, contact, sqlDate, petName, petBreed, service, slot));
         } else {
-            success = db.saveAppointment(clientName, contact, petName, petBreed, service, sqlDate);
-            if (success) {
-                JOptionPane.showMessageDialog(this, "Appointment set successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+            BackgroundTasks.run(jButton1,
+                    () -> repository.save(clientName, contact, petName, petBreed, service, sqlDate, slot),
+                    saved -> {
+                        if (saved != null) {
+                            JOptionPane.showMessageDialog(this, "Appointment set successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                            appointmentModel.insert(saved);
+                            searchAgain();
+                            occupancy.booked(saved.date());
+                            clearFields();
+                            showBookingsFor(saved.date());
+                            showFreeSlots();
+                        } else {
+                            JOptionPane.showMessageDialog(this, "Failed to set appointment. The time may have just been booked; pick another.", "Error", JOptionPane.ERROR_MESSAGE);
+                            showFreeSlots();
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Saves an edit against the version it was made from. If another
+     * terminal saved the appointment in between, nothing is overwritten and
+     * the user chooses how to go on.
+     * @param original The version the edit started from
+     * @param edited The edited values
+     */
+    private void saveEdit(Appointment original, Appointment edited) {
+        BackgroundTasks.run(jButton1,
+                () -> repository.update(original.id(), original.version(), edited.clientName(), edited.contact(), edited.petName(),
+                        edited.petBreed(), edited.service(), edited.date(), edited.slot()),
+                result -> {
+                    switch (result.status()) {
+                        case UPDATED -> {
+                            Appointment updated = result.row();
+                            JOptionPane.showMessageDialog(this, "Appointment updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                            appointmentModel.update(original, updated);
+                            searchAgain();
+                            occupancy.cancelled(original.date());
+                            occupancy.booked(updated.date());
+                            clearFields();
+                            showBookingsFor(updated.date());
+                            showFreeSlots();
+                        }
+                        case CONFLICT -> resolveConflict(original, edited, result.row());
+                        case DELETED -> {
+                            JOptionPane.showMessageDialog(this, "This appointment was deleted on another terminal.", "Appointment Deleted", JOptionPane.WARNING_MESSAGE);
+                            showLatest(original.id(), null, false);
+                            clearFields();
+                            showBookingsFor(jCalendar1.getDate());
+                            showFreeSlots();
+                        }
+                        case SLOT_TAKEN -> {
+                            JOptionPane.showMessageDialog(this, "The time was just booked; pick another.", "Error", JOptionPane.ERROR_MESSAGE);
+                            showFreeSlots();
+                        }
+                        default -> JOptionPane.showMessageDialog(this, "Failed to update appointment.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+    }
+
+    /**
+     * Shows the version another terminal saved over an edit, and offers to
+     * merge the edit into it or to start again from it. Cancel keeps the
+     * form as it is; saving it again reports the conflict again.
+     * @param original The version the edit started from
+     * @param mine The edited values
+     * @param theirs The version in the database
+     */
+    private void resolveConflict(Appointment original, Appointment mine, Appointment theirs) {
+        showLatest(theirs.id(), theirs, false);
+        String[] options = {"Merge and Save", "Reload", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(this,
+                "Another terminal saved this appointment while you were editing it:\n\n" + describeChanges(original, mine, theirs)
+                + "\nMerge and Save keeps your changes and takes theirs for everything else.\n"
+                + "Reload shows their version so you can edit it again.",
+                "Appointment Changed", JOptionPane.DEFAULT_OPTION, JOptionPane.WARNING_MESSAGE, null, options, options[0]);
+        if (choice == 0) {
+            saveEdit(theirs, Appointment.merge(original, mine, theirs));
+        } else if (choice == 1) {
+            loadForEditing(theirs);
+        }
+    }
+
+    /**
+     * Lists the fields another terminal changed, noting those the user changed differently.
+     */
+    private static String describeChanges(Appointment base, Appointment mine, Appointment theirs) {
+        StringBuilder changes = new StringBuilder();
+        describeChange(changes, "Client", base.clientName(), mine.clientName(), theirs.clientName());
+        describeChange(changes, "Contact", base.contact(), mine.contact(), theirs.contact());
+        describeChange(changes, "Date", base.date().toLocalDate(), mine.date().toLocalDate(), theirs.date().toLocalDate());
+        describeChange(changes, "Pet", base.petName(), mine.petName(), theirs.petName());
+        describeChange(changes, "Breed", base.petBreed(), mine.petBreed(), theirs.petBreed());
+        describeChange(changes, "Service", base.service(), mine.service(), theirs.service());
+        describeChange(changes, "Time", base.slot(), mine.slot(), theirs.slot());
+        return changes.toString();
+    }
+
+    private static void describeChange(StringBuilder out, String field, Object base, Object mine, Object theirs) {
+        if (Objects.equals(base, theirs)) {
+            return;
+        }
+        out.append(field).append(": ").append(theirs == null ? "none" : theirs);
+        if (!Objects.equals(base, mine) && !Objects.equals(mine, theirs)) {
+            out.append(" (you entered ").append(mine == null ? "none" : mine).append(')');
+        }
+        out.append('\n');
+    }
+
+    /**
+     * Puts the latest version of an appointment in the table.
+     * @param id Appointment id
+     * @param row The latest version, or null if it was deleted
+     * @param inserted Whether the row is new, so it can be placed without reading its page
+     * @return The version shown before, or null if it was not in a cached page
+     */
+    private Appointment showLatest(long id, Appointment row, boolean inserted) {
+        Appointment shown = appointmentModel.findCached(a -> a.id() == id);
+        if (shown != null) {
+            if (row == null) {
+                appointmentModel.remove(shown);
             } else {
-                JOptionPane.showMessageDialog(this, "Failed to set appointment.", "Error", JOptionPane.ERROR_MESSAGE);
-                return;
+                appointmentModel.update(shown, row);
             }
+        } else if (inserted) {
+            appointmentModel.insert(row);
+        } else {
+            appointmentModel.refresh(); // In a page not read yet; its count may have changed
         }
-
-        loadAppointments();
-        clearFields();
+        return shown;
     }
 
     /**
@@ -103,20 +507,27 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
             return;
         }
 
-        String clientName = (String) jTable2.getValueAt(selectedRow, 0);
-        String contact = (String) jTable2.getValueAt(selectedRow, 1);
-        java.util.Date date = (java.util.Date) jTable2.getValueAt(selectedRow, 2);
-        java.sql.Date sqlDate = new java.sql.Date(date.getTime());
+        Appointment appointment = appointmentModel.getRow(selectedRow);
+        if (appointment == null) {
+            return; // Row is still loading
+        }
 
         int confirm = JOptionPane.showConfirmDialog(this, "Are you sure you want to delete this appointment?", "Confirm Deletion", JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            boolean success = db.deleteAppointment(clientName, contact, sqlDate);
-            if (success) {
-                JOptionPane.showMessageDialog(this, "Appointment deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-                loadAppointments();
-            } else {
-                JOptionPane.showMessageDialog(this, "Failed to delete appointment.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            BackgroundTasks.run(jButton2,
+                    () -> repository.delete(appointment.id()),
+                    success -> {
+                        if (success) {
+                            JOptionPane.showMessageDialog(this, "Appointment deleted successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                            appointmentModel.remove(appointment);
+                            searchAgain();
+                            occupancy.cancelled(appointment.date());
+                            showBookingsFor(jCalendar1.getDate());
+                            showFreeSlots();
+                        } else {
+                            JOptionPane.showMessageDialog(this, "Failed to delete appointment.", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
         }
     }
 
@@ -130,20 +541,32 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
             return;
         }
 
-        editClientName = (String) jTable2.getValueAt(selectedRow, 0);
-        editContact = (String) jTable2.getValueAt(selectedRow, 1);
-        editDate = new java.sql.Date(((java.util.Date) jTable2.getValueAt(selectedRow, 2)).getTime());
+        Appointment appointment = appointmentModel.getRow(selectedRow);
+        if (appointment == null) {
+            return; // Row is still loading
+        }
+        loadForEditing(appointment);
+    }
 
-        // Populate fields with appointment data
-        jTextField1.setText(editClientName);
-        jTextField2.setText(editContact);
-        jTextField3.setText((String) jTable1.getValueAt(selectedRow, 0)); // Pet Name
-        jTextField4.setText((String) jTable1.getValueAt(selectedRow, 1)); // Pet Breed
-        Services.setSelectedItem((String) jTable1.getValueAt(selectedRow, 2)); // Service
-        jCalendar1.setDate(editDate);
+    /**
+     * Fills the input fields with an appointment; saving updates that version of it.
+     */
+    private void loadForEditing(Appointment appointment) {
+        editing = appointment;
 
+        // Populate fields with appointment data
+        jTextField1.setText(appointment.clientName());
+        jTextField2.setText(appointment.contact());
+        jTextField3.setText(appointment.petName());
+        jTextField4.setText(appointment.petBreed());
+        Service service = catalog.find(appointment.service());
+        if (service != null) {
+            Services.setSelectedItem(service);
+        }
         isEditing = true;
+        jCalendar1.setDate(appointment.date());
         jButton1.setText("Update Appointment");
+        showFreeSlots();
     }
 
     /**
@@ -154,9 +577,12 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         jTextField2.setText("");
         jTextField3.setText("");
         jTextField4.setText("");
-        Services.setSelectedIndex(0);
-        jCalendar1.setDate(new java.util.Date()); // Set to current date to avoid null
         isEditing = false;
+        editing = null;
+        if (Services.getItemCount() > 0) {
+            Services.setSelectedIndex(0);
+        }
+        jCalendar1.setDate(new java.util.Date()); // Set to current date to avoid null
         jButton1.setText("Set Appointment");
     }
 
@@ -164,12 +590,87 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
      * Opens the PAYMENT form.
      */
     private void openPaymentForm() {
-        new PAYMENT().setVisible(true);
-        this.dispose();
+        Navigator.show(Navigator.Screen.PAYMENTS);
+    }
+
+    /**
+     * On this terminal appointments only change through this form, and the
+     * change feed applies other terminals' writes while it is hidden, so
+     * coming back needs no reload once the feed is reading. Until its first
+     * read nothing from elsewhere has been applied, so the table is read
+     * again then. The booking summary is always re-read, as it may have been
+     * loaded in the background meanwhile.
+     */
+    @Override
+    public void refreshOnShow() {
+        if (feed == null || feed.position() < 0) {
+            loadAppointments();
+        }
+        showBookingsFor(jCalendar1.getDate());
+    }
+
+    /**
+     * Flags offline mode in the menu bar. On reconnecting, bookings made
+     * offline have new ids and other terminals' bookings are new here, so
+     * everything cached is read again.
+     */
+    private void offlineChanged() {
+        if (db.isOffline()) {
+            offlineStatus.setText("Offline: bookings are kept on this terminal until the database is back");
+            return;
+        }
+        offlineStatus.setText("");
+        reloadAll();
+    }
+
+    /**
+     * Reads every table, count and cache shown on the dashboard again.
+     */
+    private void reloadAll() {
+        repository.invalidate();
+        loadAppointments();
+        loadSearchIndex();
+        occupancy.reload();
+        showBookingsFor(jCalendar1.getDate());
+        showFreeSlots();
+    }
+
+    /**
+     * Applies an appointment written on another terminal to the table, the
+     * calendar shading and the bookings and free slots of the selected day.
+     * The repository is already updated by the change feed.
+     */
+    private void appointmentChanged(ChangeEvent change, Appointment before, Appointment after) {
+        Appointment shown = showLatest(change.rowId(), after, change.op() == 'I');
+        Appointment old = before != null ? before : shown;
+        if (change.op() == 'I') {
+            if (shown == null) { // Otherwise a reload already counted it
+                occupancy.booked(after.date());
+            }
+        } else if (old == null) {
+            occupancy.reload();
+        } else {
+            occupancy.cancelled(old.date());
+            if (after != null) {
+                occupancy.booked(after.date());
+            }
+        }
+        showBookingsFor(jCalendar1.getDate());
+        showFreeSlots();
     }
 
     /**
-     * Processes payment (full or downpayment) and saves to database.
+     * Shows a journalled payment in the PAYMENT form once it is in the database.
+     */
+    private void paymentSaved(Payment saved) {
+        PAYMENT payments = Navigator.created(Navigator.Screen.PAYMENTS, PAYMENT.class);
+        if (payments != null) {
+            payments.paymentSaved(saved);
+        }
+    }
+
+    /**
+     * Processes payment (full or downpayment) and records it in the payment journal.
      */
     private void processPayment() {
         int selectedRow = jTable2.getSelectedRow();
@@ -178,9 +679,13 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
             return;
         }
 
-        String clientName = (String) jTable2.getValueAt(selectedRow, 0);
-        String contact = (String) jTable2.getValueAt(selectedRow, 1);
-        String selectedService = jList1.getSelectedValue();
+        Appointment appointment = appointmentModel.getRow(selectedRow);
+        if (appointment == null) {
+            return; // Row is still loading
+        }
+        String clientName = appointment.clientName();
+        String contact = appointment.contact();
+        Service selectedService = jList1.getSelectedValue();
         String cashInput = jTextField5.getText().trim();
 
         if (selectedService == null || cashInput.isEmpty()) {
@@ -198,21 +703,31 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         String status = options[choice];
 
         try {
-            double cash = Double.parseDouble(cashInput);
-            double price = getServicePrice(selectedService);
-            double amountToPay = status.equals("Downpayment") ? price / 2 : price;
-            double change = cash - amountToPay;
+            long cash = Money.parse(cashInput);
+            // Price by id from the current catalog, in case it changed since the list was filled
+            Service service = catalog.get(selectedService.id());
+            if (service == null) {
+                JOptionPane.showMessageDialog(this, selectedService.name() + " is no longer offered.", "Input Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            long price = service.priceCentavos();
+            long amountToPay = status.equals("Downpayment") ? Money.half(price) : price;
+            long change = cash - amountToPay;
 
             if (change >= 0) {
-                boolean success = db.savePayment(clientName, contact, amountToPay, status);
-                if (success) {
-                    jLabel12.setText(String.format("₱%.2f", change));
-                    JOptionPane.showMessageDialog(this, status + " successful! Change: ₱" + String.format("%.2f", change), "Success", JOptionPane.INFORMATION_MESSAGE);
-                    jTextField5.setText("");
-                    jList1.clearSelection();
-                } else {
-                    JOptionPane.showMessageDialog(this, "Failed to save " + status.toLowerCase() + ".", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                // Journalled locally; the PAYMENT table gets the row once it reaches the database
+                BackgroundTasks.run(jButton5,
+                        () -> PaymentJournal.shared().record(clientName, contact, amountToPay, status),
+                        saved -> {
+                            if (saved != null) {
+                                jLabel12.setText(Money.format(change));
+                                JOptionPane.showMessageDialog(this, status + " successful! Change: " + Money.format(change), "Success", JOptionPane.INFORMATION_MESSAGE);
+                                jTextField5.setText("");
+                                jList1.clearSelection();
+                            } else {
+                                JOptionPane.showMessageDialog(this, "Failed to save " + status.toLowerCase() + ".", "Error", JOptionPane.ERROR_MESSAGE);
+                            }
+                        });
             } else {
                 JOptionPane.showMessageDialog(this, "Insufficient cash provided for " + status.toLowerCase() + ".", "Payment Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -221,21 +736,6 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         }
     }
 
-    /**
-     * Gets the price of the selected service.
-     * @param service Selected service string
-     * @return Price of the service
-     */
-    private double getServicePrice(String service) {
-        switch (service) {
-            case "FullGroom ₱600": return 600.0;
-            case "Trim Groom ₱300": return 300.0;
-            case "Full Bath ₱200": return 200.0;
-            case "Vaccination ₱1000": return 1000.0;
-            default: return 0.0;
-        }
-    }
-
     /**
      * This method is called from within the constructor to initialize the form.
      * WARNING: Do NOT modify this code. The content of this method is always
@@ -257,6 +757,7 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         jLabel4 = new javax.swing.JLabel();
         jTextField4 = new javax.swing.JTextField();
         Services = new javax.swing.JComboBox<>();
+        TimeSlots = new javax.swing.JComboBox<>();
         jButton1 = new javax.swing.JButton();
         jLabel5 = new javax.swing.JLabel();
         jScrollPane1 = new javax.swing.JScrollPane();
@@ -297,14 +798,17 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         jLabel4.setFont(new java.awt.Font("Segoe UI", 1, 14)); // NOI18N
         jLabel4.setText("Pet Breed");
 
-        Services.setModel(new javax.swing.DefaultComboBoxModel<>(new String[] { "FullGroom ₱600", "Trim Groom ₱300", "Full Bath ₱200", "Vaccination ₱1000" }));
+        Services.setModel(new javax.swing.DefaultComboBoxModel<>());
+
+        TimeSlots.setModel(new javax.swing.DefaultComboBoxModel<>());
+        TimeSlots.setToolTipText("Start time and station");
 
         jButton1.setBackground(new java.awt.Color(255, 102, 102));
         jButton1.setFont(new java.awt.Font("Segoe UI", 1, 14)); // NOI18N
         jButton1.setForeground(new java.awt.Color(255, 255, 255));
         jButton1.setText("Set Appointment");
 
-        jLabel5.setIcon(new javax.swing.ImageIcon(getClass().getResource("/MAINDASHBOARDIMAGES/Your paragraph text.gif"))); // NOI18N
+        jLabel5.setIcon(Images.icon("/MAINDASHBOARDIMAGES/Your paragraph text.gif"));
 
         javax.swing.GroupLayout jPanel2Layout = new javax.swing.GroupLayout(jPanel2);
         jPanel2.setLayout(jPanel2Layout);
@@ -325,6 +829,7 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
                             .addComponent(jLabel4, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                             .addComponent(jTextField4, javax.swing.GroupLayout.DEFAULT_SIZE, 196, Short.MAX_VALUE)
                             .addComponent(Services, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
+                            .addComponent(TimeSlots, 0, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                             .addComponent(jButton1, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))
                         .addGap(18, 18, 18)
                         .addComponent(jLabel5, javax.swing.GroupLayout.PREFERRED_SIZE, 190, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -354,9 +859,11 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
                 .addComponent(jTextField4, javax.swing.GroupLayout.PREFERRED_SIZE, 43, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
                 .addComponent(Services, javax.swing.GroupLayout.PREFERRED_SIZE, 32, javax.swing.GroupLayout.PREFERRED_SIZE)
+                .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                .addComponent(TimeSlots, javax.swing.GroupLayout.PREFERRED_SIZE, 32, javax.swing.GroupLayout.PREFERRED_SIZE)
                 .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.UNRELATED)
                 .addComponent(jButton1, javax.swing.GroupLayout.PREFERRED_SIZE, 35, javax.swing.GroupLayout.PREFERRED_SIZE)
-                .addContainerGap(102, Short.MAX_VALUE))
+                .addContainerGap(64, Short.MAX_VALUE))
             .addGroup(jPanel2Layout.createSequentialGroup()
                 .addGap(300, 300, 300)
                 .addComponent(jLabel5, javax.swing.GroupLayout.PREFERRED_SIZE, 300, javax.swing.GroupLayout.PREFERRED_SIZE)
@@ -395,7 +902,7 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         jButton3.setForeground(new java.awt.Color(255, 255, 255));
         jButton3.setText("EDIT");
 
-        jLabel8.setIcon(new javax.swing.ImageIcon(getClass().getResource("/MAINDASHBOARDIMAGES/MainDashboardLogo.png"))); // NOI18N
+        jLabel8.setIcon(Images.icon("/MAINDASHBOARDIMAGES/MainDashboardLogo.png"));
 
         jPanel3.setBackground(new java.awt.Color(255, 204, 204));
 
@@ -416,11 +923,7 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
         jButton5.setForeground(new java.awt.Color(255, 255, 255));
         jButton5.setText("Pay");
 
-        jList1.setModel(new javax.swing.AbstractListModel<String>() {
-            String[] strings = { "FullGroom ₱600", "Trim Groom ₱300", "Full Bath ₱200", "Vaccination ₱1000" };
-            public int getSize() { return strings.length; }
-            public String getElementAt(int i) { return strings[i]; }
-        });
+        jList1.setModel(new javax.swing.DefaultListModel<>());
         jScrollPane3.setViewportView(jList1);
 
         javax.swing.GroupLayout jPanel3Layout = new javax.swing.GroupLayout(jPanel3);
@@ -548,7 +1051,8 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
     }// </editor-fold>
 
     // Variables declaration - do not modify
-    private javax.swing.JComboBox<String> Services;
+    private javax.swing.JComboBox<Service> Services;
+    private javax.swing.JComboBox<TimeSlot> TimeSlots;
     private javax.swing.JButton jButton1;
     private javax.swing.JButton jButton2;
     private javax.swing.JButton jButton3;
@@ -567,7 +1071,7 @@ public class MAINDASHBOARD extends javax.swing.JFrame {
     private javax.swing.JLabel jLabel7;
     private javax.swing.JLabel jLabel8;
     private javax.swing.JLabel jLabel9;
-    private javax.swing.JList<String> jList1;
+    private javax.swing.JList<Service> jList1;
     private javax.swing.JPanel jPanel1;
     private javax.swing.JPanel jPanel2;
     private javax.swing.JPanel jPanel3;
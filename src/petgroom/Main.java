@@ -14,6 +14,19 @@ public class Main {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        // "--serve" runs the JSON API instead of the forms; see ApiServer
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            System.setProperty("java.awt.headless", "true");
+            try {
+                ApiServer api = ApiServer.start();
+                Runtime.getRuntime().addShutdownHook(new Thread(api::close, "petgroom-api-shutdown"));
+            } catch (java.io.IOException ex) {
+                java.util.logging.Logger.getLogger(Main.class.getName()).log(java.util.logging.Level.SEVERE, "Could not start the API", ex);
+                System.exit(1);
+            }
+            return;
+        }
+
         // Set the Nimbus look and feel
         try {
             for (javax.swing.UIManager.LookAndFeelInfo info : javax.swing.UIManager.getInstalledLookAndFeels()) {
@@ -26,9 +39,22 @@ public class Main {
             java.util.logging.Logger.getLogger(Main.class.getName()).log(java.util.logging.Level.SEVERE, null, ex);
         }
 
-        // Create and display the LOGIN form
+        // Create and display the LOGIN form, then warm up the rest while the user types
         java.awt.EventQueue.invokeLater(() -> {
-            new LOGIN().setVisible(true);
+            javax.swing.JFrame login = Navigator.show(Navigator.Screen.LOGIN);
+            login.addWindowListener(new java.awt.event.WindowAdapter() {
+                @Override
+                public void windowOpened(java.awt.event.WindowEvent e) {
+                    Startup.logShown("Login window");
+                }
+            });
         });
+        java.util.concurrent.CompletableFuture<Void> warmup = Startup.warmUp();
+
+        // Used by "ant cds-archive" to record the classes loaded during a normal start
+        if (Boolean.getBoolean("petgroom.startup.trainingRun")) {
+            warmup.join();
+            java.awt.EventQueue.invokeLater(() -> System.exit(0));
+        }
     }
 }
\ No newline at end of file
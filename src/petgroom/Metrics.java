@@ -0,0 +1,96 @@
+/*
+ * Metrics.java
+ * Registry of operation counters, published over JMX.
+ */
+package petgroom;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Holds one {@link OperationStats} per database operation, and publishes
+ * them with the connection pools, the appointment cache and the password
+ * hashing service as MBeans under "petgroom:" on the platform MBean server,
+ * for jconsole or any JMX client. Publishing starts the JMX machinery, so it
+ * waits for {@link #publish}, called from the startup warmup and the API
+ * server rather than on first use; -Dpetgroom.metrics.jmx=false leaves JMX
+ * alone entirely. Counting happens either way.
+ */
+final class Metrics {
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+    private static final boolean JMX = Boolean.parseBoolean(System.getProperty("petgroom.metrics.jmx", "true"));
+
+    private static final Map<String, OperationStats> OPERATIONS = new ConcurrentSkipListMap<>();
+    private static volatile boolean published;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name Operation name, unique in the process
+     * @return Its counters, created on first use
+     */
+    static OperationStats operation(String name) {
+        OperationStats stats = OPERATIONS.computeIfAbsent(name, OperationStats::new);
+        if (published) {
+            register("petgroom:type=DatabaseOperation,name=" + name, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * @return Every operation's counters, by name
+     */
+    static List<OperationStats> operations() {
+        return new ArrayList<>(OPERATIONS.values());
+    }
+
+    /**
+     * Starts every operation's counters again from zero.
+     */
+    static void resetAll() {
+        for (OperationStats stats : OPERATIONS.values()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Registers the MBeans, once. Blocks while the shared services start.
+     */
+    static synchronized void publish() {
+        if (published || !JMX) {
+            return;
+        }
+        published = true;
+        for (OperationStats stats : OPERATIONS.values()) {
+            register("petgroom:type=DatabaseOperation,name=" + stats.getName(), stats);
+        }
+        DatabaseConnectivity db = DatabaseConnectivity.shared();
+        register("petgroom:type=ConnectionPool,name=MySQL", db.getPool());
+        if (db.getLocalPool() != null) {
+            register("petgroom:type=ConnectionPool,name=Local", db.getLocalPool());
+        }
+        register("petgroom:type=AppointmentRepository", AppointmentRepository.shared());
+        register("petgroom:type=AuthService", AuthService.shared());
+    }
+
+    private static void register(String name, Object mbean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(mbean, new ObjectName(name));
+        } catch (InstanceAlreadyExistsException e) {
+            // Published already
+        } catch (JMException e) {
+            LOG.log(Level.WARNING, "Could not publish " + name + " over JMX", e);
+        }
+    }
+}
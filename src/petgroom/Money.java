@@ -0,0 +1,58 @@
+/*
+ * Money.java
+ * Peso amounts held as whole centavos.
+ */
+package petgroom;
+
+import java.math.BigDecimal;
+
+/**
+ * Helpers for money kept as a primitive long count of centavos. Amounts are
+ * stored, summed and compared as longs, which is exact and allocation-free;
+ * text is only produced at the edges (display, export) and parsed at input.
+ */
+final class Money {
+
+    private Money() {
+    }
+
+    /**
+     * Parses a peso amount typed by a user, e.g. "600", "600.5" or "1,000.25".
+     * @param pesos Amount in pesos
+     * @return The amount in centavos
+     * @throws NumberFormatException if the text is not a number or has fractions of a centavo
+     */
+    static long parse(String pesos) {
+        BigDecimal amount = new BigDecimal(pesos.trim().replace(",", "").replace("₱", ""));
+        try {
+            return amount.movePointRight(2).longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Not a whole number of centavos: " + pesos);
+        }
+    }
+
+    /**
+     * @param centavos An amount
+     * @return The amount as a plain decimal, e.g. "600.00" or "-12.05"
+     */
+    static String plain(long centavos) {
+        long abs = Math.abs(centavos);
+        return (centavos < 0 ? "-" : "") + abs / 100 + "." + (abs % 100 < 10 ? "0" : "") + abs % 100;
+    }
+
+    /**
+     * @param centavos An amount
+     * @return The amount for display, e.g. "₱600.00"
+     */
+    static String format(long centavos) {
+        return centavos < 0 ? "-₱" + plain(-centavos) : "₱" + plain(centavos);
+    }
+
+    /**
+     * @param centavos An amount
+     * @return Half of it, rounded up to the centavo (used for downpayments)
+     */
+    static long half(long centavos) {
+        return centavos / 2 + centavos % 2;
+    }
+}
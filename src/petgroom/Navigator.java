@@ -0,0 +1,85 @@
+/*
+ * Navigator.java
+ * Switches between the application's windows, creating each one only once.
+ */
+package petgroom;
+
+import java.util.EnumMap;
+import java.util.Map;
+import javax.swing.JFrame;
+
+/**
+ * Owns the application's frames. Each screen is built the first time it is
+ * shown and afterwards only hidden and shown again, so switching screens
+ * does not re-run initComponents, reload images or re-query data. A screen
+ * that needs to catch up when it comes back implements {@link Refreshable}.
+ * Must be used on the EDT.
+ */
+final class Navigator {
+
+    /**
+     * The application's screens.
+     */
+    enum Screen {
+        LOGIN, REGISTER, DASHBOARD, PAYMENTS, REPORTS
+    }
+
+    /**
+     * Implemented by screens with state to update when they are shown again.
+     */
+    interface Refreshable {
+        /**
+         * Called on the EDT each time the screen is shown after the first time.
+         * Should only touch what may have changed while it was hidden.
+         */
+        void refreshOnShow();
+    }
+
+    private static final Map<Screen, JFrame> FRAMES = new EnumMap<>(Screen.class);
+    private static JFrame current;
+
+    private Navigator() {
+    }
+
+    /**
+     * Hides the current screen and shows the given one, creating it on first use.
+     * @param screen Screen to show
+     * @return The screen's frame
+     */
+    static JFrame show(Screen screen) {
+        JFrame frame = FRAMES.get(screen);
+        if (frame == null) {
+            frame = create(screen);
+            FRAMES.put(screen, frame);
+        } else if (frame instanceof Refreshable refreshable) {
+            refreshable.refreshOnShow();
+        }
+        if (current != null && current != frame) {
+            current.setVisible(false);
+        }
+        current = frame;
+        frame.setVisible(true);
+        frame.toFront();
+        return frame;
+    }
+
+    /**
+     * @param screen A screen
+     * @param type Its frame class
+     * @param <T> Frame type
+     * @return The screen's frame, or null if it has not been shown yet
+     */
+    static <T extends JFrame> T created(Screen screen, Class<T> type) {
+        return type.cast(FRAMES.get(screen));
+    }
+
+    private static JFrame create(Screen screen) {
+        return switch (screen) {
+            case LOGIN -> new LOGIN();
+            case REGISTER -> new REGISTER();
+            case DASHBOARD -> new MAINDASHBOARD();
+            case PAYMENTS -> new PAYMENT();
+            case REPORTS -> new REPORTS();
+        };
+    }
+}
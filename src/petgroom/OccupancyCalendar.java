@@ -0,0 +1,217 @@
+/*
+ * OccupancyCalendar.java
+ * Colours the booking calendar's days by how many appointments they have.
+ */
+package petgroom;
+
+import com.toedter.calendar.IDateEvaluator;
+import com.toedter.calendar.JCalendar;
+import java.awt.Color;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Day evaluator for a JCalendar that shades each day by its load and shows
+ * the number of appointments as the day's tooltip. Counts are read one
+ * month at a time with a single grouped query on the appointments rollup
+ * and kept, so flipping back to a month costs nothing; bookings made through
+ * {@link #booked} and {@link #cancelled} adjust the kept counts in place.
+ *
+ * A day is full at -Dpetgroom.calendar.dailyCapacity appointments (default
+ * 20). Must be used on the EDT.
+ */
+final class OccupancyCalendar implements IDateEvaluator {
+    private static final Logger LOG = Logger.getLogger(OccupancyCalendar.class.getName());
+    private static final int DAILY_CAPACITY = Integer.getInteger("petgroom.calendar.dailyCapacity", 20);
+
+    private static final Color LIGHT = new Color(198, 239, 206);
+    private static final Color BUSY = new Color(255, 235, 156);
+    private static final Color NEARLY_FULL = new Color(255, 199, 120);
+    private static final Color FULL = new Color(255, 130, 130);
+
+    private final DatabaseConnectivity db;
+    private final JCalendar calendar;
+    private final Map<YearMonth, Map<LocalDate, Integer>> months = new HashMap<>();
+    private final Set<YearMonth> loading = new HashSet<>();
+    // Months written to while their counts were loading; read again once the load lands
+    private final Set<YearMonth> stale = new HashSet<>();
+    // Count of the day last passed to isSpecial; JDayChooser asks for its colours right after
+    private int current;
+
+    /**
+     * Installs the evaluator on the calendar and loads the month it shows.
+     * @param db Where the counts are read from
+     * @param calendar Calendar to decorate
+     */
+    OccupancyCalendar(DatabaseConnectivity db, JCalendar calendar) {
+        this.db = db;
+        this.calendar = calendar;
+        calendar.getDayChooser().addDateEvaluator(this);
+        showMonth();
+    }
+
+    /**
+     * Makes sure the counts of the month on screen are loaded; call when the calendar changes month.
+     */
+    void showMonth() {
+        YearMonth month = visibleMonth();
+        if (!months.containsKey(month)) {
+            load(month);
+        }
+    }
+
+    /**
+     * Drops every kept count and reloads the month on screen.
+     */
+    void reload() {
+        stale.addAll(loading);
+        months.clear();
+        showMonth();
+    }
+
+    /**
+     * Counts a saved appointment.
+     * @param date Its date
+     */
+    void booked(java.util.Date date) {
+        adjust(date, 1);
+    }
+
+    /**
+     * Uncounts a deleted appointment.
+     * @param date Its date
+     */
+    void cancelled(java.util.Date date) {
+        adjust(date, -1);
+    }
+
+    /**
+     * @param date A day
+     * @return Appointments counted on that day, 0 if its month is not loaded
+     */
+    int countOn(LocalDate date) {
+        Map<LocalDate, Integer> counts = months.get(YearMonth.from(date));
+        return counts == null ? 0 : counts.getOrDefault(date, 0);
+    }
+
+    private void adjust(java.util.Date date, int delta) {
+        LocalDate day = toLocalDate(date);
+        YearMonth month = YearMonth.from(day);
+        if (loading.contains(month)) {
+            stale.add(month);
+            return;
+        }
+        Map<LocalDate, Integer> counts = months.get(month);
+        if (counts == null) {
+            return;
+        }
+        counts.compute(day, (d, count) -> {
+            int updated = (count == null ? 0 : count) + delta;
+            return updated > 0 ? updated : null;
+        });
+        if (month.equals(visibleMonth())) {
+            redraw();
+        }
+    }
+
+    private void load(YearMonth month) {
+        if (!loading.add(month)) {
+            return;
+        }
+        BackgroundTasks.load(() -> {
+            try {
+                return db.queryAppointmentCountsByDay(Date.valueOf(month.atDay(1)), Date.valueOf(month.atEndOfMonth()));
+            } catch (SQLException e) {
+                LOG.log(Level.WARNING, "Could not load appointment counts for " + month, e);
+                return null;
+            }
+        }, counts -> {
+            loading.remove(month);
+            if (stale.remove(month)) {
+                load(month);
+                return;
+            }
+            if (counts != null) {
+                months.put(month, counts);
+                if (month.equals(visibleMonth())) {
+                    redraw();
+                }
+            }
+        });
+    }
+
+    private YearMonth visibleMonth() {
+        Calendar shown = calendar.getCalendar();
+        return YearMonth.of(shown.get(Calendar.YEAR), shown.get(Calendar.MONTH) + 1);
+    }
+
+    /**
+     * JDayChooser repaints its day buttons, asking the evaluators again, when its month is set.
+     */
+    private void redraw() {
+        calendar.getDayChooser().setMonth(calendar.getCalendar().get(Calendar.MONTH));
+    }
+
+    private static LocalDate toLocalDate(java.util.Date date) {
+        return date instanceof Date sqlDate
+                ? sqlDate.toLocalDate()
+                : date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    @Override
+    public boolean isSpecial(java.util.Date date) {
+        current = countOn(toLocalDate(date));
+        return current > 0;
+    }
+
+    @Override
+    public Color getSpecialForegroundColor() {
+        return Color.BLACK;
+    }
+
+    @Override
+    public Color getSpecialBackroundColor() {
+        if (current >= DAILY_CAPACITY) {
+            return FULL;
+        }
+        if (current * 5 >= DAILY_CAPACITY * 4) {
+            return NEARLY_FULL;
+        }
+        return current * 2 >= DAILY_CAPACITY ? BUSY : LIGHT;
+    }
+
+    @Override
+    public String getSpecialTooltip() {
+        return current + (current == 1 ? " appointment" : " appointments") + " of " + DAILY_CAPACITY;
+    }
+
+    @Override
+    public boolean isInvalid(java.util.Date date) {
+        return false;
+    }
+
+    @Override
+    public Color getInvalidForegroundColor() {
+        return null;
+    }
+
+    @Override
+    public Color getInvalidBackroundColor() {
+        return null;
+    }
+
+    @Override
+    public String getInvalidTooltip() {
+        return null;
+    }
+}
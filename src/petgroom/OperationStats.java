@@ -0,0 +1,97 @@
+/*
+ * OperationStats.java
+ * Call count, error count and latency of one database operation.
+ */
+package petgroom;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for one {@link DatabaseConnectivity} method, kept for the life of
+ * the process and shown in the diagnostics dialog and over JMX. Every call
+ * is timed, failed ones included; a call fails when it throws, including
+ * the SQLExceptions the public methods print and turn into null or false.
+ */
+public final class OperationStats implements OperationStatsMBean {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    /**
+     * @param name Method name, as shown
+     */
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param nanos How long the call took
+     * @param failed Whether it threw
+     */
+    void record(long nanos, boolean failed) {
+        latency.record(nanos);
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    /**
+     * @return Latencies as of now
+     */
+    LatencyHistogram.Snapshot snapshot() {
+        return latency.snapshot();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.count();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.sum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return latency.snapshot().meanMillis();
+    }
+
+    @Override
+    public double getP50Millis() {
+        return latency.snapshot().p50Millis();
+    }
+
+    @Override
+    public double getP95Millis() {
+        return latency.snapshot().p95Millis();
+    }
+
+    @Override
+    public double getP99Millis() {
+        return latency.snapshot().p99Millis();
+    }
+
+    @Override
+    public double getMaxMillis() {
+        return latency.snapshot().maxMillis();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        errors.reset();
+    }
+
+    @Override
+    public String toString() {
+        LatencyHistogram.Snapshot s = latency.snapshot();
+        return String.format("%s: count=%d, errors=%d, p50=%.2fms, p95=%.2fms, p99=%.2fms, max=%.2fms",
+                name, s.count(), getErrorCount(), s.p50Millis(), s.p95Millis(), s.p99Millis(), s.maxMillis());
+    }
+}
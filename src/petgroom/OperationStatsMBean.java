@@ -0,0 +1,33 @@
+/*
+ * OperationStatsMBean.java
+ * JMX view of one database operation's counters.
+ */
+package petgroom;
+
+/**
+ * Published as petgroom:type=DatabaseOperation,name=&lt;method&gt;.
+ * Latencies are in milliseconds.
+ */
+public interface OperationStatsMBean {
+
+    String getName();
+
+    long getCount();
+
+    long getErrorCount();
+
+    double getMeanMillis();
+
+    double getP50Millis();
+
+    double getP95Millis();
+
+    double getP99Millis();
+
+    double getMaxMillis();
+
+    /**
+     * Starts counting again from zero.
+     */
+    void reset();
+}
@@ -4,8 +4,6 @@
  */
 package petgroom;
 
-import javax.swing.table.DefaultTableModel;
-
 /**
  * Payment form for viewing and managing payment records.
  * @author githu
@@ -13,28 +11,31 @@ import javax.swing.table.DefaultTableModel;
 public class PAYMENT extends javax.swing.JFrame {
 
     private DatabaseConnectivity db;
+    private PaymentTableModel paymentModel;
 
     /**
      * Creates new form PAYMENT
      */
     public PAYMENT() {
-        db = new DatabaseConnectivity();
+        db = DatabaseConnectivity.shared();
         initComponents();
+        paymentModel = new PaymentTableModel(db);
+        jTable1.setModel(paymentModel);
         loadPayments();
         // Add action listeners
         jButton1.addActionListener(e -> goBack());
         jButton2.addActionListener(e -> deletePayment());
+        BackgroundTasks.load(ChangeFeed::shared, feed -> {
+            feed.addPaymentListener(this::paymentChanged);
+            feed.addReloadListener(this::loadPayments);
+        });
     }
 
     /**
-     * Loads payments from the database into jTable1.
+     * Reloads payments into jTable1. Rows are fetched page by page as they are displayed.
      */
     private void loadPayments() {
-        DefaultTableModel model = (DefaultTableModel) jTable1.getModel();
-        model.setRowCount(0);
-        for (Object[] row : db.getPayments()) {
-            model.addRow(row);
-        }
+        paymentModel.refresh();
     }
 
     /**
@@ -47,20 +48,23 @@ public class PAYMENT extends javax.swing.JFrame {
             return;
         }
 
-        String clientName = (String) jTable1.getValueAt(selectedRow, 0);
-        String contact = (String) jTable1.getValueAt(selectedRow, 1);
-        double totalPaid = (Double) jTable1.getValueAt(selectedRow, 2);
-        String status = (String) jTable1.getValueAt(selectedRow, 3);
+        Payment payment = paymentModel.getRow(selectedRow);
+        if (payment == null) {
+            return; // Row is still loading
+        }
 
         int confirm = javax.swing.JOptionPane.showConfirmDialog(this, "Are you sure you want to delete this payment?", "Confirm Deletion", javax.swing.JOptionPane.YES_NO_OPTION);
         if (confirm == javax.swing.JOptionPane.YES_OPTION) {
-            boolean success = db.deletePayment(clientName, contact, totalPaid, status);
-            if (success) {
-                javax.swing.JOptionPane.showMessageDialog(this, "Payment deleted successfully!", "Success", javax.swing.JOptionPane.INFORMATION_MESSAGE);
-                loadPayments();
-            } else {
-                javax.swing.JOptionPane.showMessageDialog(this, "Failed to delete payment.", "Error", javax.swing.JOptionPane.ERROR_MESSAGE);
-            }
+            BackgroundTasks.run(jButton2,
+                    () -> db.deletePayment(payment.id()),
+                    success -> {
+                        if (success) {
+                            javax.swing.JOptionPane.showMessageDialog(this, "Payment deleted successfully!", "Success", javax.swing.JOptionPane.INFORMATION_MESSAGE);
+                            paymentModel.remove(payment);
+                        } else {
+                            javax.swing.JOptionPane.showMessageDialog(this, "Failed to delete payment.", "Error", javax.swing.JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
         }
     }
 
@@ -68,8 +72,35 @@ public class PAYMENT extends javax.swing.JFrame {
      * Navigates back to MAINDASHBOARD.
      */
     private void goBack() {
-        new MAINDASHBOARD().setVisible(true);
-        this.dispose();
+        Navigator.show(Navigator.Screen.DASHBOARD);
+    }
+
+    /**
+     * Adds a payment recorded on the dashboard, so the table is current the
+     * next time this form is shown without reloading it.
+     * @param payment The saved payment
+     */
+    void paymentSaved(Payment payment) {
+        paymentModel.insert(payment);
+    }
+
+    /**
+     * Applies a payment taken or deleted on another terminal.
+     */
+    private void paymentChanged(ChangeEvent change, Payment before, Payment after) {
+        long id = change.rowId();
+        Payment shown = paymentModel.findCached(row -> row.id() == id);
+        if (shown != null) {
+            if (after == null) {
+                paymentModel.remove(shown);
+            } else {
+                paymentModel.update(shown, after);
+            }
+        } else if (change.op() == 'I') {
+            paymentModel.insert(after);
+        } else {
+            paymentModel.refresh(); // In a page not read yet; its count may have changed
+        }
     }
 
     /**
@@ -106,9 +137,9 @@ public class PAYMENT extends javax.swing.JFrame {
         ));
         jScrollPane1.setViewportView(jTable1);
 
-        jLabel1.setIcon(new javax.swing.ImageIcon(getClass().getResource("/PAYMENTIMAGES/DOG1.png"))); // NOI18N
+        jLabel1.setIcon(Images.icon("/PAYMENTIMAGES/DOG1.png"));
 
-        jLabel2.setIcon(new javax.swing.ImageIcon(getClass().getResource("/PAYMENTIMAGES/DOG1.png"))); // NOI18N
+        jLabel2.setIcon(Images.icon("/PAYMENTIMAGES/DOG1.png"));
 
         jButton2.setBackground(new java.awt.Color(255, 102, 102));
         jButton2.setFont(new java.awt.Font("Segoe UI", 1, 12)); // NOI18N
@@ -0,0 +1,464 @@
+/*
+ * PagedTableModel.java
+ * Table model that loads rows a page at a time as the table asks for them.
+ */
+package petgroom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Lazily paged table model. Only the row count is queried up front; a page is
+ * fetched the first time one of its rows is painted. Pages are fetched with
+ * keyset pagination (rows after the last row of the previous page) when the
+ * previous page is known, which is the case while scrolling, and by offset
+ * when the user jumps far ahead. At most a fixed number of pages is kept,
+ * and their boundaries go with them. A page that comes back empty, because
+ * the row count is stale, marks the end of the data until the next refresh
+ * or write, so repainting the missing rows does not query again.
+ *
+ * Queries run in the background; until a page arrives its cells are empty.
+ * All model state is confined to the EDT, and a refresh discards any page
+ * still loading for the previous generation.
+ *
+ * Writes are applied in place with {@link #insert}, {@link #update} and
+ * {@link #remove}: the row is placed by the model's ordering within the cached
+ * pages and a single-row event is fired, so the cost of a write does not grow
+ * with the table.
+ *
+ * {@link #filter} shows a given list of rows, such as search results, in place
+ * of the pages until {@link #clearFilter} is called. Writes made meanwhile are
+ * not shown; the caller re-applies its filter, and the pages are reloaded when
+ * the filter is cleared.
+ * @param <R> Row type
+ */
+public abstract class PagedTableModel<R> extends AbstractTableModel {
+
+    private static final int PAGE_SIZE = Integer.getInteger("petgroom.table.pageSize", 100);
+    private static final int CACHED_PAGES = Integer.getInteger("petgroom.table.cachedPages", 20);
+
+    private final Comparator<? super R> order;
+    private final String[] columns;
+    private final Map<Integer, List<R>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<R>> eldest) {
+            if (size() <= CACHED_PAGES) {
+                return false;
+            }
+            pageEnds.remove(eldest.getKey());
+            return true;
+        }
+    };
+    // Last row of every cached page: the keyset cursor for the page after it
+    private final NavigableMap<Integer, R> pageEnds = new TreeMap<>();
+    private final Map<Integer, Future<?>> pending = new HashMap<>();
+    private Future<?> pendingCount;
+    private int generation;
+    private int rowCount;
+    // First row a fetch found missing; rows from here are not fetched again
+    private int dataEnd = Integer.MAX_VALUE;
+    private List<R> filtered;
+    private boolean changedWhileFiltered;
+
+    /**
+     * @param order Row ordering; must match the ORDER BY of the fetch queries
+     * @param columns Column names
+     */
+    protected PagedTableModel(Comparator<? super R> order, String... columns) {
+        this.order = order;
+        this.columns = columns;
+    }
+
+    /**
+     * @return Total number of rows in the underlying table
+     */
+    protected abstract int count();
+
+    /**
+     * @param last Last row of the previous page, or null for the first page
+     * @param limit Maximum rows to return
+     * @return Rows ordered by the table's key, strictly after last
+     */
+    protected abstract List<R> fetchAfter(R last, int limit);
+
+    /**
+     * @param offset Rows to skip
+     * @param limit Maximum rows to return
+     * @return Rows ordered by the table's key, starting at offset
+     */
+    protected abstract List<R> fetchAt(int offset, int limit);
+
+    /**
+     * @param row A row
+     * @param column Model column index
+     * @return The cell value
+     */
+    protected abstract Object valueOf(R row, int column);
+
+    /**
+     * Drops all cached pages, cancels loads in flight and re-reads the row count
+     * in the background.
+     */
+    public void refresh() {
+        cancelPending();
+        if (pendingCount != null) {
+            pendingCount.cancel(false);
+        }
+        pages.clear();
+        pageEnds.clear();
+        dataEnd = Integer.MAX_VALUE;
+        int loadGeneration = generation;
+        pendingCount = BackgroundTasks.load(this::count, count -> {
+            if (loadGeneration == generation) {
+                pendingCount = null;
+                rowCount = count;
+                fireTableDataChanged();
+            }
+        });
+    }
+
+    /**
+     * Shows only the given rows, in the given order, instead of the pages.
+     * @param rows Rows to show
+     */
+    public void filter(List<R> rows) {
+        filtered = rows;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Goes back to showing every row.
+     */
+    public void clearFilter() {
+        if (filtered == null) {
+            return;
+        }
+        filtered = null;
+        if (changedWhileFiltered) {
+            changedWhileFiltered = false;
+            refresh();
+        }
+        fireTableDataChanged();
+    }
+
+    /**
+     * @return Whether a filter is showing
+     */
+    public boolean isFiltered() {
+        return filtered != null;
+    }
+
+    /**
+     * @param rowIndex Model row index
+     * @return The row, or null while its page is still loading
+     */
+    public R getRow(int rowIndex) {
+        if (filtered != null) {
+            return rowIndex < filtered.size() ? filtered.get(rowIndex) : null;
+        }
+        int page = rowIndex / PAGE_SIZE;
+        List<R> rows = pages.get(page);
+        int index = rowIndex % PAGE_SIZE;
+        if (rows == null || (index >= rows.size() && rowIndex < rowCount)) {
+            if (rowIndex < dataEnd) {
+                requestPage(page);
+            }
+            return null;
+        }
+        return index < rows.size() ? rows.get(index) : null;
+    }
+
+    /**
+     * Adds a row that was just written to the database.
+     * @param row The new row
+     */
+    public void insert(R row) {
+        if (filtered != null) {
+            changedWhileFiltered = true;
+            return;
+        }
+        if (pendingCount != null) {
+            refresh();
+            return;
+        }
+        int index = insertionIndex(row);
+        if (index < 0) {
+            // Falls between pages that were never read; its position is unknown
+            refresh();
+            return;
+        }
+        cancelPending();
+        insertAt(index, row);
+        rowCount++;
+        dataEnd = Integer.MAX_VALUE;
+        fireTableRowsInserted(index, index);
+    }
+
+    /**
+     * Replaces a row that was just updated in the database, moving it if its
+     * position in the ordering changed.
+     * @param oldRow The row as currently shown
+     * @param newRow The row as written
+     */
+    public void update(R oldRow, R newRow) {
+        if (filtered != null) {
+            changedWhileFiltered = true;
+            return;
+        }
+        int index = indexOf(oldRow);
+        if (index < 0 || pendingCount != null) {
+            refresh();
+            return;
+        }
+        R previous = index > 0 ? cachedRow(index - 1) : null;
+        R next = index + 1 < rowCount ? cachedRow(index + 1) : null;
+        boolean staysPut = (index == 0 || (previous != null && order.compare(previous, newRow) < 0))
+                && (index + 1 >= rowCount || (next != null && order.compare(newRow, next) < 0));
+        if (staysPut) {
+            List<R> rows = pages.get(index / PAGE_SIZE);
+            rows.set(index % PAGE_SIZE, newRow);
+            pageEnds.put(index / PAGE_SIZE, rows.get(rows.size() - 1));
+            fireTableRowsUpdated(index, index);
+        } else {
+            remove(oldRow);
+            insert(newRow);
+        }
+    }
+
+    /**
+     * Removes a row that was just deleted from the database.
+     * @param row The deleted row
+     */
+    public void remove(R row) {
+        if (filtered != null) {
+            changedWhileFiltered = true;
+            return;
+        }
+        int index = indexOf(row);
+        if (index < 0 || pendingCount != null) {
+            refresh();
+            return;
+        }
+        cancelPending();
+        removeAt(index);
+        rowCount--;
+        dataEnd = Integer.MAX_VALUE;
+        fireTableRowsDeleted(index, index);
+    }
+
+    /**
+     * @param row A row
+     * @return Its model index if it is in a cached page, otherwise -1
+     */
+    public int indexOf(R row) {
+        for (Map.Entry<Integer, List<R>> page : pages.entrySet()) {
+            int index = page.getValue().indexOf(row);
+            if (index >= 0) {
+                return page.getKey() * PAGE_SIZE + index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param match Test for the row wanted, typically by id
+     * @return The first matching row in a cached page, or null if none is cached
+     */
+    public R findCached(Predicate<? super R> match) {
+        for (List<R> rows : pages.values()) {
+            for (R row : rows) {
+                if (match.test(row)) {
+                    return row;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds where a new row belongs from the cached pages and page boundaries.
+     * @return The model index, or -1 if it cannot be determined without a query
+     */
+    private int insertionIndex(R row) {
+        for (Map.Entry<Integer, R> end : pageEnds.entrySet()) {
+            int page = end.getKey();
+            if (order.compare(row, end.getValue()) > 0) {
+                continue;
+            }
+            List<R> rows = pages.get(page);
+            // Inside this page if it comes after the page before, or after this page's first row
+            boolean known = page == 0 || pageEnds.containsKey(page - 1)
+                    || (rows != null && !rows.isEmpty() && order.compare(row, rows.get(0)) > 0);
+            if (!known) {
+                return -1;
+            }
+            if (rows == null) {
+                // The page will be re-read; only its first index is certain
+                return page * PAGE_SIZE;
+            }
+            int at = Collections.binarySearch(rows, row, order);
+            return page * PAGE_SIZE + (at < 0 ? -at - 1 : at);
+        }
+        // After every row read so far: only known if the last page has been read
+        Map.Entry<Integer, R> last = pageEnds.lastEntry();
+        if (last == null) {
+            return rowCount == 0 ? 0 : -1;
+        }
+        List<R> lastRows = pages.get(last.getKey());
+        boolean tableEnd = lastRows != null && last.getKey() * PAGE_SIZE + lastRows.size() >= rowCount;
+        return tableEnd ? rowCount : -1;
+    }
+
+    private void insertAt(int index, R row) {
+        int page = index / PAGE_SIZE;
+        List<R> rows = pages.get(page);
+        if (rows == null) {
+            if (index == rowCount && index % PAGE_SIZE == 0) {
+                // Starts a new last page
+                rows = new ArrayList<>();
+                rows.add(row);
+                pages.put(page, rows);
+                pageEnds.put(page, row);
+                invalidateFrom(page + 1);
+            } else {
+                invalidateFrom(page);
+            }
+            return;
+        }
+        rows.add(index % PAGE_SIZE, row);
+        // Push the overflow of each full page into the next cached page
+        while (true) {
+            R carry = rows.size() > PAGE_SIZE ? rows.remove(rows.size() - 1) : null;
+            pageEnds.put(page, rows.get(rows.size() - 1));
+            page++;
+            if (carry == null) {
+                break;
+            }
+            rows = pages.get(page);
+            if (rows == null) {
+                break;
+            }
+            rows.add(0, carry);
+        }
+        invalidateFrom(page);
+    }
+
+    private void removeAt(int index) {
+        int page = index / PAGE_SIZE;
+        List<R> rows = pages.get(page);
+        if (rows == null) {
+            invalidateFrom(page);
+            return;
+        }
+        rows.remove(index % PAGE_SIZE);
+        // Pull the first row of each following cached page back one page
+        List<R> next;
+        while ((next = pages.get(page + 1)) != null && !next.isEmpty()) {
+            rows.add(next.remove(0));
+            pageEnds.put(page, rows.get(rows.size() - 1));
+            rows = next;
+            page++;
+        }
+        // The last page touched is now one row short; getRow tops it up on demand
+        if (rows.isEmpty()) {
+            pages.remove(page);
+            pageEnds.remove(page);
+        } else {
+            pageEnds.put(page, rows.get(rows.size() - 1));
+        }
+        invalidateFrom(page + 1);
+    }
+
+    /**
+     * Forgets pages at and after the given one, whose rows have shifted.
+     */
+    private void invalidateFrom(int page) {
+        pages.keySet().removeIf(p -> p >= page);
+        pageEnds.tailMap(page, true).clear();
+    }
+
+    private R cachedRow(int rowIndex) {
+        List<R> rows = pages.get(rowIndex / PAGE_SIZE);
+        int index = rowIndex % PAGE_SIZE;
+        return rows != null && index < rows.size() ? rows.get(index) : null;
+    }
+
+    private void cancelPending() {
+        generation++;
+        pending.values().forEach(f -> f.cancel(false));
+        pending.clear();
+    }
+
+    /**
+     * Loads a page, or the missing tail of a cached page that lost rows to deletes.
+     */
+    private void requestPage(int page) {
+        if (pending.containsKey(page)) {
+            return;
+        }
+        List<R> have = pages.get(page);
+        boolean topUp = have != null && !have.isEmpty();
+        R cursor = topUp ? have.get(have.size() - 1) : page == 0 ? null : pageEnds.get(page - 1);
+        boolean keyset = topUp || page == 0 || cursor != null;
+        int limit = topUp ? PAGE_SIZE - have.size() : PAGE_SIZE;
+        int loadGeneration = generation;
+        pending.put(page, BackgroundTasks.load(
+                () -> keyset ? fetchAfter(cursor, limit) : fetchAt(page * PAGE_SIZE, limit),
+                rows -> {
+                    if (loadGeneration != generation) {
+                        return;
+                    }
+                    pending.remove(page);
+                    if (rows.isEmpty()) {
+                        // The count was stale, or the fetch failed; either way, wait for a refresh
+                        dataEnd = Math.min(dataEnd, page * PAGE_SIZE + (topUp ? have.size() : 0));
+                        return;
+                    }
+                    List<R> loaded;
+                    if (topUp) {
+                        loaded = have;
+                        loaded.addAll(rows);
+                    } else {
+                        loaded = new ArrayList<>(rows);
+                    }
+                    pages.put(page, loaded);
+                    pageEnds.put(page, loaded.get(loaded.size() - 1));
+                    int first = page * PAGE_SIZE;
+                    int last = Math.min(first + loaded.size(), rowCount) - 1;
+                    if (last >= first && filtered == null) {
+                        fireTableRowsUpdated(first, last);
+                    }
+                }));
+    }
+
+    @Override
+    public int getRowCount() {
+        return filtered != null ? filtered.size() : rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return columns[column];
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        R row = getRow(rowIndex);
+        return row == null ? null : valueOf(row, columnIndex);
+    }
+}
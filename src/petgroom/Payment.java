@@ -0,0 +1,19 @@
+/*
+ * Payment.java
+ * One row of the payments table.
+ */
+package petgroom;
+
+import java.sql.Timestamp;
+
+/**
+ * Immutable payment row as read from the database.
+ * @param id Surrogate key
+ * @param clientName Client's name
+ * @param contact Client's contact information
+ * @param totalPaidCentavos Amount paid, in centavos
+ * @param status Payment status (Paid or Downpayment)
+ * @param paidAt When the payment was recorded
+ */
+public record Payment(long id, String clientName, String contact, long totalPaidCentavos, String status, Timestamp paidAt) {
+}
@@ -0,0 +1,418 @@
+/*
+ * PaymentJournal.java
+ * Local write-ahead journal that payments are recorded in before the database.
+ */
+package petgroom;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import javax.swing.SwingUtilities;
+
+/**
+ * Takes payments at the till without waiting for the database. A payment is
+ * appended to a local journal file and forced to disk, and only then reported
+ * as taken; a background flusher saves journalled payments to the payments
+ * table in batches and empties the file once everything in it is saved. If
+ * the database is down the flusher keeps retrying, and payments still in the
+ * file when the application stops are saved on the next start.
+ *
+ * Each entry has a random journal id that is unique in the payments table,
+ * so saving an entry twice (after a crash between the commit and emptying
+ * the file) inserts it once. Entries are length-prefixed and checksummed; a
+ * half-written entry at the end of the file, whose payment was never
+ * reported as taken, is discarded when the journal is opened.
+ *
+ * Concurrent payments share one fsync when they arrive together. The file
+ * is -Dpetgroom.journal.file (default ~/.petgroom/payments.journal). It is
+ * locked while open, so a second copy of the application on the same account
+ * (the forms and --serve, say) uses payments-2.journal, and so on; whichever
+ * copy next takes one of those files saves what was left in it.
+ * -Dpetgroom.journal.batchSize=100 payments are saved per transaction and a
+ * failed save is retried every -Dpetgroom.journal.retryMillis=2000.
+ *
+ * A payment the database refuses outright (a name too long for its column,
+ * say) would fail every retry and hold back every payment after it, so it is
+ * appended to the journal file's name + ".rejected", one tab-separated line
+ * each, logged, and dropped from the journal.
+ */
+public final class PaymentJournal implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(PaymentJournal.class.getName());
+    private static final int BATCH_SIZE = Integer.getInteger("petgroom.journal.batchSize", 100);
+    private static final long RETRY_MILLIS = Long.getLong("petgroom.journal.retryMillis", 2000);
+    // Length and CRC32 of the payload
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_ENTRY_BYTES = 64 * 1024;
+    // Journal files tried before giving up, one per running copy
+    private static final int MAX_COPIES = 8;
+
+    private static final class Shared {
+        static final PaymentJournal INSTANCE = open();
+
+        private static PaymentJournal open() {
+            Path file = Path.of(System.getProperty("petgroom.journal.file",
+                    Path.of(System.getProperty("user.home"), ".petgroom", "payments.journal").toString()));
+            for (int copy = 1; ; copy++) {
+                Path candidate = numbered(file, copy);
+                try {
+                    return new PaymentJournal(candidate, DatabaseConnectivity.shared());
+                } catch (InUseException e) {
+                    if (copy == MAX_COPIES) {
+                        throw new UncheckedIOException("Every payment journal up to " + candidate + " is in use", e);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not open the payment journal " + candidate, e);
+                }
+            }
+        }
+
+        /**
+         * @return The file itself for the first copy, then name-2.ext, name-3.ext and so on
+         */
+        private static Path numbered(Path file, int copy) {
+            if (copy == 1) {
+                return file;
+            }
+            String name = file.getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            String numbered = dot < 0 ? name + "-" + copy : name.substring(0, dot) + "-" + copy + name.substring(dot);
+            return file.resolveSibling(numbered);
+        }
+    }
+
+    /**
+     * Thrown when another process, or another journal in this one, has the file open.
+     */
+    static final class InUseException extends IOException {
+        InUseException(Path file) {
+            super(file + " is in use by another copy of the application");
+        }
+    }
+
+    private final FileChannel channel;
+    private final Path rejectedFile;
+    private final DatabaseConnectivity db;
+    private final LinkedBlockingQueue<PendingPayment> queue = new LinkedBlockingQueue<>();
+    private final List<Consumer<Payment>> listeners = new CopyOnWriteArrayList<>();
+    private final Thread flusher;
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    // End of the file; written under writeLock
+    private volatile long written;
+    // Entries in the file not yet saved to the database; guarded by writeLock
+    private int unsaved;
+    // Everything before this offset is on disk; guarded by syncLock
+    private long synced;
+    private volatile boolean closed;
+
+    /**
+     * @return The process-wide journal, opened and replayed on first use
+     * @throws UncheckedIOException if the journal file cannot be opened
+     */
+    public static PaymentJournal shared() {
+        return Shared.INSTANCE;
+    }
+
+    /**
+     * Opens the journal, queues the payments left in it for saving and starts the flusher.
+     * @param file Journal file; created with its directory if missing, and locked until {@link #close}
+     * @param db Where payments are saved
+     * @throws InUseException if the file is locked by another journal
+     * @throws IOException if the file cannot be opened or read
+     */
+    PaymentJournal(Path file, DatabaseConnectivity db) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // Two journals on one file would overwrite each other's entries and save them twice
+        FileLock lock;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null; // Held by another journal in this JVM
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new InUseException(file);
+        }
+        this.db = db;
+        this.rejectedFile = file.resolveSibling(file.getFileName() + ".rejected");
+        List<PendingPayment> left = readEntries();
+        if (!left.isEmpty()) {
+            LOG.log(Level.INFO, "Saving {0} payments left in the journal", left.size());
+        }
+        queue.addAll(left);
+        unsaved = left.size();
+        written = channel.size();
+        synced = written;
+        flusher = Thread.ofVirtual().name("petgroom-journal-flusher").start(this::flushLoop);
+    }
+
+    /**
+     * Records a payment in the journal and forces it to disk. Blocks for the
+     * fsync, not for the database.
+     * @param clientName Client's name
+     * @param contact Client's contact information
+     * @param totalPaidCentavos Amount paid, in centavos
+     * @param status Payment status (Paid or Downpayment)
+     * @return The journalled payment, or null if it could not be written
+     */
+    public PendingPayment record(String clientName, String contact, long totalPaidCentavos, String status) {
+        // DATETIME keeps whole seconds; truncate so the saved row matches
+        PendingPayment payment = new PendingPayment(UUID.randomUUID().toString(), clientName, contact,
+                totalPaidCentavos, status, new Timestamp(System.currentTimeMillis() / 1000 * 1000));
+        try {
+            ByteBuffer entry = encode(payment);
+            long end;
+            synchronized (writeLock) {
+                if (closed) {
+                    throw new IOException("The payment journal is closed");
+                }
+                long position = written;
+                while (entry.hasRemaining()) {
+                    position += channel.write(entry, position);
+                }
+                written = position;
+                end = position;
+                unsaved++;
+                queue.add(payment);
+            }
+            sync(end);
+            return payment;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not write a payment to the journal", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param listener Called on the EDT with each payment once it is saved to the database
+     */
+    public void addListener(Consumer<Payment> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener added earlier
+     */
+    public void removeListener(Consumer<Payment> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return Payments in the journal not yet saved to the database
+     */
+    public int unsaved() {
+        synchronized (writeLock) {
+            return unsaved;
+        }
+    }
+
+    /**
+     * Stops the flusher and closes the file, releasing its lock. Payments not
+     * yet saved stay in the file and are saved when the journal is next opened.
+     * @throws IOException if the file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (writeLock) {
+            closed = true;
+        }
+        flusher.interrupt();
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    /**
+     * Forces the file up to end to disk, unless a force by another writer already covered it.
+     */
+    private void sync(long end) throws IOException {
+        synchronized (syncLock) {
+            if (synced >= end) {
+                return;
+            }
+            long target = written;
+            channel.force(false);
+            synced = target;
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingPayment> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed) {
+            try {
+                if (batch.isEmpty()) {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                }
+                List<Payment> saved = db.isOffline() ? null : db.savePendingPayments(batch, this::setAside);
+                if (saved == null) {
+                    if (!db.isOffline()) {
+                        LOG.log(Level.WARNING, "Could not save {0} journalled payments; retrying", batch.size());
+                    }
+                    Thread.sleep(RETRY_MILLIS);
+                    continue;
+                }
+                markSaved(batch.size());
+                batch.clear();
+                for (Payment payment : saved) {
+                    for (Consumer<Payment> listener : listeners) {
+                        SwingUtilities.invokeLater(() -> listener.accept(payment));
+                    }
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // The batch stays as it is and is tried again; the flusher must not die
+                LOG.log(Level.SEVERE, "Saving journalled payments failed; retrying", e);
+                try {
+                    Thread.sleep(RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps a payment the database refused in the .rejected file, for someone
+     * to correct and enter again.
+     * @throws UncheckedIOException if the file cannot be written; the payment
+     *         then stays in the journal
+     */
+    private void setAside(PendingPayment payment, SQLException error) {
+        LOG.log(Level.SEVERE, "The database refused journalled payment " + payment.journalId()
+                + "; it is kept in " + rejectedFile, error);
+        String line = String.join("\t", payment.journalId(), payment.paidAt().toString(), payment.clientName(),
+                payment.contact(), String.valueOf(payment.totalPaidCentavos()), payment.status(),
+                String.valueOf(error.getMessage()).replaceAll("\\s+", " ")) + System.lineSeparator();
+        try {
+            Files.writeString(rejectedFile, line, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND, StandardOpenOption.SYNC);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not set aside journalled payment " + payment.journalId(), e);
+        }
+    }
+
+    /**
+     * Empties the file once every payment in it is saved.
+     */
+    private void markSaved(int count) {
+        synchronized (writeLock) {
+            unsaved -= count;
+            if (unsaved > 0 || closed) {
+                return;
+            }
+            try {
+                synchronized (syncLock) {
+                    channel.truncate(0);
+                    channel.force(false);
+                    written = 0;
+                    synced = 0;
+                }
+            } catch (IOException e) {
+                // Harmless: the payments are replayed and skipped on the next start
+                LOG.log(Level.WARNING, "Could not empty the payment journal", e);
+            }
+        }
+    }
+
+    /**
+     * Reads every complete entry, cutting off a half-written one at the end.
+     */
+    private List<PendingPayment> readEntries() throws IOException {
+        List<PendingPayment> entries = new ArrayList<>();
+        long size = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (position + HEADER_BYTES <= size) {
+            readFully(header.clear(), position);
+            int length = header.getInt(0);
+            if (length <= 0 || length > MAX_ENTRY_BYTES || position + HEADER_BYTES + length > size) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + HEADER_BYTES);
+            if (checksum(payload.array()) != header.getInt(4)) {
+                break;
+            }
+            entries.add(decode(payload.array()));
+            position += HEADER_BYTES + length;
+        }
+        if (position < size) {
+            LOG.log(Level.WARNING, "Discarding {0} bytes of an incomplete journal entry", size - position);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        return entries;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of the payment journal");
+            }
+        }
+    }
+
+    private static ByteBuffer encode(PendingPayment payment) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(payment.journalId());
+            out.writeUTF(payment.clientName());
+            out.writeUTF(payment.contact());
+            out.writeLong(payment.totalPaidCentavos());
+            out.writeUTF(payment.status());
+            out.writeLong(payment.paidAt().getTime());
+        }
+        byte[] payload = bytes.toByteArray();
+        ByteBuffer entry = ByteBuffer.allocate(HEADER_BYTES + payload.length);
+        entry.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        return entry;
+    }
+
+    private static PendingPayment decode(byte[] payload) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            return new PendingPayment(in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readUTF(),
+                    new Timestamp(in.readLong()));
+        }
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
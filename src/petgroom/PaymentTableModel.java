@@ -0,0 +1,51 @@
+/*
+ * PaymentTableModel.java
+ * Paged view of the payments table.
+ */
+package petgroom;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Payments in id (entry) order, with the same columns as the PAYMENT form's table.
+ */
+public class PaymentTableModel extends PagedTableModel<Payment> {
+
+    /**
+     * Same order as the payment page queries.
+     */
+    static final Comparator<Payment> ORDER = Comparator.comparingLong(Payment::id);
+
+    private final DatabaseConnectivity db;
+
+    public PaymentTableModel(DatabaseConnectivity db) {
+        super(ORDER, "Client Name", "Contact", "Total Paid", "Status");
+        this.db = db;
+    }
+
+    @Override
+    protected int count() {
+        return db.countPayments();
+    }
+
+    @Override
+    protected List<Payment> fetchAfter(Payment last, int limit) {
+        return db.getPaymentsAfter(last, limit);
+    }
+
+    @Override
+    protected List<Payment> fetchAt(int offset, int limit) {
+        return db.getPaymentsAt(offset, limit);
+    }
+
+    @Override
+    protected Object valueOf(Payment row, int column) {
+        switch (column) {
+            case 0: return row.clientName();
+            case 1: return row.contact();
+            case 2: return Money.format(row.totalPaidCentavos());
+            default: return row.status();
+        }
+    }
+}
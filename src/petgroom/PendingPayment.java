@@ -0,0 +1,20 @@
+/*
+ * PendingPayment.java
+ * A payment recorded in the journal and not yet confirmed saved.
+ */
+package petgroom;
+
+import java.sql.Timestamp;
+
+/**
+ * Payment as written to the payment journal, before it has a database id.
+ * @param journalId Unique id given when the payment was taken; stored in payments.journal_id
+ * @param clientName Client's name
+ * @param contact Client's contact information
+ * @param totalPaidCentavos Amount paid, in centavos
+ * @param status Payment status (Paid or Downpayment)
+ * @param paidAt When the payment was taken, in whole seconds
+ */
+public record PendingPayment(String journalId, String clientName, String contact, long totalPaidCentavos,
+        String status, Timestamp paidAt) {
+}
@@ -10,7 +10,7 @@ import javax.swing.JOptionPane;
  *
  * @author githu
  */
-public class REGISTER extends javax.swing.JFrame {
+public class REGISTER extends javax.swing.JFrame implements Navigator.Refreshable {
 
     /**
      * Creates new form REGISTER
@@ -51,11 +51,11 @@ public class REGISTER extends javax.swing.JFrame {
 
         jPanel1.setBackground(new java.awt.Color(255, 153, 153));
 
-        jLabel1.setIcon(new javax.swing.ImageIcon(getClass().getResource("/REGISTERIMAGES/Login&RegisterIcon.png"))); // NOI18N
+        jLabel1.setIcon(Images.icon("/REGISTERIMAGES/Login&RegisterIcon.png"));
 
-        jLabel3.setIcon(new javax.swing.ImageIcon(getClass().getResource("/REGISTERIMAGES/Siamese.png"))); // NOI18N
+        jLabel3.setIcon(Images.icon("/REGISTERIMAGES/Siamese.png"));
 
-        jLabel4.setIcon(new javax.swing.ImageIcon(getClass().getResource("/REGISTERIMAGES/Siamese.png"))); // NOI18N
+        jLabel4.setIcon(Images.icon("/REGISTERIMAGES/Siamese.png"));
 
         jLabel5.setFont(new java.awt.Font("Segoe UI", 1, 16)); // NOI18N
         jLabel5.setForeground(new java.awt.Color(255, 255, 255));
@@ -181,19 +181,30 @@ public class REGISTER extends javax.swing.JFrame {
             return;
         }
 
-        DatabaseConnectivity db = new DatabaseConnectivity();
-        if (db.registerUser(fullName, email, password)) {
-            JOptionPane.showMessageDialog(this, "Registration successful! You can now log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
-            new LOGIN().setVisible(true);
-            this.dispose(); // Close register window
-        } else {
-            JOptionPane.showMessageDialog(this, "Registration failed. Email may already be in use.", "Registration Failed", JOptionPane.ERROR_MESSAGE);
-        }
+        // The first call hashes once and opens the database; keep it off the EDT
+        BackgroundTasks.run(jButton1, () -> AuthService.shared().register(fullName, email, password), registered -> {
+            if (registered) {
+                JOptionPane.showMessageDialog(this, "Registration successful! You can now log in.", "Success", JOptionPane.INFORMATION_MESSAGE);
+                Navigator.show(Navigator.Screen.LOGIN);
+            } else {
+                JOptionPane.showMessageDialog(this, "Registration failed. Email may already be in use.", "Registration Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
 
     private void openLoginForm() {
-        new LOGIN().setVisible(true);
-        this.dispose(); // Close register window
+        Navigator.show(Navigator.Screen.LOGIN);
+    }
+
+    /**
+     * Starts each visit with an empty form.
+     */
+    @Override
+    public void refreshOnShow() {
+        jTextField1.setText("");
+        jTextField2.setText("");
+        jPasswordField1.setText("");
+        jPasswordField2.setText("");
     }
 
     // Variables declaration - do not modify
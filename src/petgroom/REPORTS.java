@@ -0,0 +1,182 @@
+/*
+ * REPORTS.java
+ * Revenue and workload reports screen.
+ */
+package petgroom;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.FlowLayout;
+import java.awt.Font;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.Future;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
+import javax.swing.JTabbedPane;
+import javax.swing.JTable;
+import javax.swing.SpinnerDateModel;
+import javax.swing.table.DefaultTableModel;
+
+/**
+ * Shows revenue per day, week or month, the service mix, payments in full
+ * against downpayments and appointments per day for a range of dates. The
+ * numbers come from the rollup tables through {@link ReportService}, so
+ * loading a range costs two small queries.
+ */
+public class REPORTS extends javax.swing.JFrame implements Navigator.Refreshable {
+
+    private final ReportService reports;
+    private final JSpinner fromSpinner = new JSpinner(new SpinnerDateModel());
+    private final JSpinner toSpinner = new JSpinner(new SpinnerDateModel());
+    private final JComboBox<ReportService.Granularity> granularity = new JComboBox<>(ReportService.Granularity.values());
+    private final JLabel paymentMix = new JLabel(" ");
+    private final DefaultTableModel revenueModel = readOnlyModel("Period", "Payments", "Total", "Paid in Full", "Downpayments");
+    private final DefaultTableModel serviceModel = readOnlyModel("Service", "Appointments", "Share");
+    private final DefaultTableModel dayModel = readOnlyModel("Day", "Appointments");
+    private Future<?> reportLoad;
+
+    /**
+     * Creates the screen showing the current month.
+     */
+    public REPORTS() {
+        reports = new ReportService(DatabaseConnectivity.shared(), ServiceCatalog.shared());
+        initComponents();
+        LocalDate today = LocalDate.now();
+        fromSpinner.setValue(toDate(today.withDayOfMonth(1)));
+        toSpinner.setValue(toDate(today));
+        loadReport();
+    }
+
+    /**
+     * Payments and appointments may have been added while hidden.
+     */
+    @Override
+    public void refreshOnShow() {
+        loadReport();
+    }
+
+    private void initComponents() {
+        setDefaultCloseOperation(javax.swing.WindowConstants.EXIT_ON_CLOSE);
+        setTitle("Reports");
+
+        fromSpinner.setEditor(new JSpinner.DateEditor(fromSpinner, "yyyy-MM-dd"));
+        toSpinner.setEditor(new JSpinner.DateEditor(toSpinner, "yyyy-MM-dd"));
+        granularity.setSelectedItem(ReportService.Granularity.DAY);
+        granularity.addActionListener(e -> loadReport());
+
+        JButton show = button("SHOW");
+        show.addActionListener(e -> loadReport());
+        JButton back = button("BACK");
+        back.addActionListener(e -> Navigator.show(Navigator.Screen.DASHBOARD));
+
+        JPanel controls = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        controls.setOpaque(false);
+        controls.add(back);
+        controls.add(new JLabel("From"));
+        controls.add(fromSpinner);
+        controls.add(new JLabel("To"));
+        controls.add(toSpinner);
+        controls.add(new JLabel("Revenue by"));
+        controls.add(granularity);
+        controls.add(show);
+
+        JTabbedPane tabs = new JTabbedPane();
+        tabs.addTab("Revenue", new JScrollPane(new JTable(revenueModel)));
+        tabs.addTab("Service Mix", new JScrollPane(new JTable(serviceModel)));
+        tabs.addTab("Appointments per Day", new JScrollPane(new JTable(dayModel)));
+
+        paymentMix.setFont(new Font("Segoe UI", Font.BOLD, 14));
+
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBackground(new Color(255, 153, 153));
+        panel.add(controls, BorderLayout.NORTH);
+        panel.add(tabs, BorderLayout.CENTER);
+        panel.add(paymentMix, BorderLayout.SOUTH);
+        getContentPane().add(panel);
+
+        setSize(800, 500);
+        setLocationRelativeTo(null);
+    }
+
+    /**
+     * Loads the reports for the selected range in the background, replacing
+     * any load still running.
+     */
+    private void loadReport() {
+        LocalDate from = toLocalDate((java.util.Date) fromSpinner.getValue());
+        LocalDate to = toLocalDate((java.util.Date) toSpinner.getValue());
+        if (to.isBefore(from)) {
+            JOptionPane.showMessageDialog(this, "The end date is before the start date.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        ReportService.Granularity by = (ReportService.Granularity) granularity.getSelectedItem();
+        if (reportLoad != null) {
+            reportLoad.cancel(false);
+        }
+        reportLoad = BackgroundTasks.load(() -> {
+            try {
+                return reports.report(from, to, by);
+            } catch (java.sql.SQLException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }, this::showReport);
+    }
+
+    private void showReport(ReportService.Report report) {
+        revenueModel.setRowCount(0);
+        serviceModel.setRowCount(0);
+        dayModel.setRowCount(0);
+        if (report == null) {
+            paymentMix.setText("Failed to load the reports.");
+            return;
+        }
+        for (ReportService.RevenueRow row : report.revenue()) {
+            revenueModel.addRow(new Object[]{row.period(), row.payments(), Money.format(row.totalCentavos()),
+                Money.format(row.paidCentavos()), Money.format(row.downpaymentCentavos())});
+        }
+        for (ReportService.ServiceShare share : report.serviceMix()) {
+            serviceModel.addRow(new Object[]{share.service(), share.appointments(),
+                String.format("%.1f%%", share.share() * 100)});
+        }
+        for (Map.Entry<LocalDate, Integer> day : report.appointmentsPerDay().entrySet()) {
+            dayModel.addRow(new Object[]{day.getKey(), day.getValue()});
+        }
+        ReportService.PaymentMix mix = report.paymentMix();
+        paymentMix.setText(String.format("Paid in full: %d (%s)   Downpayments: %d (%s)   Downpayment ratio: %.1f%%",
+                mix.paidPayments(), Money.format(mix.paidCentavos()), mix.downpayments(),
+                Money.format(mix.downpaymentCentavos()), mix.downpaymentRatio() * 100));
+    }
+
+    private static JButton button(String text) {
+        JButton button = new JButton(text);
+        button.setBackground(new Color(255, 102, 102));
+        button.setFont(new Font("Segoe UI", Font.BOLD, 14));
+        button.setForeground(Color.WHITE);
+        return button;
+    }
+
+    private static DefaultTableModel readOnlyModel(String... columns) {
+        return new DefaultTableModel(columns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+    }
+
+    private static java.util.Date toDate(LocalDate day) {
+        return java.util.Date.from(day.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+
+    private static LocalDate toLocalDate(java.util.Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * ReportService.java
+ * Revenue and workload reports built from the rollup tables.
+ */
+package petgroom;
+
+import java.sql.Date;
+import java.sql.SQLException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Builds the reports from the daily_revenue and daily_appointments rollups,
+ * which hold at most one row per day and status or service. A year of
+ * reports therefore reads a few thousand small rows whatever the size of
+ * the payments and appointments tables; weeks and months are summed here.
+ *
+ * Methods block on the database and are meant to be called from a
+ * background task.
+ */
+public final class ReportService {
+
+    /**
+     * How revenue is grouped.
+     */
+    public enum Granularity {
+        DAY, WEEK, MONTH;
+
+        /**
+         * @param day A day
+         * @return First day of the period containing it; weeks start on Monday
+         */
+        public LocalDate periodOf(LocalDate day) {
+            return switch (this) {
+                case DAY -> day;
+                case WEEK -> day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+                case MONTH -> day.withDayOfMonth(1);
+            };
+        }
+    }
+
+    /**
+     * Revenue for one period.
+     * @param period First day of the period
+     * @param payments Number of payments
+     * @param totalCentavos All payments, in centavos
+     * @param paidCentavos Payments in full, in centavos
+     * @param downpaymentCentavos Downpayments, in centavos
+     */
+    public record RevenueRow(LocalDate period, int payments, long totalCentavos, long paidCentavos, long downpaymentCentavos) {
+    }
+
+    /**
+     * Appointments for one service.
+     * @param service Service name
+     * @param appointments Number of appointments
+     * @param share Fraction of all appointments in the range, 0 to 1
+     */
+    public record ServiceShare(String service, int appointments, double share) {
+    }
+
+    /**
+     * Payments in full against downpayments.
+     * @param paidPayments Number of payments in full
+     * @param paidCentavos Their total, in centavos
+     * @param downpayments Number of downpayments
+     * @param downpaymentCentavos Their total, in centavos
+     */
+    public record PaymentMix(int paidPayments, long paidCentavos, int downpayments, long downpaymentCentavos) {
+
+        /**
+         * @return Fraction of payments that were downpayments, 0 to 1
+         */
+        public double downpaymentRatio() {
+            int all = paidPayments + downpayments;
+            return all == 0 ? 0 : (double) downpayments / all;
+        }
+    }
+
+    /**
+     * Everything shown on the reports screen for one range.
+     * @param revenue Revenue per period, oldest first
+     * @param paymentMix Payments in full against downpayments
+     * @param serviceMix Appointments per service, busiest first
+     * @param appointmentsPerDay Appointments on each day of the range, including empty days
+     */
+    public record Report(List<RevenueRow> revenue, PaymentMix paymentMix, List<ServiceShare> serviceMix,
+            Map<LocalDate, Integer> appointmentsPerDay) {
+    }
+
+    private final DatabaseConnectivity db;
+    private final ServiceCatalog catalog;
+
+    /**
+     * @param db Where the rollups are read from
+     * @param catalog Used to merge service names from older appointment labels; may be null
+     */
+    public ReportService(DatabaseConnectivity db, ServiceCatalog catalog) {
+        this.db = db;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Builds every report for a range with two rollup queries.
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @param granularity How to group revenue
+     * @return The reports
+     * @throws SQLException if a query fails
+     */
+    public Report report(LocalDate from, LocalDate to, Granularity granularity) throws SQLException {
+        List<RevenueRollup> revenue = db.queryRevenueRollups(Date.valueOf(from), Date.valueOf(to));
+        List<AppointmentRollup> appointments = db.queryAppointmentRollups(Date.valueOf(from), Date.valueOf(to));
+        return new Report(revenue(revenue, granularity), paymentMix(revenue), serviceMix(appointments),
+                appointmentsPerDay(appointments, from, to));
+    }
+
+    /**
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @param granularity How to group revenue
+     * @return Revenue per period with at least one payment, oldest first
+     * @throws SQLException if the query fails
+     */
+    public List<RevenueRow> revenue(LocalDate from, LocalDate to, Granularity granularity) throws SQLException {
+        return revenue(db.queryRevenueRollups(Date.valueOf(from), Date.valueOf(to)), granularity);
+    }
+
+    /**
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Payments in full against downpayments
+     * @throws SQLException if the query fails
+     */
+    public PaymentMix paymentMix(LocalDate from, LocalDate to) throws SQLException {
+        return paymentMix(db.queryRevenueRollups(Date.valueOf(from), Date.valueOf(to)));
+    }
+
+    /**
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Appointments per service, busiest first
+     * @throws SQLException if the query fails
+     */
+    public List<ServiceShare> serviceMix(LocalDate from, LocalDate to) throws SQLException {
+        return serviceMix(db.queryAppointmentRollups(Date.valueOf(from), Date.valueOf(to)));
+    }
+
+    /**
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Appointments on each day of the range, including empty days
+     * @throws SQLException if the query fails
+     */
+    public Map<LocalDate, Integer> appointmentsPerDay(LocalDate from, LocalDate to) throws SQLException {
+        return appointmentsPerDay(db.queryAppointmentRollups(Date.valueOf(from), Date.valueOf(to)), from, to);
+    }
+
+    private static List<RevenueRow> revenue(List<RevenueRollup> rollups, Granularity granularity) {
+        Map<LocalDate, long[]> periods = new TreeMap<>();
+        for (RevenueRollup rollup : rollups) {
+            // payments, total, paid, downpayment
+            long[] sums = periods.computeIfAbsent(granularity.periodOf(rollup.day()), p -> new long[4]);
+            sums[0] += rollup.payments();
+            sums[1] += rollup.totalCentavos();
+            if (isDownpayment(rollup.status())) {
+                sums[3] += rollup.totalCentavos();
+            } else {
+                sums[2] += rollup.totalCentavos();
+            }
+        }
+        List<RevenueRow> rows = new ArrayList<>(periods.size());
+        for (Map.Entry<LocalDate, long[]> period : periods.entrySet()) {
+            long[] sums = period.getValue();
+            rows.add(new RevenueRow(period.getKey(), (int) sums[0], sums[1], sums[2], sums[3]));
+        }
+        return rows;
+    }
+
+    private static PaymentMix paymentMix(List<RevenueRollup> rollups) {
+        int paid = 0;
+        long paidCentavos = 0;
+        int down = 0;
+        long downCentavos = 0;
+        for (RevenueRollup rollup : rollups) {
+            if (isDownpayment(rollup.status())) {
+                down += rollup.payments();
+                downCentavos += rollup.totalCentavos();
+            } else {
+                paid += rollup.payments();
+                paidCentavos += rollup.totalCentavos();
+            }
+        }
+        return new PaymentMix(paid, paidCentavos, down, downCentavos);
+    }
+
+    private List<ServiceShare> serviceMix(List<AppointmentRollup> rollups) {
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        int total = 0;
+        for (AppointmentRollup rollup : rollups) {
+            counts.merge(serviceName(rollup.service()), rollup.appointments(), Integer::sum);
+            total += rollup.appointments();
+        }
+        List<ServiceShare> shares = new ArrayList<>(counts.size());
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            shares.add(new ServiceShare(count.getKey(), count.getValue(), total == 0 ? 0 : (double) count.getValue() / total));
+        }
+        shares.sort((a, b) -> Integer.compare(b.appointments(), a.appointments()));
+        return shares;
+    }
+
+    private static Map<LocalDate, Integer> appointmentsPerDay(List<AppointmentRollup> rollups, LocalDate from, LocalDate to) {
+        Map<LocalDate, Integer> days = new LinkedHashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            days.put(day, 0);
+        }
+        for (AppointmentRollup rollup : rollups) {
+            days.merge(rollup.day(), rollup.appointments(), Integer::sum);
+        }
+        return days;
+    }
+
+    /**
+     * Older appointments store the list label ("FullGroom ₱600"); count them
+     * under the catalog's name for the service when it can be matched.
+     */
+    private String serviceName(String stored) {
+        Service service = catalog == null ? null : catalog.find(stored);
+        return service == null ? stored : service.name();
+    }
+
+    private static boolean isDownpayment(String status) {
+        return "Downpayment".equalsIgnoreCase(status);
+    }
+}
@@ -0,0 +1,18 @@
+/*
+ * RevenueRollup.java
+ * One row of the daily_revenue rollup table.
+ */
+package petgroom;
+
+import java.time.LocalDate;
+
+/**
+ * Payments of one status taken on one day, as kept up to date by the
+ * payment writes in DatabaseConnectivity.
+ * @param day Day the payments were recorded
+ * @param status Payment status (Paid or Downpayment)
+ * @param payments Number of payments
+ * @param totalCentavos Sum of the amounts paid, in centavos
+ */
+public record RevenueRollup(LocalDate day, String status, int payments, long totalCentavos) {
+}
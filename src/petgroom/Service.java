@@ -0,0 +1,29 @@
+/*
+ * Service.java
+ * One row of the services table.
+ */
+package petgroom;
+
+/**
+ * Immutable grooming service as read from the database.
+ * @param id Surrogate key
+ * @param name Display name, also stored on appointments
+ * @param priceCentavos Price in centavos
+ * @param durationMinutes Time the service takes at a station
+ */
+public record Service(int id, String name, long priceCentavos, int durationMinutes) {
+
+    /**
+     * @return Name and price as shown in the service lists, e.g. "Full Groom ₱600"
+     */
+    public String label() {
+        return priceCentavos % 100 == 0
+                ? name + " ₱" + priceCentavos / 100
+                : name + " " + Money.format(priceCentavos);
+    }
+
+    @Override
+    public String toString() {
+        return label();
+    }
+}
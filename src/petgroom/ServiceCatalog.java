@@ -0,0 +1,172 @@
+/*
+ * ServiceCatalog.java
+ * In-memory copy of the services table with hot reload.
+ */
+package petgroom;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Holds the active services as an immutable snapshot: a list in display
+ * order plus an id-keyed map, swapped atomically when the table changes.
+ * Reads never touch the database, so pricing a payment costs one map lookup.
+ *
+ * The table is checked for changes once a minute by default with a single
+ * aggregate query (-Dpetgroom.services.refreshSeconds=60; 0 turns checking
+ * off) and reloaded only when it has changed; {@link #invalidate} forces a
+ * reload at once. Listeners are told on the EDT after each reload.
+ */
+public final class ServiceCatalog {
+    private static final Logger LOG = Logger.getLogger(ServiceCatalog.class.getName());
+    private static final long REFRESH_SECONDS = Long.getLong("petgroom.services.refreshSeconds", 60L);
+
+    private static final class Shared {
+        static final ServiceCatalog INSTANCE = create();
+
+        private static ServiceCatalog create() {
+            ServiceCatalog catalog = new ServiceCatalog(DatabaseConnectivity.shared());
+            catalog.startRefreshing(REFRESH_SECONDS);
+            return catalog;
+        }
+    }
+
+    private record Snapshot(List<Service> services, Map<Integer, Service> byId, Map<String, Service> byName, String version) {
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(List.of(), Map.of(), Map.of(), null);
+
+    private final DatabaseConnectivity db;
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private volatile Snapshot snapshot = EMPTY;
+
+    /**
+     * @return The process-wide catalog over the shared connection pool
+     */
+    public static ServiceCatalog shared() {
+        return Shared.INSTANCE;
+    }
+
+    ServiceCatalog(DatabaseConnectivity db) {
+        this.db = db;
+    }
+
+    /**
+     * @return Whether the services have been loaded at least once
+     */
+    public boolean isLoaded() {
+        return snapshot != EMPTY;
+    }
+
+    /**
+     * @return Active services in display order; empty until loaded
+     */
+    public List<Service> services() {
+        return snapshot.services();
+    }
+
+    /**
+     * @param id Service id
+     * @return The service, or null if there is no active service with that id
+     */
+    public Service get(int id) {
+        return snapshot.byId().get(id);
+    }
+
+    /**
+     * Finds the service an appointment refers to. Matches the service name, and
+     * also the "Name ₱price" labels stored by earlier versions, ignoring case and spaces.
+     * @param nameOrLabel Stored service text
+     * @return The service, or null if none matches
+     */
+    public Service find(String nameOrLabel) {
+        return nameOrLabel == null ? null : snapshot.byName().get(nameKey(nameOrLabel));
+    }
+
+    /**
+     * Loads the table if it has changed since the last load. Blocks on the database.
+     * @return true if a new snapshot was installed
+     */
+    public boolean refresh() {
+        return reload(false);
+    }
+
+    /**
+     * Reloads the table now, e.g. right after prices were edited. Blocks on the database.
+     */
+    public void invalidate() {
+        reload(true);
+    }
+
+    /**
+     * @param listener Called on the EDT after every reload that changed the catalog
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener added earlier
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private synchronized boolean reload(boolean force) {
+        try {
+            String version = db.queryServicesVersion();
+            Snapshot current = snapshot;
+            if (!force && current != EMPTY && Objects.equals(version, current.version())) {
+                return false;
+            }
+            List<Service> services = db.queryServices();
+            Map<Integer, Service> byId = new LinkedHashMap<>();
+            Map<String, Service> byName = new LinkedHashMap<>();
+            for (Service service : services) {
+                byId.put(service.id(), service);
+                byName.putIfAbsent(nameKey(service.name()), service);
+            }
+            snapshot = new Snapshot(List.copyOf(services), Map.copyOf(byId), Map.copyOf(byName), version);
+            LOG.log(Level.FINE, "Loaded {0} services", services.size());
+        } catch (SQLException e) {
+            // Keep serving the last good snapshot
+            LOG.log(Level.WARNING, "Could not load services", e);
+            return false;
+        }
+        for (Runnable listener : new ArrayList<>(listeners)) {
+            SwingUtilities.invokeLater(listener);
+        }
+        return true;
+    }
+
+    private void startRefreshing(long seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "petgroom-services-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+        refresher.scheduleWithFixedDelay(this::refresh, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * "FullGroom ₱600", "Full Groom" and "full groom" all map to "fullgroom".
+     */
+    private static String nameKey(String text) {
+        return text.replaceFirst("\\s*₱[\\d.,]*\\s*$", "").replaceAll("\\s+", "").toLowerCase(Locale.ROOT);
+    }
+}
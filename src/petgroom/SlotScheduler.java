@@ -0,0 +1,208 @@
+/*
+ * SlotScheduler.java
+ * Free time slots per grooming station, from the appointments in memory.
+ */
+package petgroom;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Works out which start times are still free on a day. The shop's day is
+ * divided into fixed slots (-Dpetgroom.schedule.slotMinutes, default 15)
+ * from -Dpetgroom.schedule.open to -Dpetgroom.schedule.close (default 09:00
+ * to 18:00), at each of -Dpetgroom.schedule.stations grooming stations
+ * (default 2); that is each station's daily capacity. A service takes its
+ * duration rounded up to whole slots.
+ *
+ * A day's bookings come from the repository's date index and are laid out
+ * as one bitmap of taken slots per station, so checking a time is a bit scan
+ * and finding the next free run skips from booking to booking. Appointments
+ * booked for the whole day, from before time slots, take no slot.
+ *
+ * Methods block while a day's month is loaded; check {@link #isLoaded} first
+ * on the EDT. The database re-checks every booking when it is saved, so two
+ * terminals cannot take the same slot.
+ */
+public final class SlotScheduler {
+    private static final LocalTime OPEN = LocalTime.parse(System.getProperty("petgroom.schedule.open", "09:00"));
+    private static final LocalTime CLOSE = LocalTime.parse(System.getProperty("petgroom.schedule.close", "18:00"));
+    private static final int SLOT_MINUTES = Integer.getInteger("petgroom.schedule.slotMinutes", 15);
+    private static final int STATIONS = Integer.getInteger("petgroom.schedule.stations", 2);
+
+    /**
+     * A free slot on a given day.
+     * @param date Day
+     * @param slot Station and time
+     */
+    public record Opening(LocalDate date, TimeSlot slot) {
+
+        @Override
+        public String toString() {
+            return date + " " + slot;
+        }
+    }
+
+    private final AppointmentRepository repository;
+    private final int slotsPerDay;
+
+    /**
+     * @param repository Where the day's bookings are read from
+     */
+    public SlotScheduler(AppointmentRepository repository) {
+        this.repository = repository;
+        this.slotsPerDay = (CLOSE.toSecondOfDay() - OPEN.toSecondOfDay()) / 60 / SLOT_MINUTES;
+    }
+
+    /**
+     * @param date A day
+     * @return Whether its bookings are in memory, so the other methods will not block
+     */
+    public boolean isLoaded(LocalDate date) {
+        return repository.isLoaded(date);
+    }
+
+    /**
+     * @param service A service
+     * @return Minutes it takes, rounded up to whole slots
+     */
+    public int minutesFor(Service service) {
+        int slots = Math.max(1, (service.durationMinutes() + SLOT_MINUTES - 1) / SLOT_MINUTES);
+        return slots * SLOT_MINUTES;
+    }
+
+    /**
+     * Lists every start time at which the service still fits, each at the
+     * lowest-numbered station that has room. Times already past are left out for today.
+     * @param date Day to book
+     * @param minutes Duration, from {@link #minutesFor}
+     * @param ignoreId Appointment being moved, whose own slot counts as free; 0 for none
+     * @return Free slots in time order
+     */
+    public List<TimeSlot> freeSlots(LocalDate date, int minutes, long ignoreId) {
+        BitSet[] taken = taken(date, ignoreId);
+        int need = minutes / SLOT_MINUTES;
+        List<TimeSlot> free = new ArrayList<>();
+        for (int start = firstStart(date); start + need <= slotsPerDay; start++) {
+            for (int station = 0; station < STATIONS; station++) {
+                if (isClear(taken[station], start, need)) {
+                    free.add(slot(station, start, need));
+                    break;
+                }
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Finds the earliest slot the service fits in, looking ahead day by day.
+     * @param from First day to look at
+     * @param minutes Duration, from {@link #minutesFor}
+     * @param ignoreId Appointment being moved, whose own slot counts as free; 0 for none
+     * @param days Number of days to look at
+     * @return The earliest opening, or null if every day looked at is full
+     */
+    public Opening nextFree(LocalDate from, int minutes, long ignoreId, int days) {
+        int need = minutes / SLOT_MINUTES;
+        for (int d = 0; d < days; d++) {
+            LocalDate date = from.plusDays(d);
+            BitSet[] taken = taken(date, ignoreId);
+            Opening best = null;
+            for (int station = 0; station < STATIONS; station++) {
+                int start = firstRun(taken[station], firstStart(date), need);
+                if (start >= 0 && (best == null || start * SLOT_MINUTES < minutesFromOpen(best.slot().start()))) {
+                    best = new Opening(date, slot(station, start, need));
+                }
+            }
+            if (best != null) {
+                return best;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param date Day to book
+     * @param slot Station and time
+     * @param ignoreId Appointment being moved, whose own slot counts as free; 0 for none
+     * @return Whether the slot is within opening hours and free
+     */
+    public boolean isFree(LocalDate date, TimeSlot slot, long ignoreId) {
+        // Floored, so a start a few minutes before opening is slot -1, not slot 0
+        int start = Math.floorDiv(minutesFromOpen(slot.start()), SLOT_MINUTES);
+        int end = (minutesFromOpen(slot.end()) + SLOT_MINUTES - 1) / SLOT_MINUTES;
+        if (slot.station() < 1 || slot.station() > STATIONS || start < 0 || end > slotsPerDay || end <= start) {
+            return false;
+        }
+        return isClear(taken(date, ignoreId)[slot.station() - 1], start, end - start);
+    }
+
+    /**
+     * Lays out the day's timed bookings as one bitmap of taken slots per station.
+     */
+    private BitSet[] taken(LocalDate date, long ignoreId) {
+        BitSet[] taken = new BitSet[STATIONS];
+        for (int i = 0; i < STATIONS; i++) {
+            taken[i] = new BitSet(slotsPerDay);
+        }
+        for (Appointment appointment : repository.findByDate(date)) {
+            TimeSlot slot = appointment.slot();
+            if (slot == null || appointment.id() == ignoreId || slot.station() < 1 || slot.station() > STATIONS) {
+                continue;
+            }
+            int start = Math.max(0, minutesFromOpen(slot.start()) / SLOT_MINUTES);
+            int end = Math.min(slotsPerDay, (minutesFromOpen(slot.end()) + SLOT_MINUTES - 1) / SLOT_MINUTES);
+            if (end > start) {
+                taken[slot.station() - 1].set(start, end);
+            }
+        }
+        return taken;
+    }
+
+    private static boolean isClear(BitSet taken, int start, int length) {
+        int next = taken.nextSetBit(start);
+        return next < 0 || next >= start + length;
+    }
+
+    /**
+     * @return Start of the first run of free slots long enough, at or after from, or -1
+     */
+    private int firstRun(BitSet taken, int from, int need) {
+        int start = taken.nextClearBit(from);
+        while (start + need <= slotsPerDay) {
+            int next = taken.nextSetBit(start);
+            if (next < 0 || next >= start + need) {
+                return start;
+            }
+            start = taken.nextClearBit(next);
+        }
+        return -1;
+    }
+
+    /**
+     * @return First slot that has not started yet: 0 on later days, none for days already past
+     */
+    private int firstStart(LocalDate date) {
+        LocalDate today = LocalDate.now();
+        if (date.isAfter(today)) {
+            return 0;
+        }
+        if (date.isBefore(today)) {
+            return slotsPerDay;
+        }
+        int elapsed = minutesFromOpen(LocalTime.now());
+        return elapsed <= 0 ? 0 : (elapsed + SLOT_MINUTES - 1) / SLOT_MINUTES;
+    }
+
+    private TimeSlot slot(int station, int start, int length) {
+        return new TimeSlot(station + 1, OPEN.plusMinutes((long) start * SLOT_MINUTES),
+                OPEN.plusMinutes((long) (start + length) * SLOT_MINUTES));
+    }
+
+    private static int minutesFromOpen(LocalTime time) {
+        return (time.toSecondOfDay() - OPEN.toSecondOfDay()) / 60;
+    }
+}
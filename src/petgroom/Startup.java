@@ -0,0 +1,109 @@
+/*
+ * Startup.java
+ * Background warmup run while the login window is on screen.
+ */
+package petgroom;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Does the slow first-use work of the later forms while the user is still
+ * typing credentials: loads the JDBC driver and opens the pool's first
+ * connection, fills the appointment cache and service catalog, prepares the bcrypt service,
+ * opens the payment journal (saving payments left from the last run),
+ * publishes the diagnostics MBeans, loads the JCalendar and form classes,
+ * and decodes the form images. Every
+ * task runs in the background and failures only cost the saving, since each
+ * piece is initialised on demand anyway.
+ */
+final class Startup {
+    private static final Logger LOG = Logger.getLogger(Startup.class.getName());
+
+    private static final String[] CLASSES = {
+        "com.toedter.calendar.JCalendar",
+        "com.toedter.calendar.JDayChooser",
+        "com.toedter.calendar.JMonthChooser",
+        "com.toedter.calendar.JYearChooser",
+        "petgroom.MAINDASHBOARD",
+        "petgroom.PAYMENT",
+        "petgroom.REGISTER",
+        "petgroom.AppointmentTableModel",
+        "petgroom.PaymentTableModel"
+    };
+
+    // Forms take their icons from the Images cache, so they find these already decoded
+    private static final String[] IMAGES = {
+        "/MAINDASHBOARDIMAGES/Your paragraph text.gif",
+        "/MAINDASHBOARDIMAGES/MainDashboardLogo.png",
+        "/PAYMENTIMAGES/DOG1.png",
+        "/REGISTERIMAGES/Login&RegisterIcon.png",
+        "/REGISTERIMAGES/Siamese.png"
+    };
+
+    private Startup() {
+    }
+
+    /**
+     * Starts the warmup tasks in the background.
+     * @return Completes when every task has finished, successfully or not
+     */
+    static CompletableFuture<Void> warmUp() {
+        long start = System.nanoTime();
+        CompletableFuture<Void> all = CompletableFuture.allOf(
+                task("database", () -> {
+                    DatabaseConnectivity.shared().getPool().prefill();
+                    AppointmentRepository.shared().preload();
+                    ServiceCatalog.shared().refresh();
+                }),
+                task("authentication", AuthService::shared),
+                task("payment journal", PaymentJournal::shared),
+                task("metrics", Metrics::publish),
+                task("classes", Startup::loadClasses),
+                task("images", Startup::decodeImages));
+        return all.whenComplete((ignored, error) -> LOG.log(Level.INFO, "Warmup finished in {0} ms",
+                (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * Logs how long the JVM took to get a window on screen.
+     * @param what Name of the window
+     */
+    static void logShown(String what) {
+        Instant started = ProcessHandle.current().info().startInstant().orElse(null);
+        if (started != null) {
+            LOG.log(Level.INFO, "{0} shown {1} ms after JVM start",
+                    new Object[]{what, Duration.between(started, Instant.now()).toMillis()});
+        }
+    }
+
+    private static CompletableFuture<Void> task(String name, Runnable work) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                work.run();
+            } catch (RuntimeException | LinkageError e) {
+                LOG.log(Level.WARNING, "Warmup of " + name + " failed", e);
+            }
+        }, BackgroundTasks::execute);
+    }
+
+    private static void loadClasses() {
+        ClassLoader loader = Startup.class.getClassLoader();
+        for (String name : CLASSES) {
+            try {
+                Class.forName(name, true, loader);
+            } catch (ClassNotFoundException e) {
+                LOG.log(Level.FINE, "Warmup class not found: {0}", name);
+            }
+        }
+    }
+
+    private static void decodeImages() {
+        for (String path : IMAGES) {
+            Images.icon(path);
+        }
+    }
+}
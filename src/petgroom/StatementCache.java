@@ -0,0 +1,131 @@
+/*
+ * StatementCache.java
+ * LRU cache of prepared statements belonging to a single pooled connection.
+ */
+package petgroom;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the prepared statements of one connection keyed by SQL text, so the
+ * constant queries in DatabaseConnectivity are parsed and planned once per
+ * connection instead of once per call. Only the thread that borrowed the
+ * connection touches its cache, so no locking is needed.
+ */
+final class StatementCache {
+
+    /**
+     * Hit/miss/eviction counters shared by all caches of one pool.
+     */
+    static final class Stats {
+        final AtomicLong hits = new AtomicLong();
+        final AtomicLong misses = new AtomicLong();
+        final AtomicLong evictions = new AtomicLong();
+    }
+
+    private final Connection connection;
+    private final int capacity;
+    private final Stats stats;
+    private final Map<String, PreparedStatement> statements;
+    private final List<PreparedStatement> uncached = new ArrayList<>();
+
+    /**
+     * @param connection Connection the statements are prepared on
+     * @param capacity Maximum cached statements; 0 disables caching
+     * @param stats Counters to update
+     */
+    StatementCache(Connection connection, int capacity, Stats stats) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.stats = stats;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= StatementCache.this.capacity) {
+                    return false;
+                }
+                stats.evictions.incrementAndGet();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached statement for the SQL, preparing it on a miss.
+     * The caller must not close it.
+     * @param sql Statement text
+     * @return A prepared statement owned by this cache
+     * @throws SQLException if preparing fails
+     */
+    PreparedStatement get(String sql) throws SQLException {
+        return get(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Like {@link #get(String)}, for statements that need generated keys back.
+     * @param sql Statement text
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+     * @return A prepared statement owned by this cache
+     * @throws SQLException if preparing fails
+     */
+    PreparedStatement get(String sql, int autoGeneratedKeys) throws SQLException {
+        // The same SQL prepared with and without generated keys is two different statements
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? sql + "\u0000keys" : sql;
+        PreparedStatement stmt = statements.get(key);
+        if (stmt != null && !stmt.isClosed()) {
+            stats.hits.incrementAndGet();
+            return stmt;
+        }
+        stats.misses.incrementAndGet();
+        stmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        if (capacity > 0) {
+            statements.put(key, stmt);
+        } else {
+            uncached.add(stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * Closes statements handed out while caching is disabled. Called when the
+     * connection goes back to the pool.
+     */
+    void releaseUncached() {
+        for (PreparedStatement stmt : uncached) {
+            closeQuietly(stmt);
+        }
+        uncached.clear();
+    }
+
+    /**
+     * Closes every statement; called before the connection itself is closed.
+     */
+    void clear() {
+        releaseUncached();
+        for (PreparedStatement stmt : statements.values()) {
+            closeQuietly(stmt);
+        }
+        statements.clear();
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    private static void closeQuietly(PreparedStatement stmt) {
+        try {
+            stmt.close();
+        } catch (SQLException e) {
+            // Statement is unusable either way
+        }
+    }
+}
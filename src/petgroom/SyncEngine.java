@@ -0,0 +1,325 @@
+/*
+ * SyncEngine.java
+ * Keeps the local store and MySQL in step.
+ */
+package petgroom;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Background task that checks every -Dpetgroom.offline.syncSeconds (default
+ * 5) whether MySQL can be reached. While it cannot, the local store serves
+ * the application. Once it can, appointment writes made offline are replayed
+ * from the outbox in order, and then the application is switched back.
+ * While online, MySQL's changes are copied into the local store every
+ * -Dpetgroom.offline.pullMinutes (default 15) and right after an outage:
+ * the appointments and payments named in change_log since the last copy are
+ * read again, -Dpetgroom.offline.batchSize entries (default 1000) at a time,
+ * and the small tables are copied whole. The first time, and when the last
+ * copy is older than half of the time change_log is kept, appointments and
+ * payments are copied whole, in batches of that many rows.
+ * Rows with changes still in the outbox are not copied over; a write that
+ * reaches the store while the application switches back is replayed on the
+ * next round instead.
+ *
+ * Conflict rules, applied when an offline write is replayed:
+ * appointments booked offline are always added, without their time slot if
+ * another terminal took it meanwhile; an offline edit overwrites the row
+ * unless another terminal deleted it, in which case the delete stands; an
+ * offline delete always applies. A booking is saved with the offline id
+ * from its outbox entry, which is unique in MySQL, so one replayed again
+ * after a crash is found rather than booked twice. Payments, services and
+ * users are only copied from MySQL, never to it.
+ */
+final class SyncEngine {
+    private static final Logger LOG = Logger.getLogger(SyncEngine.class.getName());
+    private static final long SYNC_SECONDS = Long.getLong("petgroom.offline.syncSeconds", 5);
+    private static final long PULL_MILLIS = TimeUnit.MINUTES.toMillis(Long.getLong("petgroom.offline.pullMinutes", 15));
+    private static final int BATCH_SIZE = Integer.getInteger("petgroom.offline.batchSize", 1000);
+
+    /**
+     * Tables logged in change_log, copied by id; the key column comes first.
+     */
+    private static final String[][] KEYED_TABLES = {
+        {"appointments", "id", "client_name", "contact", "date", "pet_name", "pet_breed", "service", "station", "start_time", "end_time", "version"},
+        {"payments", "id", "client_name", "contact", "total_paid_centavos", "status", "paid_at", "journal_id"}
+    };
+
+    /**
+     * Small tables copied whole.
+     */
+    private static final String[][] WHOLE_TABLES = {
+        {"services", "id", "name", "price_centavos", "duration_minutes", "active", "sort_order", "updated_at"},
+        {"users", "id", "full_name", "email", "password"},
+        {"daily_revenue", "day", "status", "payments", "total_centavos"},
+        {"daily_appointments", "day", "service", "appointments"}
+    };
+
+    private final ConnectionPool primaryPool;
+    private final DatabaseConnectivity primary;
+    private final LocalStore local;
+    private final DatabaseConnectivity localDb;
+    private long lastPull;
+
+    /**
+     * @param primaryPool Pool over MySQL
+     * @param local Store to keep in step with it
+     */
+    SyncEngine(ConnectionPool primaryPool, LocalStore local) {
+        this.primaryPool = primaryPool;
+        this.primary = new DatabaseConnectivity(primaryPool);
+        this.local = local;
+        this.localDb = new DatabaseConnectivity(local.getPool(), null, false);
+    }
+
+    /**
+     * Starts checking on a daemon thread.
+     */
+    void start() {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "petgroom-sync");
+            t.setDaemon(true);
+            return t;
+        });
+        timer.scheduleWithFixedDelay(this::sync, 0, SYNC_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * One round: go offline if MySQL is gone, otherwise replay the outbox,
+     * come back online and copy MySQL's tables when due.
+     */
+    void sync() {
+        try {
+            if (!isReachable()) {
+                local.wentOffline(null);
+                return;
+            }
+            if (!push()) {
+                return;
+            }
+            if (local.isOffline()) {
+                local.wentOnline();
+                lastPull = 0; // Other terminals kept writing during the outage
+            }
+            if (System.currentTimeMillis() - lastPull >= PULL_MILLIS) {
+                pull();
+                lastPull = System.currentTimeMillis();
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Sync with MySQL failed; retrying", e);
+        }
+    }
+
+    private boolean isReachable() throws SQLException {
+        try {
+            primaryPool.borrow().close(); // Borrowing validates the connection
+            return true;
+        } catch (SQLException e) {
+            if (LocalStore.isConnectionFailure(e)) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Replays the outbox against MySQL, oldest first.
+     * @return Whether the outbox is empty
+     */
+    private boolean push() throws SQLException {
+        List<LocalStore.Change> changes;
+        while (!(changes = local.pendingChanges(BATCH_SIZE)).isEmpty()) {
+            for (LocalStore.Change change : changes) {
+                if (!replay(change)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the change was applied or dropped by the conflict rules; false to retry it later
+     */
+    private boolean replay(LocalStore.Change change) throws SQLException {
+        Appointment row = change.op() == 'D' ? null : localDb.queryAppointment(change.rowId());
+        switch (change.op()) {
+            case 'I' -> {
+                if (row == null) {
+                    break; // Booked and deleted offline
+                }
+                // Returns the row saved by an earlier round if the renumbering below did not happen
+                Appointment saved = primary.saveOfflineAppointment(row, row.slot(), change.offlineId());
+                if (saved == null) {
+                    LOG.log(Level.WARNING, "Slot {0} of offline booking for {1} was taken meanwhile; booked for the day",
+                            new Object[]{row.slot(), row.clientName()});
+                    saved = primary.saveOfflineAppointment(row, null, change.offlineId());
+                }
+                local.renumber(change, saved);
+                return true;
+            }
+            case 'U' -> {
+                // A row still booked offline is sent whole by its insert; a missing one was deleted after
+                if (row == null || change.rowId() < 0) {
+                    break;
+                }
+                // The offline edit is applied over whatever version MySQL now has
+                Appointment current = primary.queryAppointment(row.id());
+                UpdateResult result = current == null ? UpdateResult.of(UpdateResult.Status.DELETED)
+                        : primary.updateAppointment(row.id(), current.version(), row.clientName(), row.contact(), row.petName(),
+                                row.petBreed(), row.service(), row.date(), row.slot());
+                if (result.status() == UpdateResult.Status.SLOT_TAKEN) {
+                    LOG.log(Level.WARNING, "Slot {0} of offline edit to appointment {1} was taken meanwhile; booked for the day",
+                            new Object[]{row.slot(), row.id()});
+                    result = primary.updateAppointment(row.id(), current.version(), row.clientName(), row.contact(), row.petName(),
+                            row.petBreed(), row.service(), row.date(), null);
+                    if (result.status() == UpdateResult.Status.UPDATED) {
+                        localDb.updateAppointment(row.id(), row.version(), row.clientName(), row.contact(), row.petName(),
+                                row.petBreed(), row.service(), row.date(), null);
+                    }
+                }
+                if (result.status() == UpdateResult.Status.DELETED) {
+                    LOG.log(Level.WARNING, "Appointment {0} edited offline was deleted meanwhile; dropping the edit", row.id());
+                    localDb.deleteAppointment(row.id());
+                    break;
+                }
+                if (result.status() != UpdateResult.Status.UPDATED) {
+                    return false; // Edited again meanwhile, or MySQL failed; retried next round
+                }
+            }
+            case 'D' -> {
+                if (change.rowId() > 0 && !primary.deleteAppointment(change.rowId())
+                        && primary.queryAppointment(change.rowId()) != null) {
+                    return false;
+                }
+            }
+            default -> LOG.log(Level.WARNING, "Dropping unknown outbox entry {0}", change);
+        }
+        local.done(change);
+        return true;
+    }
+
+    /**
+     * Brings the local store up to date with MySQL.
+     */
+    private void pull() throws SQLException {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        // Taken first, so entries logged while copying are read again next time
+        long settled = primary.querySettledChangeSeq();
+        LocalStore.PullMark mark = local.pullMark();
+        // change_log may have been pruned past the mark
+        boolean whole = mark == null || now - mark.pulledAt() >= ChangeFeed.KEEP_MILLIS / 2;
+        if (whole) {
+            for (String[] table : KEYED_TABLES) {
+                pullKeyed(table[0], Arrays.copyOfRange(table, 1, table.length));
+            }
+        } else {
+            pullChanges(mark.seq());
+        }
+        for (String[] table : WHOLE_TABLES) {
+            String[] columns = Arrays.copyOfRange(table, 1, table.length);
+            local.replaceAll(table[0], columns, read("SELECT " + String.join(", ", columns) + " FROM " + table[0], columns.length));
+        }
+        local.setPullMark(new LocalStore.PullMark(whole ? settled : Math.max(settled, mark.seq()), now));
+        LOG.log(Level.INFO, whole ? "Copied MySQL into the local store in {0} ms" : "Copied MySQL''s changes into the local store in {0} ms",
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Copies the rows named in change_log after the given entry, a batch of
+     * entries at a time. A bulk import names no rows, so its table is copied
+     * whole instead.
+     */
+    private void pullChanges(long afterSeq) throws SQLException {
+        Set<String> copyWhole = new HashSet<>();
+        long after = afterSeq;
+        List<ChangeEvent> changes;
+        do {
+            changes = primary.queryChangesAfter(after, BATCH_SIZE);
+            for (String[] table : KEYED_TABLES) {
+                Set<Long> ids = new LinkedHashSet<>();
+                for (ChangeEvent change : changes) {
+                    if (!change.table().equals(table[0])) {
+                        continue;
+                    }
+                    if (change.op() == 'R') {
+                        copyWhole.add(table[0]);
+                    } else {
+                        ids.add(change.rowId());
+                    }
+                }
+                if (!ids.isEmpty() && !copyWhole.contains(table[0])) {
+                    String[] columns = Arrays.copyOfRange(table, 1, table.length);
+                    String query = "SELECT " + String.join(", ", columns) + " FROM " + table[0] + " WHERE " + columns[0] + " IN ("
+                            + String.join(", ", Collections.nCopies(ids.size(), "?")) + ")";
+                    local.replaceRows(table[0], columns, ids, read(query, columns.length, ids.toArray()));
+                }
+            }
+            if (!changes.isEmpty()) {
+                after = changes.get(changes.size() - 1).seq();
+            }
+        } while (changes.size() == BATCH_SIZE);
+        for (String[] table : KEYED_TABLES) {
+            if (copyWhole.contains(table[0])) {
+                pullKeyed(table[0], Arrays.copyOfRange(table, 1, table.length));
+            }
+        }
+    }
+
+    /**
+     * Copies a table in id order, a batch at a time, replacing each id range
+     * in one local transaction so rows deleted in MySQL disappear too. Rows
+     * with negative ids were booked offline and are left alone.
+     */
+    private void pullKeyed(String table, String[] columns) throws SQLException {
+        String query = "SELECT " + String.join(", ", columns) + " FROM " + table + " WHERE " + columns[0] + " > ? ORDER BY "
+                + columns[0] + " LIMIT " + BATCH_SIZE;
+        long after = 0;
+        while (true) {
+            List<Object[]> rows = read(query, columns.length, after);
+            if (rows.size() < BATCH_SIZE) {
+                local.replaceRange(table, columns, after, Long.MAX_VALUE, rows);
+                return;
+            }
+            long through = ((Number) rows.get(rows.size() - 1)[0]).longValue();
+            local.replaceRange(table, columns, after, through, rows);
+            after = through;
+        }
+    }
+
+    private List<Object[]> read(String query, int columns, Object... params) throws SQLException {
+        List<Object[]> rows = new ArrayList<>();
+        try (ConnectionPool.PooledConnection conn = primaryPool.borrow();
+             // Not cached: id lists vary in length, and the rest run a few times an hour
+             PreparedStatement stmt = conn.connection().prepareStatement(query)) {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Object[] row = new Object[columns];
+                    for (int i = 0; i < columns; i++) {
+                        row[i] = rs.getObject(i + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        return rows;
+    }
+}
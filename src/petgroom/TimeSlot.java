@@ -0,0 +1,29 @@
+/*
+ * TimeSlot.java
+ * A booked or bookable stretch of time at one grooming station.
+ */
+package petgroom;
+
+import java.time.LocalTime;
+
+/**
+ * Time an appointment occupies at a grooming station.
+ * @param station Station number, from 1
+ * @param start Start time, inclusive
+ * @param end End time, exclusive
+ */
+public record TimeSlot(int station, LocalTime start, LocalTime end) {
+
+    /**
+     * @param other Another slot
+     * @return Whether the two share a station and some time
+     */
+    public boolean overlaps(TimeSlot other) {
+        return station == other.station && start.isBefore(other.end) && other.start.isBefore(end);
+    }
+
+    @Override
+    public String toString() {
+        return start + " - " + end + " (Station " + station + ")";
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * UpdateResult.java
+ * Outcome of a versioned appointment update.
+ */
+package petgroom;
+
+/**
+ * What became of an update made against a known version of an appointment.
+ * @param status What happened
+ * @param row The row as saved when UPDATED, as another terminal left it when
+ *        CONFLICT, otherwise null
+ */
+public record UpdateResult(Status status, Appointment row) {
+
+    /**
+     * Outcome of an update.
+     */
+    public enum Status {
+        /** Saved; row is the new version */
+        UPDATED,
+        /** Another terminal saved the appointment first; row is its version */
+        CONFLICT,
+        /** Another terminal deleted the appointment */
+        DELETED,
+        /** The new time overlaps another booking at the station */
+        SLOT_TAKEN,
+        /** The database could not be reached or refused the update */
+        FAILED
+    }
+
+    static UpdateResult of(Status status) {
+        return new UpdateResult(status, null);
+    }
+
+    /**
+     * @return The saved row, or null unless the update went through
+     */
+    public Appointment updated() {
+        return status == Status.UPDATED ? row : null;
+    }
+}
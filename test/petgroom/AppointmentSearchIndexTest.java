@@ -0,0 +1,163 @@
+/*
+ * AppointmentSearchIndexTest.java
+ * Trigram and prefix matching, replacement, removal and the result limit.
+ */
+package petgroom;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Searches a handful of appointments put straight into the index.
+ */
+public class AppointmentSearchIndexTest {
+    private static final Date DAY = Date.valueOf("2026-03-14");
+
+    private AppointmentSearchIndex index;
+
+    @Before
+    public void fillIndex() {
+        index = new AppointmentSearchIndex();
+        index.put(row(1, "Ana Santos", "0917-555-1234", "Rex", "Shih Tzu"));
+        index.put(row(2, "Ben O'Neil", "0918 555 9876", "Max", "Aspin"));
+        index.put(row(3, "Carla Reyes", "carla@mail.ph", "Mochi", "Shih Poo"));
+    }
+
+    @Test
+    public void longTermMatchesAnywhereInAWord() {
+        assertEquals(List.of(1L), ids("5551234"));
+        assertEquals(List.of(1L, 2L), ids("555"));
+        assertEquals(List.of(3L), ids("och"));
+        assertEquals(List.of(1L), ids("ntos"));
+    }
+
+    @Test
+    public void shortTermMatchesOnlyTheStartOfAWord() {
+        assertEquals(List.of(1L, 3L), ids("sh"));
+        assertEquals(List.of(2L), ids("ma"));
+        assertEquals(List.of(1L), ids("t"));
+        // Inside "tzu", but starts no word
+        assertEquals(List.of(), ids("zu"));
+    }
+
+    @Test
+    public void everyTermMustMatch() {
+        assertEquals(List.of(1L), ids("shih rex"));
+        assertEquals(List.of(3L), ids("Shih  mo"));
+        assertEquals(List.of(), ids("shih max"));
+        assertEquals(List.of(), ids("ana xyz"));
+    }
+
+    @Test
+    public void caseAndPunctuationAreIgnored() {
+        assertEquals(List.of(2L), ids("ONEIL"));
+        assertEquals(List.of(2L), ids("o'neil"));
+        assertEquals(List.of(1L), ids("0917-555"));
+        assertEquals(List.of(3L), ids("carlamail"));
+    }
+
+    @Test
+    public void blankQueryFindsNothing() {
+        assertEquals(List.of(), ids(""));
+        assertEquals(List.of(), ids("   "));
+        assertEquals(List.of(), ids("--"));
+    }
+
+    @Test
+    public void puttingAnIdAgainReplacesTheRow() {
+        index.put(row(1, "Ana Cruz", "0917-555-1234", "Rex", "Shih Tzu"));
+        assertEquals(3, index.size());
+        assertEquals(List.of(), ids("santos"));
+        assertEquals(List.of(1L), ids("cruz"));
+        assertEquals("Ana Cruz", index.search("ana", 10).rows().get(0).clientName());
+    }
+
+    @Test
+    public void removedRowIsNotFound() {
+        index.remove(3);
+        index.remove(42);
+        assertEquals(2, index.size());
+        assertEquals(List.of(1L), ids("shih"));
+        assertEquals(List.of(), ids("mochi"));
+    }
+
+    @Test
+    public void clearEmptiesTheIndex() {
+        index.clear();
+        assertEquals(0, index.size());
+        assertEquals(List.of(), ids("ana"));
+        index.put(row(4, "Dan Lim", "0920", "Bruno", "Beagle"));
+        assertEquals(List.of(4L), ids("bea"));
+    }
+
+    @Test
+    public void limitKeepsTheNewestAndSaysThereIsMore() {
+        List<Appointment> added = new ArrayList<>();
+        for (int id = 10; id < 20; id++) {
+            added.add(row(id, "Client " + id, "0930", "Pet", "Aspin"));
+        }
+        index.putAll(added);
+        AppointmentSearchIndex.Result result = index.search("client", 3);
+        assertTrue(result.more());
+        assertEquals(List.of(17L, 18L, 19L), ids(result));
+        result = index.search("client", 10);
+        assertFalse(result.more());
+        assertEquals(10, result.rows().size());
+    }
+
+    @Test
+    public void resultIsOrderedByDateThenId() {
+        index.put(rowOn(4, "Ana Lim", Date.valueOf("2026-03-01")));
+        index.put(rowOn(0, "Ana Go", DAY));
+        assertEquals(List.of(4L, 0L, 1L), ids("ana"));
+    }
+
+    @Test
+    public void searchesStillWorkAfterRemovalsRebuildTheKeyLists() {
+        List<Appointment> added = new ArrayList<>();
+        for (int id = 100; id < 3100; id++) {
+            added.add(row(id, "Client " + id, "09" + id, "Pet " + id, "Aspin"));
+        }
+        index.putAll(added);
+        for (int id = 100; id < 2600; id++) {
+            index.remove(id);
+        }
+        assertEquals(503, index.size());
+        assertEquals(List.of(2600L), ids("client 2600"));
+        assertEquals(List.of(), ids("client 2599"));
+        assertEquals(List.of(1L), ids("rex"));
+        // The 500 left plus Ben's
+        assertEquals(501, index.search("aspin", 1000).rows().size());
+    }
+
+    @Test
+    public void normalizeKeepsLettersDigitsAndSingleSpaces() {
+        assertEquals("oneil", AppointmentSearchIndex.normalize("O'Neil"));
+        assertEquals("0917123", AppointmentSearchIndex.normalize("0917-123"));
+        assertEquals("shih tzu ", AppointmentSearchIndex.normalize("  Shih \t Tzu "));
+        assertEquals("", AppointmentSearchIndex.normalize(null));
+    }
+
+    private List<Long> ids(String query) {
+        return ids(index.search(query, 100));
+    }
+
+    private static List<Long> ids(AppointmentSearchIndex.Result result) {
+        return result.rows().stream().map(Appointment::id).toList();
+    }
+
+    private static Appointment row(long id, String client, String contact, String pet, String breed) {
+        return new Appointment(id, client, contact, DAY, pet, breed, "Full Groom");
+    }
+
+    private static Appointment rowOn(long id, String client, Date date) {
+        return new Appointment(id, client, "0920", date, "Bruno", "Aspin", "Full Groom");
+    }
+}
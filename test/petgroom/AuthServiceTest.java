@@ -0,0 +1,76 @@
+/*
+ * AuthServiceTest.java
+ * Logins against a reachable and an unreachable database.
+ */
+package petgroom;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the service at the lowest work factor over an in-memory H2 database.
+ */
+public class AuthServiceTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private ConnectionPool unreachablePool;
+    private AuthService auth;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        String url = "jdbc:h2:mem:auth-" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, full_name VARCHAR(255) NOT NULL, "
+                    + "email VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+        }
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        unreachablePool = new ConnectionPool("jdbc:h2:mem:missing;IFEXISTS=TRUE", "sa", "", new ConnectionPool.Settings());
+        auth = new AuthService(new DatabaseConnectivity(pool), 4);
+        assertTrue(auth.register("Ana", "ana@petgroom.local", "secret"));
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        pool.close();
+        unreachablePool.close();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void rightPasswordLogsIn() throws SQLException {
+        assertTrue(auth.login("ana@petgroom.local", "secret"));
+    }
+
+    @Test
+    public void wrongPasswordOrUnknownEmailIsRefused() throws SQLException {
+        assertFalse(auth.login("ana@petgroom.local", "guess"));
+        assertFalse(auth.login("nobody@petgroom.local", "secret"));
+    }
+
+    @Test
+    public void unreachableDatabaseIsNotTakenForAWrongPassword() {
+        AuthService offline = new AuthService(new DatabaseConnectivity(unreachablePool), 4);
+        try {
+            offline.login("ana@petgroom.local", "secret");
+            fail("Login answered without a database");
+        } catch (SQLException e) {
+            // Reported to the user as the database being unreachable
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * ChangeFeedTest.java
+ * Other terminals' writes, skipped sequence numbers and reloads.
+ */
+package petgroom;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays other terminals by writing rows and change_log entries straight into
+ * an in-memory H2 database, then runs the feed's ticks by hand.
+ */
+public class ChangeFeedTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final String OTHER = "other-terminal";
+    private static final LocalDate DAY = LocalDate.now().plusDays(7);
+
+    static {
+        System.setProperty("petgroom.changes.batchSize", "20");
+    }
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private AppointmentRepository repository;
+    private ChangeFeed feed;
+    private final List<String> delivered = new ArrayList<>();
+    private final List<Appointment> before = new ArrayList<>();
+    private final List<Appointment> after = new ArrayList<>();
+    private int reloads;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        String url = "jdbc:h2:mem:changes-" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE appointments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, date DATE NOT NULL, pet_name VARCHAR(255) NOT NULL, "
+                    + "pet_breed VARCHAR(255) NOT NULL, service VARCHAR(255) NOT NULL, station TINYINT NULL, "
+                    + "start_time TIME NULL, end_time TIME NULL, version INT NOT NULL DEFAULT 0, offline_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE TABLE payments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, total_paid_centavos BIGINT NOT NULL, status VARCHAR(50) NOT NULL, "
+                    + "paid_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, journal_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE TABLE daily_appointments (day DATE NOT NULL, service VARCHAR(255) NOT NULL, "
+                    + "appointments INT NOT NULL, PRIMARY KEY (day, service))");
+            stmt.execute("CREATE TABLE change_log (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(32) NOT NULL, "
+                    + "row_id BIGINT NOT NULL, op CHAR(1) NOT NULL, origin CHAR(36) NOT NULL, "
+                    + "changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("INSERT INTO appointments (id, client_name, contact, date, pet_name, pet_breed, service) "
+                    + "VALUES (1, 'Ana', '0917', '" + DAY + "', 'Rex', 'Aspin', 'Full Bath')");
+        }
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        repository = new AppointmentRepository(new DatabaseConnectivity(pool));
+        feed = new ChangeFeed(new DatabaseConnectivity(pool), repository);
+        feed.addAppointmentListener((change, old, row) -> {
+            delivered.add(change.table() + " " + change.rowId() + " " + change.op());
+            before.add(old);
+            after.add(row);
+        });
+        feed.addPaymentListener((change, old, row) -> delivered.add(change.table() + " " + change.rowId() + " " + change.op()));
+        feed.addReloadListener(() -> reloads++);
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        pool.close();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void firstTickStartsAtTheEndOfTheLog() throws Exception {
+        log(1, "appointments", 1, 'I');
+        assertEquals(-1, feed.position());
+        tick();
+        assertEquals(List.of(), delivered);
+        assertEquals(1, feed.position());
+    }
+
+    @Test
+    public void otherTerminalsUpdateReachesListenersAndCache() throws Exception {
+        tick();
+        assertEquals("Rex", repository.findByDate(DAY).get(0).petName());
+        execute("UPDATE appointments SET pet_name = 'Rexie', version = 1 WHERE id = 1");
+        log(1, "appointments", 1, 'U');
+        tick();
+        assertEquals(List.of("appointments 1 U"), delivered);
+        assertEquals("Rex", before.get(0).petName());
+        assertEquals("Rexie", after.get(0).petName());
+        assertEquals("Rexie", repository.findById(1).petName());
+        assertEquals(1, feed.position());
+    }
+
+    @Test
+    public void ownWritesAreSkipped() throws Exception {
+        tick();
+        assertNotNull(repository.save("Ben", "0918", "Max", "Aspin", "Full Bath", Date.valueOf(DAY), null));
+        tick();
+        assertEquals(List.of(), delivered);
+        assertEquals(1, feed.position());
+    }
+
+    @Test
+    public void skippedSequenceNumberIsWaitedForAndReadWhenItCommits() throws Exception {
+        tick();
+        execute("INSERT INTO appointments (id, client_name, contact, date, pet_name, pet_breed, service) "
+                + "VALUES (2, 'Ben', '0918', '" + DAY + "', 'Max', 'Aspin', 'Full Bath')");
+        log(1, "appointments", 2, 'I');
+        log(3, "appointments", 1, 'D');
+        execute("DELETE FROM appointments WHERE id = 1");
+        tick();
+        assertEquals(List.of("appointments 2 I", "appointments 1 D"), delivered);
+        // 2 may still commit, so nothing past 1 is settled
+        assertEquals(1, feed.position());
+
+        // The transaction holding 2 commits after 3 was read
+        execute("INSERT INTO payments (id, client_name, contact, total_paid_centavos, status) VALUES (7, 'Ben', '0918', 30000, 'Paid')");
+        log(2, "payments", 7, 'I');
+        tick();
+        assertEquals(List.of("appointments 2 I", "appointments 1 D", "payments 7 I"), delivered);
+        assertEquals(3, feed.position());
+
+        // Read once only
+        tick();
+        assertEquals(3, delivered.size());
+    }
+
+    @Test
+    public void rowInsertedAndDeletedInOneTickIsLeftOut() throws Exception {
+        tick();
+        log(1, "appointments", 5, 'I');
+        log(2, "appointments", 5, 'U');
+        log(3, "appointments", 5, 'D');
+        tick();
+        assertEquals(List.of(), delivered);
+        assertEquals(3, feed.position());
+    }
+
+    @Test
+    public void updateOfARowNoLongerThereIsHandedOutAsADelete() throws Exception {
+        tick();
+        execute("DELETE FROM appointments WHERE id = 1");
+        log(1, "appointments", 1, 'U');
+        tick();
+        assertEquals(List.of("appointments 1 D"), delivered);
+        assertNull(after.get(0));
+    }
+
+    @Test
+    public void insertOfARowNoLongerThereIsLeftToItsDelete() throws Exception {
+        tick();
+        log(1, "appointments", 9, 'I');
+        tick();
+        assertEquals(List.of(), delivered);
+    }
+
+    @Test
+    public void bulkWriteHasEverythingReadAgain() throws Exception {
+        tick();
+        repository.findByDate(DAY);
+        assertTrue(repository.isLoaded(DAY));
+        log(1, "appointments", 0, 'R');
+        tick();
+        assertEquals(1, reloads);
+        assertEquals(List.of(), delivered);
+        assertFalse(repository.isLoaded(DAY));
+        assertEquals(1, feed.position());
+    }
+
+    @Test
+    public void moreEntriesThanOneBatchHaveEverythingReadAgain() throws Exception {
+        tick();
+        for (int seq = 1; seq <= 25; seq++) {
+            log(seq, "appointments", 1, 'U');
+        }
+        tick();
+        assertEquals(1, reloads);
+        assertEquals(List.of(), delivered);
+        assertEquals(25, feed.position());
+    }
+
+    private void tick() throws InterruptedException, InvocationTargetException {
+        feed.poll();
+        // Deliveries are queued on the EDT
+        SwingUtilities.invokeAndWait(() -> { });
+    }
+
+    private void log(long seq, String table, long rowId, char op) throws SQLException {
+        execute("INSERT INTO change_log (seq, table_name, row_id, op, origin) VALUES ("
+                + seq + ", '" + table + "', " + rowId + ", '" + op + "', '" + OTHER + "')");
+    }
+
+    private void execute(String sql) throws SQLException {
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * ConnectionPoolTest.java
+ * Borrowing, returning, timeouts, rollback on release and the statement cache.
+ */
+package petgroom;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the pool over an in-memory H2 database.
+ */
+public class ConnectionPoolTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+    private ConnectionPool pool;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        url = "jdbc:h2:mem:pool-" + DATABASES.incrementAndGet() + ";MODE=MySQL;DB_CLOSE_DELAY=-1";
+        pool = pool(new ConnectionPool.Settings());
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE items (id INT PRIMARY KEY)");
+        }
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        pool.close();
+    }
+
+    @Test
+    public void returnedConnectionIsBorrowedAgain() throws SQLException {
+        ConnectionPool.PooledConnection first = pool.borrow();
+        assertEquals(1, pool.getActiveCount());
+        first.close();
+        assertEquals(0, pool.getActiveCount());
+        assertEquals(1, pool.getIdleCount());
+        try (ConnectionPool.PooledConnection second = pool.borrow()) {
+            assertSame(first.connection(), second.connection());
+        }
+        assertEquals(1, pool.getCreatedCount());
+    }
+
+    @Test
+    public void closingTwiceReturnsOnce() throws SQLException {
+        ConnectionPool.PooledConnection conn = pool.borrow();
+        conn.close();
+        conn.close();
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getActiveCount());
+    }
+
+    @Test
+    public void exhaustedPoolTimesOut() throws SQLException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.maxSize = 1;
+        settings.borrowTimeoutMillis = 50;
+        try (ConnectionPool small = pool(settings)) {
+            ConnectionPool.PooledConnection held = small.borrow();
+            try {
+                small.borrow();
+                fail("Borrowed past the maximum size");
+            } catch (SQLTimeoutException e) {
+                assertEquals(1, small.getTimeoutCount());
+            }
+            held.close();
+            small.borrow().close();
+        }
+    }
+
+    @Test
+    public void uncommittedWorkIsRolledBackOnRelease() throws SQLException {
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            conn.connection().setAutoCommit(false);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("INSERT INTO items VALUES (1)");
+            }
+        }
+        try (ConnectionPool.PooledConnection conn = pool.borrow();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM items")) {
+            assertTrue(conn.connection().getAutoCommit());
+            rs.next();
+            assertEquals(0, rs.getInt(1));
+        }
+    }
+
+    @Test
+    public void cachedStatementIsReusedAcrossBorrows() throws SQLException {
+        PreparedStatement first;
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            first = conn.prepareCached("SELECT id FROM items WHERE id = ?");
+        }
+        try (ConnectionPool.PooledConnection conn = pool.borrow()) {
+            assertSame(first, conn.prepareCached("SELECT id FROM items WHERE id = ?"));
+        }
+        assertEquals(1, pool.getStatementCacheHits());
+        assertEquals(1, pool.getStatementCacheMisses());
+    }
+
+    @Test
+    public void disabledCacheClosesStatementsOnRelease() throws SQLException {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.statementCacheSize = 0;
+        try (ConnectionPool uncached = pool(settings)) {
+            PreparedStatement stmt;
+            try (ConnectionPool.PooledConnection conn = uncached.borrow()) {
+                stmt = conn.prepareCached("SELECT id FROM items");
+            }
+            assertTrue(stmt.isClosed());
+            assertEquals(0, uncached.getStatementCacheHits());
+        }
+    }
+
+    @Test
+    public void connectionHeldPastTheThresholdIsCountedAsALeak() throws Exception {
+        ConnectionPool.Settings settings = new ConnectionPool.Settings();
+        settings.leakThresholdMillis = 20;
+        settings.housekeepingMillis = 10;
+        try (ConnectionPool watched = pool(settings)) {
+            ConnectionPool.PooledConnection held = watched.borrow();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (watched.getLeakCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, watched.getLeakCount());
+            held.close();
+        }
+    }
+
+    @Test
+    public void closedPoolRefusesToLend() {
+        ConnectionPool closed = pool(new ConnectionPool.Settings());
+        closed.close();
+        try {
+            closed.borrow();
+            fail("Borrowed from a closed pool");
+        } catch (SQLException e) {
+            assertFalse(e instanceof SQLTimeoutException);
+        }
+    }
+
+    private ConnectionPool pool(ConnectionPool.Settings settings) {
+        return new ConnectionPool(url, "sa", "", settings);
+    }
+}
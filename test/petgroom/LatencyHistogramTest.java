@@ -0,0 +1,129 @@
+/*
+ * LatencyHistogramTest.java
+ * Bucket bounds, percentile error and reset.
+ */
+package petgroom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Reads recorded latencies back through snapshots; the buckets themselves
+ * are private, so their bounds are checked by what the percentiles report.
+ */
+public class LatencyHistogramTest {
+    private static final double NANOS = 1e-6;
+
+    @Test
+    public void emptyHistogramReportsZeros() {
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0), new LatencyHistogram().snapshot());
+    }
+
+    @Test
+    public void valuesBelowSixteenNanosAreExact() {
+        for (int nanos = 0; nanos < 16; nanos++) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(15);
+            assertEquals(nanos * 1e-6, histogram.snapshot().p50Millis(), NANOS / 10);
+        }
+    }
+
+    @Test
+    public void percentileIsNeverBelowTheValueNorMoreThanASixteenthAbove() {
+        // Every value from 16 ns to about 4 ms, one at a time, so each is the median
+        for (long nanos = 16; nanos < 4_000_000; nanos = nanos * 17 / 16 + 1) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            histogram.record(nanos);
+            histogram.record(Long.MAX_VALUE);
+            double p50 = histogram.snapshot().p50Millis() * 1e6;
+            assertTrue(nanos + " read back as " + p50, p50 >= nanos - 0.5);
+            assertTrue(nanos + " read back as " + p50, p50 <= nanos + nanos / 16.0 + 0.5);
+        }
+    }
+
+    @Test
+    public void bucketEdgesReadBackAsTheirUpperBound() {
+        // 32..33 share a bucket at exponent 5; 34 starts the next one
+        assertEquals(33, medianNanos(32));
+        assertEquals(33, medianNanos(33));
+        assertEquals(35, medianNanos(34));
+        // From 1024 ns on, a bucket is 64 ns wide, then 128 ns from 2048
+        assertEquals(1024 + 63, medianNanos(1024));
+        assertEquals(2048 + 127, medianNanos(2048 + 100));
+    }
+
+    @Test
+    public void percentilesAreCappedAtTheSlowestCall() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) {
+            histogram.record(1_000_000 + i);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(100, snapshot.count());
+        assertEquals(1.000099, snapshot.maxMillis(), NANOS / 10);
+        assertEquals(snapshot.maxMillis(), snapshot.p99Millis(), NANOS / 10);
+        assertTrue(snapshot.p50Millis() <= snapshot.p95Millis());
+        assertTrue(snapshot.p95Millis() <= snapshot.p99Millis());
+        assertEquals(1.0000495, snapshot.meanMillis(), NANOS / 10);
+    }
+
+    @Test
+    public void percentilesFollowTheRanks() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 94; i++) {
+            histogram.record(1_000);
+        }
+        for (int i = 0; i < 5; i++) {
+            histogram.record(1_000_000);
+        }
+        histogram.record(1_000_000_000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0.001, snapshot.p50Millis(), 0.001 / 16);
+        assertEquals(1.0, snapshot.p95Millis(), 1.0 / 16);
+        assertEquals(1.0, snapshot.p99Millis(), 1.0 / 16);
+        assertEquals(1000.0, snapshot.maxMillis(), NANOS);
+    }
+
+    @Test
+    public void callsLongerThanTheLastBucketStillCountWithTheirMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long hour = 3_600_000_000_000L;
+        histogram.record(hour);
+        histogram.record(2 * hour);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.count());
+        assertEquals(2 * hour * 1e-6, snapshot.maxMillis(), 1);
+        assertEquals(2 * hour * 1e-6, snapshot.p99Millis(), 1);
+    }
+
+    @Test
+    public void negativeDurationCountsAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.count());
+        assertEquals(0, snapshot.p50Millis(), 0);
+        assertEquals(0, snapshot.meanMillis(), 0);
+    }
+
+    @Test
+    public void resetStartsFromZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.count());
+        assertEquals(new LatencyHistogram.Snapshot(0, 0, 0, 0, 0, 0), histogram.snapshot());
+        histogram.record(1_000);
+        assertEquals(0.001, histogram.snapshot().maxMillis(), NANOS / 10);
+    }
+
+    private static long medianNanos(long nanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(nanos);
+        histogram.record(Long.MAX_VALUE);
+        return Math.round(histogram.snapshot().p50Millis() * 1e6);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * PagedTableModelTest.java
+ * Writes applied in place across page boundaries, and the end-of-data marker.
+ */
+package petgroom;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Drives a model over an in-memory list of even numbers, 100 rows a page (the
+ * default page size). The list stands in for the database: each test changes
+ * it, tells the model as the forms do, and checks every row against it.
+ */
+public class PagedTableModelTest {
+    private static final int PAGE = 100;
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    @Test
+    public void insertIntoAFullPageCarriesRowsIntoTheNextPages() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, 197, null);
+        assertEquals(351, (int) onEdt(model::getRowCount));
+        assertEquals(197, (int) row(model, PAGE - 1));
+        assertEquals(198, (int) row(model, PAGE));
+        assertRows(model);
+    }
+
+    @Test
+    public void insertAfterAFullLastPageStartsANewPage() throws Exception {
+        ListModel model = loaded(evens(3 * PAGE));
+        write(model, 1_000, null);
+        assertEquals(3 * PAGE + 1, (int) onEdt(model::getRowCount));
+        assertEquals(1_000, (int) row(model, 3 * PAGE));
+        assertRows(model);
+    }
+
+    @Test
+    public void removeFromTheFirstPagePullsRowsBackAcrossPages() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, null, 100);
+        assertEquals(349, (int) onEdt(model::getRowCount));
+        assertEquals(200, (int) row(model, PAGE - 1));
+        assertRows(model);
+    }
+
+    @Test
+    public void removeTheLastRowOfAPage() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, null, 2 * (2 * PAGE - 1));
+        assertEquals(349, (int) onEdt(model::getRowCount));
+        assertRows(model);
+    }
+
+    @Test
+    public void updateThatKeepsItsPlaceIsReplacedInPlace() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, 11, 10);
+        assertEquals(11, (int) row(model, 5));
+        assertRows(model);
+    }
+
+    @Test
+    public void updateThatMovesToALaterPage() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, 401, 10);
+        assertEquals(350, (int) onEdt(model::getRowCount));
+        assertEquals(401, (int) row(model, 200));
+        assertRows(model);
+    }
+
+    @Test
+    public void updateThatMovesToAnEarlierPage() throws Exception {
+        ListModel model = loaded(evens(350));
+        write(model, 1, 600);
+        assertEquals(1, (int) row(model, 1));
+        assertRows(model);
+    }
+
+    @Test
+    public void insertBetweenPagesNeverReadReloads() throws Exception {
+        ListModel model = new ListModel(evens(10 * PAGE));
+        start(model, 10 * PAGE);
+        row(model, 0);
+        row(model, 9 * PAGE);
+        write(model, 1_001, null);
+        awaitCount(model, 10 * PAGE + 1);
+        assertRows(model);
+    }
+
+    @Test
+    public void pagesEvictedFromTheCacheAreReadAgain() throws Exception {
+        ListModel model = new ListModel(evens(30 * PAGE));
+        start(model, 30 * PAGE);
+        assertRows(model);
+        assertEquals(0, (int) row(model, 0));
+        assertEquals(2 * (15 * PAGE + 3), (int) row(model, 15 * PAGE + 3));
+    }
+
+    @Test
+    public void emptyPageFromAStaleCountIsNotFetchedOnEveryPaint() throws Exception {
+        ListModel model = new ListModel(evens(150));
+        model.count = 250;
+        start(model, 250);
+        assertEquals(0, (int) row(model, 0));
+        int before = model.fetches.get();
+        onEdt(() -> model.getRow(220));
+        awaitFetches(model, before + 1);
+        for (int i = 0; i < 10; i++) {
+            assertNull(onEdt(() -> model.getRow(220)));
+        }
+        Thread.sleep(100);
+        assertEquals(before + 1, model.fetches.get());
+
+        model.count = -1;
+        onEdt(() -> {
+            model.refresh();
+            return null;
+        });
+        awaitCount(model, 150);
+        assertRows(model);
+    }
+
+    /**
+     * Model over a sorted list; count is the list size unless set.
+     */
+    private static final class ListModel extends PagedTableModel<Integer> {
+        final List<Integer> data;
+        final AtomicInteger fetches = new AtomicInteger();
+        volatile int count = -1;
+
+        ListModel(List<Integer> data) {
+            super(Comparator.naturalOrder(), "Value");
+            this.data = Collections.synchronizedList(data);
+        }
+
+        @Override
+        protected int count() {
+            return count >= 0 ? count : data.size();
+        }
+
+        @Override
+        protected List<Integer> fetchAfter(Integer last, int limit) {
+            synchronized (data) {
+                fetches.incrementAndGet();
+                return data.stream().filter(v -> last == null || v > last).limit(limit).toList();
+            }
+        }
+
+        @Override
+        protected List<Integer> fetchAt(int offset, int limit) {
+            synchronized (data) {
+                fetches.incrementAndGet();
+                return new ArrayList<>(data.subList(Math.min(offset, data.size()), Math.min(offset + limit, data.size())));
+            }
+        }
+
+        @Override
+        protected Object valueOf(Integer row, int column) {
+            return row;
+        }
+    }
+
+    private static List<Integer> evens(int rows) {
+        List<Integer> values = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            values.add(2 * i);
+        }
+        return values;
+    }
+
+    /**
+     * @return A model with every row read
+     */
+    private static ListModel loaded(List<Integer> data) throws Exception {
+        ListModel model = new ListModel(data);
+        start(model, data.size());
+        assertRows(model);
+        return model;
+    }
+
+    private static void start(ListModel model, int rows) throws Exception {
+        onEdt(() -> {
+            model.refresh();
+            return null;
+        });
+        awaitCount(model, rows);
+    }
+
+    /**
+     * Changes the data and tells the model, as the forms do after a write.
+     * @param added Row written, or null for a delete
+     * @param removed Row replaced or deleted, or null for an insert
+     */
+    private static void write(ListModel model, Integer added, Integer removed) throws Exception {
+        synchronized (model.data) {
+            if (removed != null) {
+                model.data.remove(removed);
+            }
+            if (added != null) {
+                int at = Collections.binarySearch(model.data, added);
+                model.data.add(-at - 1, added);
+            }
+        }
+        onEdt(() -> {
+            if (added == null) {
+                model.remove(removed);
+            } else if (removed == null) {
+                model.insert(added);
+            } else {
+                model.update(removed, added);
+            }
+            return null;
+        });
+    }
+
+    private static void assertRows(ListModel model) throws Exception {
+        assertEquals(model.data.size(), (int) onEdt(model::getRowCount));
+        for (int i = 0; i < model.data.size(); i++) {
+            assertEquals("row " + i, model.data.get(i), row(model, i));
+        }
+    }
+
+    /**
+     * @return The row, once its page has loaded
+     */
+    private static Integer row(ListModel model, int index) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            Integer row = onEdt(() -> model.getRow(index));
+            if (row != null) {
+                return row;
+            }
+            if (System.currentTimeMillis() > deadline) {
+                fail("Row " + index + " never loaded");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitCount(ListModel model, int rows) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (onEdt(model::getRowCount) != rows) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Row count never reached " + rows);
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitFetches(ListModel model, int fetches) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (model.fetches.get() < fetches) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Fetch never made");
+            }
+            Thread.sleep(1);
+        }
+        // Let the result reach the EDT
+        onEdt(() -> null);
+        Thread.sleep(50);
+        onEdt(() -> null);
+    }
+
+    private static <T> T onEdt(Callable<T> work) throws Exception {
+        List<T> result = new ArrayList<>(1);
+        Exception[] failure = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                result.add(work.call());
+            } catch (Exception e) {
+                failure[0] = e;
+            }
+        });
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return result.get(0);
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * PaymentJournalTest.java
+ * Saving, replay after a restart, duplicate and bad entries, and the file lock.
+ */
+package petgroom;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Runs the journal in a temporary file against an in-memory H2 database, and
+ * against one that cannot be reached to leave payments in the file.
+ */
+public class PaymentJournalTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final long TIMEOUT_MILLIS = 5_000;
+
+    static {
+        System.setProperty("petgroom.journal.retryMillis", "200");
+    }
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private DatabaseConnectivity db;
+    private DatabaseConnectivity unreachable;
+    private ConnectionPool unreachablePool;
+    private Path file;
+
+    @Before
+    public void createDatabase() throws SQLException, IOException {
+        String url = "jdbc:h2:mem:journal-" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE payments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, total_paid_centavos BIGINT NOT NULL, status VARCHAR(50) NOT NULL, "
+                    + "paid_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, journal_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE TABLE daily_revenue (day DATE NOT NULL, status VARCHAR(50) NOT NULL, payments INT NOT NULL, "
+                    + "total_centavos BIGINT NOT NULL, PRIMARY KEY (day, status))");
+            stmt.execute("CREATE TABLE change_log (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(32) NOT NULL, "
+                    + "row_id BIGINT NOT NULL, op CHAR(1) NOT NULL, origin CHAR(36) NOT NULL, "
+                    + "changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+        }
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        db = new DatabaseConnectivity(pool);
+        unreachablePool = new ConnectionPool("jdbc:h2:mem:missing;IFEXISTS=TRUE", "sa", "", new ConnectionPool.Settings());
+        unreachable = new DatabaseConnectivity(unreachablePool);
+        file = Files.createTempFile("petgroom-test-", ".journal");
+    }
+
+    @After
+    public void dropDatabase() throws SQLException, IOException {
+        pool.close();
+        unreachablePool.close();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void recordedPaymentIsSavedAndTheFileEmptied() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            assertNotNull(journal.record("Ana", "0917", 60_000, "Paid"));
+            awaitSaved(journal);
+        }
+        assertEquals(1, savedPayments());
+        assertEquals(60_000, revenue());
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void paymentsLeftInTheFileAreSavedWhenItIsOpenedAgain() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(file, unreachable)) {
+            journal.record("Ana", "0917", 60_000, "Paid");
+            journal.record("Ben", "0918", 30_000, "Downpayment");
+            assertEquals(2, journal.unsaved());
+        }
+        assertEquals(0, savedPayments());
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            awaitSaved(journal);
+        }
+        assertEquals(2, savedPayments());
+        assertEquals(90_000, revenue());
+    }
+
+    @Test
+    public void entryAlreadySavedIsNotSavedTwice() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(file, unreachable)) {
+            journal.record("Ana", "0917", 60_000, "Paid");
+        }
+        byte[] beforeSave = Files.readAllBytes(file);
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            awaitSaved(journal);
+        }
+        // As if the process died after the commit, before emptying the file
+        Files.write(file, beforeSave);
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            awaitSaved(journal);
+        }
+        assertEquals(1, savedPayments());
+        assertEquals(60_000, revenue());
+    }
+
+    @Test
+    public void halfWrittenEntryAtTheEndIsDiscarded() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(file, unreachable)) {
+            journal.record("Ana", "0917", 60_000, "Paid");
+        }
+        assertTrue(Files.size(file) > 0);
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3}, StandardOpenOption.APPEND);
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            awaitSaved(journal);
+        }
+        assertEquals(1, savedPayments());
+        assertEquals(0, Files.size(file));
+    }
+
+    @Test
+    public void entryTheDatabaseRejectsIsSetAsideAndTheRestSaved() throws Exception {
+        Path rejected = file.resolveSibling(file.getFileName() + ".rejected");
+        try {
+            try (PaymentJournal journal = new PaymentJournal(file, unreachable)) {
+                journal.record("Ana", "0917", 60_000, "Paid");
+                journal.record("A".repeat(300), "0918", 30_000, "Paid");
+                journal.record("Ben", "0919", 20_000, "Downpayment");
+            }
+            try (PaymentJournal journal = new PaymentJournal(file, db)) {
+                awaitSaved(journal);
+            }
+            assertEquals(2, savedPayments());
+            assertEquals(80_000, revenue());
+            assertEquals(0, Files.size(file));
+            List<String> lines = Files.readAllLines(rejected);
+            assertEquals(1, lines.size());
+            assertTrue(lines.get(0).contains("A".repeat(300) + "\t0918\t30000\tPaid\t"));
+        } finally {
+            Files.deleteIfExists(rejected);
+        }
+    }
+
+    @Test
+    public void secondJournalOnTheSameFileIsRefused() throws Exception {
+        try (PaymentJournal journal = new PaymentJournal(file, db)) {
+            try {
+                new PaymentJournal(file, db).close();
+                fail("Opened a journal that is in use");
+            } catch (PaymentJournal.InUseException e) {
+                assertNotNull(journal.record("Ana", "0917", 60_000, "Paid"));
+                awaitSaved(journal);
+            }
+        }
+        // Released on close
+        new PaymentJournal(file, db).close();
+        assertEquals(1, savedPayments());
+    }
+
+    private static void awaitSaved(PaymentJournal journal) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (journal.unsaved() > 0) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(journal.unsaved() + " payments never saved");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    private int savedPayments() throws SQLException {
+        return (int) queryLong("SELECT COUNT(*) FROM payments");
+    }
+
+    private long revenue() throws SQLException {
+        return queryLong("SELECT COALESCE(SUM(total_centavos), 0) FROM daily_revenue");
+    }
+
+    private long queryLong(String query) throws SQLException {
+        try (Statement stmt = keepAlive.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * SlotSchedulerTest.java
+ * Opening hours, stations and overlaps as isFree sees them.
+ */
+package petgroom;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the scheduler with its defaults (09:00 to 18:00, 15-minute slots, two
+ * stations) over an in-memory H2 database holding one booking, 10:00 to
+ * 11:00 at station 1.
+ */
+public class SlotSchedulerTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final LocalDate DAY = LocalDate.now().plusDays(7);
+
+    private Connection keepAlive;
+    private ConnectionPool pool;
+    private SlotScheduler scheduler;
+    private long bookedId;
+
+    @Before
+    public void createDatabase() throws SQLException {
+        String url = "jdbc:h2:mem:slots-" + DATABASES.incrementAndGet() + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+        keepAlive = DriverManager.getConnection(url, "sa", "");
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("CREATE TABLE appointments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, date DATE NOT NULL, pet_name VARCHAR(255) NOT NULL, "
+                    + "pet_breed VARCHAR(255) NOT NULL, service VARCHAR(255) NOT NULL, station TINYINT NULL, "
+                    + "start_time TIME NULL, end_time TIME NULL, version INT NOT NULL DEFAULT 0, offline_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service, station, start_time, end_time) "
+                    + "VALUES ('Ana', '0917', '" + DAY + "', 'Rex', 'Aspin', 'Trim Groom', 1, '10:00', '11:00')");
+            stmt.execute("INSERT INTO appointments (client_name, contact, date, pet_name, pet_breed, service) "
+                    + "VALUES ('Ben', '0918', '" + DAY + "', 'Max', 'Aspin', 'Full Bath')");
+        }
+        pool = new ConnectionPool(url, "sa", "", new ConnectionPool.Settings());
+        AppointmentRepository repository = new AppointmentRepository(new DatabaseConnectivity(pool));
+        scheduler = new SlotScheduler(repository);
+        bookedId = repository.findByDate(DAY).stream().filter(a -> a.slot() != null).findFirst().orElseThrow().id();
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        pool.close();
+        try (Statement stmt = keepAlive.createStatement()) {
+            stmt.execute("SHUTDOWN");
+        }
+        keepAlive.close();
+    }
+
+    @Test
+    public void startJustBeforeOpeningIsRefused() {
+        assertFalse(scheduler.isFree(DAY, slot(1, "08:50", "09:05"), 0));
+        assertFalse(scheduler.isFree(DAY, slot(1, "08:59", "09:14"), 0));
+        assertFalse(scheduler.isFree(DAY, slot(1, "08:45", "09:00"), 0));
+    }
+
+    @Test
+    public void openingAndClosingSlotsAreFree() {
+        assertTrue(scheduler.isFree(DAY, slot(1, "09:00", "09:15"), 0));
+        assertTrue(scheduler.isFree(DAY, slot(2, "17:45", "18:00"), 0));
+    }
+
+    @Test
+    public void endPastClosingIsRefused() {
+        assertFalse(scheduler.isFree(DAY, slot(2, "17:50", "18:05"), 0));
+        assertFalse(scheduler.isFree(DAY, slot(2, "17:45", "18:15"), 0));
+    }
+
+    @Test
+    public void unknownStationIsRefused() {
+        assertFalse(scheduler.isFree(DAY, slot(0, "12:00", "12:15"), 0));
+        assertFalse(scheduler.isFree(DAY, slot(3, "12:00", "12:15"), 0));
+    }
+
+    @Test
+    public void overlapWithABookingIsRefusedOnlyAtItsStation() {
+        assertFalse(scheduler.isFree(DAY, slot(1, "09:30", "10:15"), 0));
+        assertFalse(scheduler.isFree(DAY, slot(1, "10:45", "11:15"), 0));
+        assertTrue(scheduler.isFree(DAY, slot(1, "09:00", "10:00"), 0));
+        assertTrue(scheduler.isFree(DAY, slot(1, "11:00", "12:00"), 0));
+        assertTrue(scheduler.isFree(DAY, slot(2, "10:00", "11:00"), 0));
+    }
+
+    @Test
+    public void bookingBeingMovedDoesNotBlockItself() {
+        assertTrue(scheduler.isFree(DAY, slot(1, "10:30", "11:30"), bookedId));
+    }
+
+    @Test
+    public void wholeDayBookingTakesNoSlot() {
+        assertTrue(scheduler.isFree(DAY, slot(2, "09:00", "18:00"), 0));
+    }
+
+    private static TimeSlot slot(int station, String start, String end) {
+        return new TimeSlot(station, LocalTime.parse(start), LocalTime.parse(end));
+    }
+}
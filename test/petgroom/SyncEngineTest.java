@@ -0,0 +1,247 @@
+/*
+ * SyncEngineTest.java
+ * Copying MySQL into the local store, and replaying offline writes against it.
+ */
+package petgroom;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Plays MySQL with one in-memory H2 database and the terminal's local store
+ * with another. Going offline is forced on the store, as a failed borrow
+ * would; the sync engine's rounds are run by hand, and find MySQL reachable.
+ */
+public class SyncEngineTest {
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final String OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;NON_KEYWORDS=DAY;DB_CLOSE_DELAY=-1";
+    private static final Date DAY = Date.valueOf(LocalDate.now().plusDays(7));
+
+    private Connection primaryConn;
+    private Connection localConn;
+    private ConnectionPool primaryPool;
+    private LocalStore local;
+    private DatabaseConnectivity app;
+    private SyncEngine sync;
+
+    @Before
+    public void createDatabases() throws SQLException {
+        int n = DATABASES.incrementAndGet();
+        String primaryUrl = "jdbc:h2:mem:primary-" + n + OPTIONS;
+        primaryConn = DriverManager.getConnection(primaryUrl, "sa", "");
+        try (Statement stmt = primaryConn.createStatement()) {
+            stmt.execute("CREATE TABLE users (id INT AUTO_INCREMENT PRIMARY KEY, full_name VARCHAR(255) NOT NULL, "
+                    + "email VARCHAR(255) NOT NULL UNIQUE, password VARCHAR(255) NOT NULL)");
+            stmt.execute("CREATE TABLE appointments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, date DATE NOT NULL, pet_name VARCHAR(255) NOT NULL, "
+                    + "pet_breed VARCHAR(255) NOT NULL, service VARCHAR(255) NOT NULL, station TINYINT NULL, "
+                    + "start_time TIME NULL, end_time TIME NULL, version INT NOT NULL DEFAULT 0, offline_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE TABLE payments (id BIGINT AUTO_INCREMENT PRIMARY KEY, client_name VARCHAR(255) NOT NULL, "
+                    + "contact VARCHAR(255) NOT NULL, total_paid_centavos BIGINT NOT NULL, status VARCHAR(50) NOT NULL, "
+                    + "paid_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP, journal_id CHAR(36) NULL UNIQUE)");
+            stmt.execute("CREATE TABLE services (id INT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(100) NOT NULL UNIQUE, "
+                    + "price_centavos BIGINT NOT NULL, duration_minutes INT NOT NULL DEFAULT 60, active BOOLEAN NOT NULL DEFAULT TRUE, "
+                    + "sort_order INT NOT NULL DEFAULT 0, updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("CREATE TABLE daily_revenue (day DATE NOT NULL, status VARCHAR(50) NOT NULL, payments INT NOT NULL, "
+                    + "total_centavos BIGINT NOT NULL, PRIMARY KEY (day, status))");
+            stmt.execute("CREATE TABLE daily_appointments (day DATE NOT NULL, service VARCHAR(255) NOT NULL, "
+                    + "appointments INT NOT NULL, PRIMARY KEY (day, service))");
+            stmt.execute("CREATE TABLE change_log (seq BIGINT AUTO_INCREMENT PRIMARY KEY, table_name VARCHAR(32) NOT NULL, "
+                    + "row_id BIGINT NOT NULL, op CHAR(1) NOT NULL, origin CHAR(36) NOT NULL, "
+                    + "changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+            stmt.execute("INSERT INTO users (full_name, email, password) VALUES ('Ana', 'ana@petgroom.local', 'hash')");
+            stmt.execute("INSERT INTO services (name, price_centavos, duration_minutes, sort_order) VALUES ('Full Bath', 20000, 45, 1)");
+            stmt.execute("INSERT INTO appointments (id, client_name, contact, date, pet_name, pet_breed, service) VALUES "
+                    + "(1, 'Ana', '0917', '" + DAY + "', 'Rex', 'Aspin', 'Full Bath'), "
+                    + "(2, 'Ben', '0918', '" + DAY + "', 'Max', 'Aspin', 'Full Bath')");
+            stmt.execute("INSERT INTO payments (id, client_name, contact, total_paid_centavos, status) VALUES (1, 'Ana', '0917', 20000, 'Paid')");
+            stmt.execute("INSERT INTO daily_appointments (day, service, appointments) VALUES ('" + DAY + "', 'Full Bath', 2)");
+        }
+        String localUrl = "jdbc:h2:mem:local-" + n + OPTIONS;
+        localConn = DriverManager.getConnection(localUrl, "sa", "");
+        local = new LocalStore(localUrl);
+        primaryPool = new ConnectionPool(primaryUrl, "sa", "", new ConnectionPool.Settings());
+        app = new DatabaseConnectivity(primaryPool, local);
+        sync = new SyncEngine(primaryPool, local);
+    }
+
+    @After
+    public void dropDatabases() throws SQLException {
+        primaryPool.close();
+        local.close();
+        for (Connection conn : new Connection[]{primaryConn, localConn}) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("SHUTDOWN");
+            }
+            conn.close();
+        }
+    }
+
+    @Test
+    public void firstRoundCopiesEveryTable() throws SQLException {
+        assertNull(local.pullMark());
+        sync.sync();
+        assertEquals(2, count(localConn, "SELECT COUNT(*) FROM appointments"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM payments"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM users WHERE email = 'ana@petgroom.local'"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM services"));
+        assertEquals(2, count(localConn, "SELECT appointments FROM daily_appointments"));
+        assertNotNull(local.pullMark());
+    }
+
+    @Test
+    public void bookingMadeOfflineIsPushedAndRenumbered() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        Appointment booked = app.saveAppointment("Cara", "0919", "Mochi", "Shih Tzu", "Full Bath", DAY, slot("10:00", "11:00"));
+        assertTrue(booked.id() < 0);
+        UpdateResult edited = app.updateAppointment(booked.id(), booked.version(), "Cara", "0919", "Mochi", "Shih Poo", "Full Bath", DAY,
+                booked.slot());
+        assertEquals(UpdateResult.Status.UPDATED, edited.status());
+        assertEquals(2, local.pendingChanges(10).size());
+
+        sync.sync();
+        assertFalse(local.isOffline());
+        assertEquals(List.of(), local.pendingChanges(10));
+        long id = count(primaryConn, "SELECT id FROM appointments WHERE client_name = 'Cara' AND pet_breed = 'Shih Poo' "
+                + "AND station = 1 AND offline_id IS NOT NULL");
+        assertTrue(id > 2);
+        // The local row took MySQL's id
+        assertEquals(0, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id < 0"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = " + id + " AND pet_breed = 'Shih Poo'"));
+    }
+
+    @Test
+    public void bookingReplayedAfterACrashIsNotBookedTwice() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        Appointment booked = app.saveAppointment("Cara", "0919", "Mochi", "Shih Tzu", "Full Bath", DAY, null);
+        // As if an earlier round saved it in MySQL and died before renumbering
+        LocalStore.Change insert = local.pendingChanges(10).get(0);
+        new DatabaseConnectivity(primaryPool).saveOfflineAppointment(booked, null, insert.offlineId());
+
+        sync.sync();
+        assertEquals(1, count(primaryConn, "SELECT COUNT(*) FROM appointments WHERE client_name = 'Cara'"));
+        assertEquals(0, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id < 0"));
+        assertEquals(List.of(), local.pendingChanges(10));
+    }
+
+    @Test
+    public void bookingWhoseSlotWasTakenMeanwhileIsBookedForTheDay() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        app.saveAppointment("Cara", "0919", "Mochi", "Shih Tzu", "Full Bath", DAY, slot("10:00", "11:00"));
+        execute(primaryConn, "UPDATE appointments SET station = 1, start_time = '10:30', end_time = '11:30' WHERE id = 2");
+
+        sync.sync();
+        assertEquals(1, count(primaryConn, "SELECT COUNT(*) FROM appointments WHERE client_name = 'Cara' AND station IS NULL"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE client_name = 'Cara' AND station IS NULL"));
+    }
+
+    @Test
+    public void offlineEditOverwritesANewerVersion() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        Appointment row = app.queryAppointment(1);
+        app.updateAppointment(1, row.version(), "Ana", "0917", "Rexie", "Aspin", "Full Bath", DAY, null);
+        execute(primaryConn, "UPDATE appointments SET pet_breed = 'Beagle', version = version + 1 WHERE id = 1");
+
+        sync.sync();
+        assertEquals(1, count(primaryConn, "SELECT COUNT(*) FROM appointments WHERE id = 1 AND pet_name = 'Rexie'"));
+        assertEquals(List.of(), local.pendingChanges(10));
+    }
+
+    @Test
+    public void offlineEditToARowDeletedMeanwhileIsDropped() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        Appointment row = app.queryAppointment(1);
+        app.updateAppointment(1, row.version(), "Ana", "0917", "Rexie", "Aspin", "Full Bath", DAY, null);
+        execute(primaryConn, "DELETE FROM appointments WHERE id = 1");
+
+        sync.sync();
+        assertEquals(0, count(primaryConn, "SELECT COUNT(*) FROM appointments WHERE id = 1"));
+        assertEquals(0, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 1"));
+        assertEquals(List.of(), local.pendingChanges(10));
+    }
+
+    @Test
+    public void offlineDeleteIsReplayed() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        assertTrue(app.deleteAppointment(2));
+
+        sync.sync();
+        assertEquals(0, count(primaryConn, "SELECT COUNT(*) FROM appointments WHERE id = 2"));
+        assertEquals(List.of(), local.pendingChanges(10));
+    }
+
+    @Test
+    public void rowsNamedInTheChangeLogAreCopiedAfterAnOutage() throws SQLException {
+        sync.sync();
+        execute(primaryConn, "UPDATE appointments SET pet_name = 'Maxie' WHERE id = 2");
+        execute(primaryConn, "DELETE FROM appointments WHERE id = 1");
+        // Logged long enough ago to be settled, so the mark moves past it
+        execute(primaryConn, "INSERT INTO change_log (table_name, row_id, op, origin, changed_at) VALUES "
+                + "('appointments', 2, 'U', 'other-terminal', NOW() - INTERVAL '5' MINUTE), "
+                + "('appointments', 1, 'D', 'other-terminal', NOW() - INTERVAL '5' MINUTE)");
+        local.wentOffline(null);
+
+        sync.sync();
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 2 AND pet_name = 'Maxie'"));
+        assertEquals(0, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 1"));
+        assertEquals(2, local.pullMark().seq());
+    }
+
+    @Test
+    public void copyLeavesRowsWithPendingChangesAlone() throws SQLException {
+        sync.sync();
+        local.wentOffline(null);
+        Appointment row = app.queryAppointment(1);
+        app.updateAppointment(1, row.version(), "Ana", "0917", "Rexie", "Aspin", "Full Bath", DAY, null);
+        String[] columns = {"id", "client_name", "contact", "date", "pet_name", "pet_breed", "service", "station", "start_time",
+                "end_time", "version"};
+        Object[] copied = {1L, "Ana", "0917", DAY, "Rex", "Aspin", "Full Bath", null, null, null, 5};
+        Object[] other = {2L, "Ben", "0918", DAY, "Maxie", "Aspin", "Full Bath", null, null, null, 5};
+        local.replaceRows("appointments", columns, List.of(1L, 2L), List.of(copied, other));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 1 AND pet_name = 'Rexie'"));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 2 AND pet_name = 'Maxie'"));
+        local.replaceRange("appointments", columns, 0, Long.MAX_VALUE, List.<Object[]>of(copied));
+        assertEquals(1, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 1 AND pet_name = 'Rexie'"));
+        assertEquals(0, count(localConn, "SELECT COUNT(*) FROM appointments WHERE id = 2"));
+    }
+
+    private static TimeSlot slot(String start, String end) {
+        return new TimeSlot(1, LocalTime.parse(start), LocalTime.parse(end));
+    }
+
+    private static long count(Connection conn, String query) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private static void execute(Connection conn, String sql) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+}